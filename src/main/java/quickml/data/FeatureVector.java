@@ -0,0 +1,92 @@
+package quickml.data;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The attribute values of one instance, laid out by the slots of a {@link Schema}: a numeric value and a categorical
+ * code for each slot.  Meant to be reused, by calling {@link #clear()} or {@link #fill(AttributesMap)} for each request.
+ * <p/>
+ * A slot that hasn't been set reads as 0 numerically, matching how trees treat a missing numeric attribute, and has
+ * no categorical code, so it is in no categorical branch's in-set.  A value that isn't a number reads as NaN
+ * numerically, so it never exceeds a threshold.  Not thread safe.
+ */
+public final class FeatureVector {
+    public static final int NO_CODE = -1;
+
+    private final Schema schema;
+    private final double[] numericValues;
+    private final int[] codes;
+
+    FeatureVector(Schema schema) {
+        this.schema = schema;
+        this.numericValues = new double[schema.size()];
+        this.codes = new int[schema.size()];
+        clear();
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public FeatureVector clear() {
+        Arrays.fill(numericValues, 0);
+        Arrays.fill(codes, NO_CODE);
+        return this;
+    }
+
+    /**
+     * Clears the vector then sets every attribute the schema knows about; others are ignored.
+     */
+    public FeatureVector fill(AttributesMap attributes) {
+        clear();
+        for (Map.Entry<String, Serializable> attribute : attributes.entrySet()) {
+            int slot = schema.slotOf(attribute.getKey());
+            if (slot >= 0 && attribute.getValue() != null) {
+                set(slot, attribute.getValue());
+            }
+        }
+        return this;
+    }
+
+    public FeatureVector set(String attribute, Serializable value) {
+        int slot = schema.slotOf(attribute);
+        if (slot >= 0) {
+            set(slot, value);
+        }
+        return this;
+    }
+
+    public FeatureVector set(int slot, Serializable value) {
+        Preconditions.checkNotNull(value, "Use clear() to leave an attribute missing");
+        numericValues[slot] = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+        codes[slot] = schema.numCodes(slot) > 0 ? schema.codeOf(slot, value) : NO_CODE;
+        return this;
+    }
+
+    /**
+     * Sets a numeric value without boxing it.  The slot's categorical code is left unset.
+     */
+    public FeatureVector setNumeric(int slot, double value) {
+        numericValues[slot] = value;
+        codes[slot] = NO_CODE;
+        return this;
+    }
+
+    /**
+     * @return the numeric value in the slot, 0 for a slot of -1 (an attribute the schema doesn't know)
+     */
+    public double getNumeric(int slot) {
+        return slot >= 0 ? numericValues[slot] : 0;
+    }
+
+    /**
+     * @return the categorical code in the slot, or {@link #NO_CODE}
+     */
+    public int getCode(int slot) {
+        return slot >= 0 ? codes[slot] : NO_CODE;
+    }
+}
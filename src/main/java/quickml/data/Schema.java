@@ -0,0 +1,104 @@
+package quickml.data;
+
+import com.google.common.collect.Maps;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Interns the attribute names a model uses into int slots, and the categorical values it tests into int codes per
+ * slot, so that a {@link FeatureVector} can be filled once per request and then read without any String hashing.
+ * Schemas are immutable once built, and obtained from the model that uses them.
+ */
+public final class Schema {
+    private final Map<String, Integer> slots;
+    private final String[] attributeNames;
+    private final List<Map<Serializable, Integer>> codesBySlot;
+
+    private Schema(Map<String, Integer> slots, List<Map<Serializable, Integer>> codesBySlot) {
+        this.slots = slots;
+        this.codesBySlot = codesBySlot;
+        this.attributeNames = new String[slots.size()];
+        for (Map.Entry<String, Integer> slot : slots.entrySet()) {
+            attributeNames[slot.getValue()] = slot.getKey();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return attributeNames.length;
+    }
+
+    /**
+     * @return the slot of the attribute, or -1 if the model doesn't use it
+     */
+    public int slotOf(String attribute) {
+        Integer slot = slots.get(attribute);
+        return slot == null ? -1 : slot;
+    }
+
+    public String attributeName(int slot) {
+        return attributeNames[slot];
+    }
+
+    /**
+     * @return the code of a categorical value of the attribute in the slot, or -1 if the model never tests for that value
+     */
+    public int codeOf(int slot, Serializable value) {
+        Integer code = codesBySlot.get(slot).get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @return the number of categorical values interned for the slot
+     */
+    public int numCodes(int slot) {
+        return codesBySlot.get(slot).size();
+    }
+
+    public FeatureVector newFeatureVector() {
+        return new FeatureVector(this);
+    }
+
+    public static class Builder {
+        private final Map<String, Integer> slots = Maps.newLinkedHashMap();
+        private final List<Map<Serializable, Integer>> codesBySlot = Lists.newArrayList();
+
+        public Builder addAttribute(String attribute) {
+            slot(attribute);
+            return this;
+        }
+
+        public Builder addCategoricalValue(String attribute, Serializable value) {
+            Map<Serializable, Integer> codes = codesBySlot.get(slot(attribute));
+            if (!codes.containsKey(value)) {
+                codes.put(value, codes.size());
+            }
+            return this;
+        }
+
+        private int slot(String attribute) {
+            Integer slot = slots.get(attribute);
+            if (slot == null) {
+                slot = slots.size();
+                slots.put(attribute, slot);
+                codesBySlot.add(Maps.<Serializable, Integer>newHashMap());
+            }
+            return slot;
+        }
+
+        public Schema build() {
+            List<Map<Serializable, Integer>> codes = Lists.newArrayListWithCapacity(codesBySlot.size());
+            for (Map<Serializable, Integer> slotCodes : codesBySlot) {
+                codes.add(Maps.newHashMap(slotCodes));
+            }
+            return new Schema(Maps.newHashMap(slots), codes);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package quickml.supervised;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lets a long running model build be stopped from another thread, or once a wall-clock deadline passes.
+ * Builders poll {@link #checkNotCancelled()} at convenient points, so cancellation is cooperative.
+ * <p/>
+ * A token may have a parent, in which case it is also cancelled when its parent is.
+ */
+public class CancellationToken {
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final CancellationToken parent;
+    private final long deadlineMillis;
+    private volatile boolean cancelled = false;
+
+    public CancellationToken() {
+        this(null, NO_DEADLINE);
+    }
+
+    /**
+     * @param deadlineMillis time, as given by System.currentTimeMillis(), after which this token counts as cancelled
+     */
+    public CancellationToken(CancellationToken parent, long deadlineMillis) {
+        this.parent = parent;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public static CancellationToken withTimeout(CancellationToken parent, long timeoutMillis) {
+        long now = System.currentTimeMillis();
+        long deadline = timeoutMillis >= NO_DEADLINE - now ? NO_DEADLINE : now + timeoutMillis;
+        return new CancellationToken(parent, deadline);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        if (cancelled) {
+            return true;
+        }
+        if (deadlineMillis != NO_DEADLINE && System.currentTimeMillis() > deadlineMillis) {
+            cancelled = true;
+            return true;
+        }
+        return parent != null && parent.isCancelled();
+    }
+
+    public void checkNotCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Model build was cancelled");
+        }
+    }
+}
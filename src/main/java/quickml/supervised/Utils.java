@@ -1,12 +1,14 @@
 package quickml.supervised;
 
 import com.google.common.collect.Lists;
+import quickml.data.AttributesMap;
 import quickml.data.Instance;
 import quickml.data.PredictionMap;
 import quickml.supervised.crossValidation.PredictionMapResult;
 import quickml.supervised.crossValidation.PredictionMapResults;
 import quickml.data.ClassifierInstance;
 import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.Classifiers;
 import quickml.supervised.crossValidation.lossfunctions.LabelPredictionWeight;
 
 import java.util.ArrayList;
@@ -47,9 +49,15 @@ public class Utils {
     }
 
     public static PredictionMapResults calcResultPredictions(Classifier predictiveModel, List<? extends ClassifierInstance> validationSet) {
-        ArrayList<PredictionMapResult> results = new ArrayList<>();
+        List<AttributesMap> attributesList = new ArrayList<>(validationSet.size());
         for (ClassifierInstance instance : validationSet) {
-            results.add(new PredictionMapResult(predictiveModel.predict(instance.getAttributes()), instance.getLabel(), instance.getWeight()));
+            attributesList.add(instance.getAttributes());
+        }
+        List<PredictionMap> predictions = Classifiers.predictBatch(predictiveModel, attributesList);
+        ArrayList<PredictionMapResult> results = new ArrayList<>();
+        for (int i = 0; i < validationSet.size(); i++) {
+            ClassifierInstance instance = validationSet.get(i);
+            results.add(new PredictionMapResult(predictions.get(i), instance.getLabel(), instance.getWeight()));
         }
         return new PredictionMapResults(results);
     }
@@ -2,10 +2,13 @@ package quickml.supervised.calibratedPredictiveModel;
 
 import quickml.data.AttributesMap;
 import quickml.data.PredictionMap;
+import quickml.supervised.classifier.AbstractClassifier;
 import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.Classifiers;
 import quickml.supervised.regressionModel.IsotonicRegression.PoolAdjacentViolatorsModel;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.Set;
 
 
@@ -17,7 +20,7 @@ import java.util.Set;
   This class uses the Pool-adjacent violators algorithm to calibrate the probabilities returned by a binary classifier, where postive
   classifications have a label of 1.0, and negative classifications have a label 0.0.
 */
-public class CalibratedClassifier implements Classifier {
+public class CalibratedClassifier extends AbstractClassifier {
     private static final long serialVersionUID = 8291739965981425742L;
     public PoolAdjacentViolatorsModel pavFunction;
     public Classifier wrappedPredictiveModel;
@@ -41,21 +44,47 @@ public class CalibratedClassifier implements Classifier {
 
     @Override
     public PredictionMap predict(final AttributesMap attributes) {
-        PredictionMap predictionMap = wrappedPredictiveModel.predict(attributes);
-        double positiveClassProb =  pavFunction.predict(wrappedPredictiveModel.getProbability(attributes, 1.0));
-        predictionMap.put(Double.valueOf(1.0), positiveClassProb);
-        predictionMap.put(Double.valueOf(0.0), 1.0 - positiveClassProb);
-
-        return predictionMap;
+        return calibrate(wrappedPredictiveModel.predict(attributes));
     }
 
     @Override
     public PredictionMap predictWithoutAttributes(final AttributesMap attributes, Set<String> attributesToIgnore) {
-        PredictionMap predictionMap = wrappedPredictiveModel.predictWithoutAttributes(attributes, attributesToIgnore);
-        double positiveClassProb =  pavFunction.predict(wrappedPredictiveModel.getProbabilityWithoutAttributes(attributes, 1.0, attributesToIgnore));
+        return calibrate(wrappedPredictiveModel.predictWithoutAttributes(attributes, attributesToIgnore));
+    }
+
+    /**
+     * Calibrates the wrapped model's batch of predictions, so it is still evaluated once per instance and can use its
+     * own batch path
+     */
+    @Override
+    public List<PredictionMap> predictBatch(List<AttributesMap> attributesList) {
+        List<PredictionMap> predictions = Classifiers.predictBatch(wrappedPredictiveModel, attributesList);
+        for (PredictionMap prediction : predictions) {
+            calibrate(prediction);
+        }
+        return predictions;
+    }
+
+    @Override
+    public double[][] predictBatch(List<AttributesMap> attributesList, List<Serializable> classifications) {
+        List<PredictionMap> predictions = predictBatch(attributesList);
+        double[][] probabilities = new double[predictions.size()][classifications.size()];
+        for (int i = 0; i < probabilities.length; i++) {
+            for (int c = 0; c < classifications.size(); c++) {
+                probabilities[i][c] = predictions.get(i).get(classifications.get(c));
+            }
+        }
+        return probabilities;
+    }
+
+    /**
+     * Calibrates the positive classification's probability in the wrapped model's prediction, rather than asking the
+     * wrapped model for it again
+     */
+    private PredictionMap calibrate(PredictionMap predictionMap) {
+        double positiveClassProb = pavFunction.predict(predictionMap.get(Double.valueOf(1.0)));
         predictionMap.put(Double.valueOf(1.0), positiveClassProb);
         predictionMap.put(Double.valueOf(0.0), 1.0 - positiveClassProb);
-
         return predictionMap;
     }
 
@@ -4,6 +4,7 @@ import quickml.data.AttributesMap;
 import quickml.data.PredictionMap;
 
 import java.io.Serializable;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -34,4 +35,29 @@ public abstract class AbstractClassifier implements Classifier {
         }
         return mostProbableClass;
     }
+
+    /**
+     * @return a prediction for each of the attributes, in the same order.  Callers holding a {@link Classifier} use
+     * {@link Classifiers#predictBatch(Classifier, List)}, which falls back to predicting one instance at a time for
+     * models that don't extend this class.
+     */
+    public List<PredictionMap> predictBatch(List<AttributesMap> attributesList) {
+        return Classifiers.predictEach(this, attributesList);
+    }
+
+    /**
+     * @return the probability of each of the classifications for each of the attributes, indexed [instance][classification]
+     */
+    public double[][] predictBatch(List<AttributesMap> attributesList, List<Serializable> classifications) {
+        return Classifiers.predictEach(this, attributesList, classifications);
+    }
+
+    /**
+     * @return the probability of each of the classifications when ignoring each of the attributesToIgnore by itself,
+     * as {@link #predictWithoutAttributes} would give, indexed [attribute][classification].  Callers holding a
+     * {@link Classifier} use {@link Classifiers#predictWithoutEachAttribute}.
+     */
+    public double[][] predictWithoutEachAttribute(AttributesMap attributes, List<String> attributesToIgnore, List<Serializable> classifications) {
+        return Classifiers.predictWithoutEach(this, attributes, attributesToIgnore, classifications);
+    }
 }
@@ -0,0 +1,83 @@
+package quickml.supervised.classifier;
+
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Batch prediction for any {@link Classifier}.  Models extending {@link AbstractClassifier} score the whole batch
+ * themselves, which some (e.g. random forests) do faster than instance by instance, and other models are asked for
+ * one prediction at a time.  Likewise for predicting without each of several attributes.
+ */
+public final class Classifiers {
+
+    private Classifiers() {
+    }
+
+    /**
+     * @return a prediction for each of the attributes, in the same order
+     */
+    public static List<PredictionMap> predictBatch(Classifier classifier, List<AttributesMap> attributesList) {
+        if (classifier instanceof AbstractClassifier) {
+            return ((AbstractClassifier) classifier).predictBatch(attributesList);
+        }
+        return predictEach(classifier, attributesList);
+    }
+
+    /**
+     * @return the probability of each of the classifications for each of the attributes, indexed [instance][classification]
+     */
+    public static double[][] predictBatch(Classifier classifier, List<AttributesMap> attributesList, List<Serializable> classifications) {
+        if (classifier instanceof AbstractClassifier) {
+            return ((AbstractClassifier) classifier).predictBatch(attributesList, classifications);
+        }
+        return predictEach(classifier, attributesList, classifications);
+    }
+
+    /**
+     * @return the probability of each of the classifications when ignoring each of the attributesToIgnore by itself,
+     * as {@link Classifier#predictWithoutAttributes} would give, indexed [attribute][classification]
+     */
+    public static double[][] predictWithoutEachAttribute(Classifier classifier, AttributesMap attributes, List<String> attributesToIgnore,
+                                                         List<Serializable> classifications) {
+        if (classifier instanceof AbstractClassifier) {
+            return ((AbstractClassifier) classifier).predictWithoutEachAttribute(attributes, attributesToIgnore, classifications);
+        }
+        return predictWithoutEach(classifier, attributes, attributesToIgnore, classifications);
+    }
+
+    static List<PredictionMap> predictEach(Classifier classifier, List<AttributesMap> attributesList) {
+        List<PredictionMap> predictions = new ArrayList<>(attributesList.size());
+        for (AttributesMap attributes : attributesList) {
+            predictions.add(classifier.predict(attributes));
+        }
+        return predictions;
+    }
+
+    static double[][] predictEach(Classifier classifier, List<AttributesMap> attributesList, List<Serializable> classifications) {
+        double[][] probabilities = new double[attributesList.size()][classifications.size()];
+        for (int i = 0; i < probabilities.length; i++) {
+            PredictionMap prediction = classifier.predict(attributesList.get(i));
+            for (int c = 0; c < classifications.size(); c++) {
+                probabilities[i][c] = prediction.get(classifications.get(c));
+            }
+        }
+        return probabilities;
+    }
+
+    static double[][] predictWithoutEach(Classifier classifier, AttributesMap attributes, List<String> attributesToIgnore,
+                                         List<Serializable> classifications) {
+        double[][] probabilities = new double[attributesToIgnore.size()][classifications.size()];
+        for (int a = 0; a < probabilities.length; a++) {
+            PredictionMap prediction = classifier.predictWithoutAttributes(attributes, Collections.singleton(attributesToIgnore.get(a)));
+            for (int c = 0; c < classifications.size(); c++) {
+                probabilities[a][c] = prediction.get(classifications.get(c));
+            }
+        }
+        return probabilities;
+    }
+}
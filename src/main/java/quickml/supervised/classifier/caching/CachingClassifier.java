@@ -0,0 +1,123 @@
+package quickml.supervised.classifier.caching;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.data.Schema;
+import quickml.supervised.classifier.AbstractClassifier;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.randomForest.RandomForest;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serves repeated predictions of a wrapped classifier from a cache.  The cache is keyed on the values of just the
+ * attributes the classifier uses, so requests that differ only in attributes it ignores share an entry.
+ * <p/>
+ * At most maximumSize predictions are kept, the least recently used being evicted first.  Hits, misses and evictions
+ * are counted, see {@link #getStats()}.  Predictions without attributes aren't cached.  The cache isn't serialized,
+ * a deserialized CachingClassifier starts with an empty one.
+ */
+public class CachingClassifier extends AbstractClassifier {
+    private static final long serialVersionUID = 2601947793615508218L;
+
+    public final Classifier wrappedClassifier;
+    private final String[] keyAttributes;
+    private final long maximumSize;
+    private transient Cache<List<Serializable>, Map<Serializable, Double>> cache;
+
+    /**
+     * @param keyAttributes every attribute the wrapped classifier's predictions depend on
+     */
+    public CachingClassifier(Classifier wrappedClassifier, Collection<String> keyAttributes, long maximumSize) {
+        Preconditions.checkArgument(maximumSize > 0, "maximumSize must be positive");
+        this.wrappedClassifier = wrappedClassifier;
+        this.keyAttributes = keyAttributes.toArray(new String[keyAttributes.size()]);
+        this.maximumSize = maximumSize;
+        createCache();
+    }
+
+    /**
+     * Caches the forest's predictions keyed on the attributes its branches test
+     */
+    public static CachingClassifier of(RandomForest randomForest, long maximumSize) {
+        return new CachingClassifier(randomForest, attributesOf(randomForest.getSchema()), maximumSize);
+    }
+
+    /**
+     * Caches the tree's predictions keyed on the attributes its branches test
+     */
+    public static CachingClassifier of(Tree tree, long maximumSize) {
+        return new CachingClassifier(tree, attributesOf(tree.getSchema()), maximumSize);
+    }
+
+    private static List<String> attributesOf(Schema schema) {
+        String[] attributes = new String[schema.size()];
+        for (int slot = 0; slot < attributes.length; slot++) {
+            attributes[slot] = schema.attributeName(slot);
+        }
+        return Arrays.asList(attributes);
+    }
+
+    private void createCache() {
+        cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        createCache();
+    }
+
+    public List<String> getKeyAttributes() {
+        return Arrays.asList(keyAttributes.clone());
+    }
+
+    /**
+     * @return the cache's hit, miss and eviction counts since it was created
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public PredictionMap predict(AttributesMap attributes) {
+        Serializable[] key = new Serializable[keyAttributes.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = attributes.get(keyAttributes[i]);
+        }
+        List<Serializable> keyList = Arrays.asList(key);
+        Map<Serializable, Double> prediction = cache.getIfPresent(keyList);
+        if (prediction == null) {
+            prediction = ImmutableMap.copyOf(wrappedClassifier.predict(attributes));
+            cache.put(keyList, prediction);
+        }
+        // callers may change the prediction they're given, so it mustn't be the cached one
+        return new PredictionMap(new HashMap<>(prediction));
+    }
+
+    @Override
+    public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        return wrappedClassifier.predictWithoutAttributes(attributes, attributesToIgnore);
+    }
+}
@@ -0,0 +1,17 @@
+package quickml.supervised.classifier.compiled;
+
+/**
+ * The superclass of the classes generated by {@link TreeCompiler}.  Each generated class evaluates a subset of the
+ * trees of a {@link FlatNodes}, with every tree compiled into its own method of nested if statements.
+ */
+public abstract class CompiledTreeEvaluator {
+
+    /**
+     * Finds the leaf each of this evaluator's trees reaches.
+     *
+     * @param numericValues the value of each attribute of the {@link FlatNodes} as a double, for numeric tests
+     * @param values        the value of each attribute, for categorical tests
+     * @param leafOffsets   written with the {@link FlatNodes} leaf offset for each compiled tree, indexed by tree
+     */
+    public abstract void evaluate(double[] numericValues, Object[] values, int[] leafOffsets);
+}
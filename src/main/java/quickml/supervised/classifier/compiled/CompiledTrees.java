@@ -0,0 +1,139 @@
+package quickml.supervised.classifier.compiled;
+
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.AbstractClassifier;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A tree or random forest whose trees were compiled into Java classes by {@link TreeCompiler}, with any trees that
+ * couldn't be compiled interpreted from their {@link FlatNodes}.  Predictions give the mean over the trees of the
+ * probability of every classification.
+ * <p/>
+ * The generated classes are not serialized, they are compiled again when a CompiledTrees is deserialized.
+ * Numeric tests treat a value that isn't a number as NaN, so it never exceeds a threshold.
+ */
+public class CompiledTrees extends AbstractClassifier {
+    private static final long serialVersionUID = -7143097782164220934L;
+
+    public final FlatNodes nodes;
+    private final int maxBytesPerMethod;
+    private transient List<CompiledTreeEvaluator> evaluators;
+    private transient boolean[] compiled;
+
+    CompiledTrees(FlatNodes nodes, int maxBytesPerMethod) {
+        this.nodes = nodes;
+        this.maxBytesPerMethod = maxBytesPerMethod;
+        compile();
+    }
+
+    private void compile() {
+        compiled = new boolean[nodes.roots.length];
+        evaluators = TreeCompiler.compileEvaluators(nodes, maxBytesPerMethod, compiled);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        compile();
+    }
+
+    /**
+     * @return the number of trees running as compiled code, the rest are interpreted
+     */
+    public int getNumCompiledTrees() {
+        int count = 0;
+        for (boolean treeCompiled : compiled) {
+            if (treeCompiled) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the mean, over the trees, of each classification's probability, indexed as {@link FlatNodes#getClassifications()}
+     */
+    public double[] getProbabilities(AttributesMap attributes) {
+        Serializable[] values = nodes.attributeValues(attributes);
+        int[] leafOffsets = leafOffsets(values);
+        int numClassifications = nodes.classifications.length;
+        double[] probabilities = new double[numClassifications];
+        for (int leafOffset : leafOffsets) {
+            for (int c = 0; c < numClassifications; c++) {
+                probabilities[c] += nodes.leafProbabilities[leafOffset + c];
+            }
+        }
+        for (int c = 0; c < numClassifications; c++) {
+            probabilities[c] /= leafOffsets.length;
+        }
+        return probabilities;
+    }
+
+    private int[] leafOffsets(Serializable[] values) {
+        int[] leafOffsets = new int[nodes.roots.length];
+        if (!evaluators.isEmpty()) {
+            double[] numericValues = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                Serializable value = values[i];
+                numericValues[i] = value == null ? 0 : (value instanceof Number ? ((Number) value).doubleValue() : Double.NaN);
+            }
+            for (CompiledTreeEvaluator evaluator : evaluators) {
+                evaluator.evaluate(numericValues, values, leafOffsets);
+            }
+        }
+        for (int tree = 0; tree < compiled.length; tree++) {
+            if (!compiled[tree]) {
+                leafOffsets[tree] = nodes.leafOffset(tree, values);
+            }
+        }
+        return leafOffsets;
+    }
+
+    @Override
+    public double getProbability(AttributesMap attributes, Serializable classification) {
+        int c = nodes.classificationIndex(classification);
+        return c < 0 ? 0 : getProbabilities(attributes)[c];
+    }
+
+    @Override
+    public PredictionMap predict(AttributesMap attributes) {
+        return toPredictionMap(getProbabilities(attributes));
+    }
+
+    @Override
+    public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        Serializable[] values = nodes.attributeValues(attributes);
+        boolean[] ignored = nodes.ignoredAttributes(attributesToIgnore);
+        double[] probabilities = new double[nodes.classifications.length];
+        for (int tree = 0; tree < nodes.roots.length; tree++) {
+            nodes.addProbabilitiesWithoutAttributes(nodes.roots[tree], 1.0, values, ignored, probabilities);
+        }
+        for (int c = 0; c < probabilities.length; c++) {
+            probabilities[c] /= nodes.roots.length;
+        }
+        return toPredictionMap(probabilities);
+    }
+
+    @Override
+    public Serializable getClassificationByMaxProb(AttributesMap attributes) {
+        double[] probabilities = getProbabilities(attributes);
+        int best = 0;
+        for (int c = 1; c < probabilities.length; c++) {
+            if (probabilities[c] > probabilities[best]) {
+                best = c;
+            }
+        }
+        return nodes.classifications[best];
+    }
+
+    private PredictionMap toPredictionMap(double[] probabilities) {
+        PredictionMap predictionMap = PredictionMap.newMap();
+        for (int c = 0; c < probabilities.length; c++) {
+            predictionMap.put(nodes.classifications[c], probabilities[c]);
+        }
+        return predictionMap;
+    }
+}
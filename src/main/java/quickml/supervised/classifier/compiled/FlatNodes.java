@@ -0,0 +1,232 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import quickml.data.AttributesMap;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.CategoricalBranch;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.NumericBranch;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The nodes of one or more trees stored as parallel primitive arrays rather than as linked {@link Node} objects.
+ * Each tree's nodes are laid out contiguously in breadth-first order, so the top levels that every prediction
+ * passes through share a few cache lines.
+ * <p/>
+ * Node i is a leaf if attributeIndex[i] is -1, in which case the probability of classification c is
+ * leafProbabilities[leafOffset[i] + c], where c indexes {@link #classifications}.  Otherwise it is a categorical branch
+ * if categorySetId[i] is not -1, deciding true when the attribute's value is in categorySets.get(categorySetId[i]), or
+ * a numeric branch deciding true when the attribute's value is greater than threshold[i].  As with
+ * {@link NumericBranch} and {@link CategoricalBranch}, a missing numeric value is treated as 0 and a missing
+ * categorical value decides false.
+ */
+public final class FlatNodes implements Serializable {
+    private static final long serialVersionUID = 4713052395812673310L;
+
+    public static final int LEAF = -1;
+    public static final int NUMERIC = -1;
+
+    final String[] attributeNames;
+    final Serializable[] classifications;
+    final int[] roots;
+
+    final int[] attributeIndex;
+    final double[] threshold;
+    final int[] categorySetId;
+    final int[] trueChild;
+    final int[] falseChild;
+    final double[] probabilityOfTrueChild;
+    final int[] leafOffset;
+
+    final List<Set<Serializable>> categorySets;
+    final double[] leafProbabilities;
+
+    private FlatNodes(String[] attributeNames, Serializable[] classifications, int[] roots, int numNodes, int numCategorySets, int numLeaves) {
+        this.attributeNames = attributeNames;
+        this.classifications = classifications;
+        this.roots = roots;
+        attributeIndex = new int[numNodes];
+        threshold = new double[numNodes];
+        categorySetId = new int[numNodes];
+        trueChild = new int[numNodes];
+        falseChild = new int[numNodes];
+        probabilityOfTrueChild = new double[numNodes];
+        leafOffset = new int[numNodes];
+        categorySets = new ArrayList<>(numCategorySets);
+        leafProbabilities = new double[numLeaves * classifications.length];
+    }
+
+    /**
+     * @param classifications the classifications to give probabilities for, in the order they will be indexed
+     */
+    public static FlatNodes flatten(List<Node> trees, List<Serializable> classifications) {
+        Map<String, Integer> attributeIndices = Maps.newLinkedHashMap();
+        int numNodes = 0, numCategorySets = 0, numLeaves = 0;
+        ArrayDeque<Node> toVisit = new ArrayDeque<>(trees);
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.poll();
+            numNodes++;
+            if (node instanceof Leaf) {
+                numLeaves++;
+                continue;
+            }
+            Branch branch = (Branch) node;
+            if (!attributeIndices.containsKey(branch.attribute)) {
+                attributeIndices.put(branch.attribute, attributeIndices.size());
+            }
+            if (branch instanceof CategoricalBranch) {
+                numCategorySets++;
+            } else if (!(branch instanceof NumericBranch)) {
+                throw new IllegalArgumentException("Can't flatten branches of type " + branch.getClass().getSimpleName());
+            }
+            toVisit.add(branch.trueChild);
+            toVisit.add(branch.falseChild);
+        }
+
+        int[] roots = new int[trees.size()];
+        FlatNodes flatNodes = new FlatNodes(attributeIndices.keySet().toArray(new String[attributeIndices.size()]),
+                classifications.toArray(new Serializable[classifications.size()]), roots, numNodes, numCategorySets, numLeaves);
+
+        int nextIndex = 0, nextLeafOffset = 0;
+        for (int treeIndex = 0; treeIndex < trees.size(); treeIndex++) {
+            roots[treeIndex] = nextIndex++;
+            // breadth first; children are numbered as they are queued, so nodes are filled in index order
+            toVisit.add(trees.get(treeIndex));
+            int index = roots[treeIndex];
+            while (!toVisit.isEmpty()) {
+                Node node = toVisit.poll();
+                if (node instanceof Leaf) {
+                    Leaf leaf = (Leaf) node;
+                    flatNodes.attributeIndex[index] = LEAF;
+                    flatNodes.leafOffset[index] = nextLeafOffset;
+                    for (int c = 0; c < classifications.size(); c++) {
+                        flatNodes.leafProbabilities[nextLeafOffset + c] = leaf.getProbability(classifications.get(c));
+                    }
+                    nextLeafOffset += classifications.size();
+                } else {
+                    Branch branch = (Branch) node;
+                    flatNodes.attributeIndex[index] = attributeIndices.get(branch.attribute);
+                    flatNodes.probabilityOfTrueChild[index] = branch.getProbabilityOfTrueChild();
+                    if (branch instanceof CategoricalBranch) {
+                        flatNodes.categorySetId[index] = flatNodes.categorySets.size();
+                        flatNodes.categorySets.add(new HashSet<>(((CategoricalBranch) branch).inSet));
+                    } else {
+                        flatNodes.categorySetId[index] = NUMERIC;
+                        flatNodes.threshold[index] = ((NumericBranch) branch).threshold;
+                    }
+                    flatNodes.trueChild[index] = nextIndex++;
+                    flatNodes.falseChild[index] = nextIndex++;
+                    toVisit.add(branch.trueChild);
+                    toVisit.add(branch.falseChild);
+                }
+                index++;
+            }
+        }
+        return flatNodes;
+    }
+
+    public int getNumTrees() {
+        return roots.length;
+    }
+
+    public int getNumNodes() {
+        return attributeIndex.length;
+    }
+
+    public List<Serializable> getClassifications() {
+        return Lists.newArrayList(classifications);
+    }
+
+    /**
+     * Reads every attribute the trees test, so that each is only looked up once however many nodes test it.
+     */
+    Serializable[] attributeValues(AttributesMap attributes) {
+        Serializable[] values = new Serializable[attributeNames.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = attributes.get(attributeNames[i]);
+        }
+        return values;
+    }
+
+    /**
+     * @return the leafOffset of the leaf of the given tree reached by the attribute values
+     */
+    int leafOffset(int tree, Serializable[] values) {
+        int node = roots[tree];
+        while (attributeIndex[node] != LEAF) {
+            node = decide(node, values[attributeIndex[node]]) ? trueChild[node] : falseChild[node];
+        }
+        return leafOffset[node];
+    }
+
+    /**
+     * @return the leafOffset of the leaf of the given tree reached, looking attribute values up as they are needed
+     */
+    int leafOffset(int tree, AttributesMap attributes) {
+        int node = roots[tree];
+        while (attributeIndex[node] != LEAF) {
+            node = decide(node, attributes.get(attributeNames[attributeIndex[node]])) ? trueChild[node] : falseChild[node];
+        }
+        return leafOffset[node];
+    }
+
+    /**
+     * Adds the tree's probabilities for each classification to probabilities, with branches on ignored attributes
+     * replaced by the average of both children weighted by the fraction of training data that went each way.
+     */
+    void addProbabilitiesWithoutAttributes(int node, double weight, Serializable[] values, boolean[] ignored, double[] probabilities) {
+        while (attributeIndex[node] != LEAF) {
+            if (ignored[attributeIndex[node]]) {
+                double probabilityOfTrue = probabilityOfTrueChild[node];
+                addProbabilitiesWithoutAttributes(trueChild[node], weight * probabilityOfTrue, values, ignored, probabilities);
+                weight *= 1 - probabilityOfTrue;
+                node = falseChild[node];
+            } else {
+                node = decide(node, values[attributeIndex[node]]) ? trueChild[node] : falseChild[node];
+            }
+        }
+        for (int c = 0; c < probabilities.length; c++) {
+            probabilities[c] += weight * leafProbabilities[leafOffset[node] + c];
+        }
+    }
+
+    boolean[] ignoredAttributes(Set<String> attributesToIgnore) {
+        boolean[] ignored = new boolean[attributeNames.length];
+        for (int i = 0; i < ignored.length; i++) {
+            ignored[i] = attributesToIgnore.contains(attributeNames[i]);
+        }
+        return ignored;
+    }
+
+    int classificationIndex(Serializable classification) {
+        for (int c = 0; c < classifications.length; c++) {
+            if (classifications[c].equals(classification)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private boolean decide(int node, Serializable value) {
+        int categorySet = categorySetId[node];
+        if (categorySet != NUMERIC) {
+            return categorySets.get(categorySet).contains(value);
+        }
+        if (value == null) {
+            return 0 > threshold[node];
+        }
+        if (!(value instanceof Number)) {
+            throw new RuntimeException("Expecting a number as the value of " + attributeNames[attributeIndex[node]] + " but got " + value + " of type " + value.getClass().getSimpleName());
+        }
+        return ((Number) value).doubleValue() > threshold[node];
+    }
+}
@@ -0,0 +1,108 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.collect.Lists;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.AbstractClassifier;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.randomForest.RandomForest;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link RandomForest} flattened into {@link FlatNodes} for faster prediction.  Each attribute the forest tests is
+ * read from the {@link AttributesMap} once per prediction, rather than once per node visited.  Predictions give a
+ * probability for every classification of the forest.
+ */
+public class FlatRandomForest extends AbstractClassifier {
+    private static final long serialVersionUID = 2256319406710733982L;
+
+    public final FlatNodes nodes;
+
+    protected FlatRandomForest(FlatNodes nodes) {
+        this.nodes = nodes;
+    }
+
+    public static FlatRandomForest fromRandomForest(RandomForest randomForest) {
+        List<Node> roots = Lists.newArrayListWithCapacity(randomForest.trees.size());
+        for (Tree tree : randomForest.trees) {
+            roots.add(tree.node);
+        }
+        return new FlatRandomForest(FlatNodes.flatten(roots, Lists.newArrayList(randomForest.getClassifications())));
+    }
+
+    /**
+     * @return the mean, over the trees, of each classification's probability, indexed as {@link FlatNodes#getClassifications()}
+     */
+    public double[] getProbabilities(AttributesMap attributes) {
+        Serializable[] values = nodes.attributeValues(attributes);
+        int numClassifications = nodes.classifications.length;
+        double[] probabilities = new double[numClassifications];
+        for (int tree = 0; tree < nodes.roots.length; tree++) {
+            int leafOffset = nodes.leafOffset(tree, values);
+            for (int c = 0; c < numClassifications; c++) {
+                probabilities[c] += nodes.leafProbabilities[leafOffset + c];
+            }
+        }
+        for (int c = 0; c < numClassifications; c++) {
+            probabilities[c] /= nodes.roots.length;
+        }
+        return probabilities;
+    }
+
+    @Override
+    public double getProbability(AttributesMap attributes, Serializable classification) {
+        int c = nodes.classificationIndex(classification);
+        if (c < 0) {
+            return 0;
+        }
+        Serializable[] values = nodes.attributeValues(attributes);
+        double total = 0;
+        for (int tree = 0; tree < nodes.roots.length; tree++) {
+            total += nodes.leafProbabilities[nodes.leafOffset(tree, values) + c];
+        }
+        return total / nodes.roots.length;
+    }
+
+    @Override
+    public PredictionMap predict(AttributesMap attributes) {
+        return toPredictionMap(getProbabilities(attributes));
+    }
+
+    @Override
+    public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        Serializable[] values = nodes.attributeValues(attributes);
+        boolean[] ignored = nodes.ignoredAttributes(attributesToIgnore);
+        double[] probabilities = new double[nodes.classifications.length];
+        for (int tree = 0; tree < nodes.roots.length; tree++) {
+            nodes.addProbabilitiesWithoutAttributes(nodes.roots[tree], 1.0, values, ignored, probabilities);
+        }
+        for (int c = 0; c < probabilities.length; c++) {
+            probabilities[c] /= nodes.roots.length;
+        }
+        return toPredictionMap(probabilities);
+    }
+
+    @Override
+    public Serializable getClassificationByMaxProb(AttributesMap attributes) {
+        double[] probabilities = getProbabilities(attributes);
+        int best = 0;
+        for (int c = 1; c < probabilities.length; c++) {
+            if (probabilities[c] > probabilities[best]) {
+                best = c;
+            }
+        }
+        return nodes.classifications[best];
+    }
+
+    private PredictionMap toPredictionMap(double[] probabilities) {
+        PredictionMap predictionMap = PredictionMap.newMap();
+        for (int c = 0; c < probabilities.length; c++) {
+            predictionMap.put(nodes.classifications[c], probabilities[c]);
+        }
+        return predictionMap;
+    }
+}
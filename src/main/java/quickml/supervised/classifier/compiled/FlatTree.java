@@ -0,0 +1,68 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.collect.Lists;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.AbstractClassifier;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * A {@link Tree} flattened into {@link FlatNodes} for faster prediction.  Predictions give a probability for every
+ * classification of the tree, 0 for those the leaf reached never saw.
+ */
+public class FlatTree extends AbstractClassifier {
+    private static final long serialVersionUID = -3581497613209862410L;
+
+    public final FlatNodes nodes;
+
+    protected FlatTree(FlatNodes nodes) {
+        this.nodes = nodes;
+    }
+
+    public static FlatTree fromTree(Tree tree) {
+        return new FlatTree(FlatNodes.flatten(Lists.<Node>newArrayList(tree.node), Lists.newArrayList(tree.getClassifications())));
+    }
+
+    @Override
+    public double getProbability(AttributesMap attributes, Serializable classification) {
+        int c = nodes.classificationIndex(classification);
+        return c < 0 ? 0 : nodes.leafProbabilities[nodes.leafOffset(0, attributes) + c];
+    }
+
+    @Override
+    public PredictionMap predict(AttributesMap attributes) {
+        int leafOffset = nodes.leafOffset(0, attributes);
+        PredictionMap predictionMap = PredictionMap.newMap();
+        for (int c = 0; c < nodes.classifications.length; c++) {
+            predictionMap.put(nodes.classifications[c], nodes.leafProbabilities[leafOffset + c]);
+        }
+        return predictionMap;
+    }
+
+    @Override
+    public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        double[] probabilities = new double[nodes.classifications.length];
+        nodes.addProbabilitiesWithoutAttributes(nodes.roots[0], 1.0, nodes.attributeValues(attributes), nodes.ignoredAttributes(attributesToIgnore), probabilities);
+        PredictionMap predictionMap = PredictionMap.newMap();
+        for (int c = 0; c < probabilities.length; c++) {
+            predictionMap.put(nodes.classifications[c], probabilities[c]);
+        }
+        return predictionMap;
+    }
+
+    @Override
+    public Serializable getClassificationByMaxProb(AttributesMap attributes) {
+        int leafOffset = nodes.leafOffset(0, attributes);
+        int best = 0;
+        for (int c = 1; c < nodes.classifications.length; c++) {
+            if (nodes.leafProbabilities[leafOffset + c] > nodes.leafProbabilities[leafOffset + best]) {
+                best = c;
+            }
+        }
+        return nodes.classifications[best];
+    }
+}
@@ -0,0 +1,57 @@
+package quickml.supervised.classifier.compiled;
+
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.utlities.SerializationUtility;
+
+/**
+ * The ways a {@link RandomForest} can be evaluated, so the fastest for a model can be chosen when it is loaded.
+ * Walking the trees suits a few deep trees, QuickScorer many small ones.
+ */
+public enum ForestEvaluation {
+    /**
+     * Walk each tree's nodes, using the forest as it was built
+     */
+    TRAVERSAL {
+        @Override
+        public Classifier evaluatorFor(RandomForest randomForest) {
+            return randomForest;
+        }
+    },
+    /**
+     * Walk each tree's nodes stored in arrays, see {@link FlatRandomForest}
+     */
+    FLAT {
+        @Override
+        public Classifier evaluatorFor(RandomForest randomForest) {
+            return FlatRandomForest.fromRandomForest(randomForest);
+        }
+    },
+    /**
+     * Run each tree as generated code, see {@link TreeCompiler}
+     */
+    COMPILED {
+        @Override
+        public Classifier evaluatorFor(RandomForest randomForest) {
+            return new TreeCompiler().compile(randomForest);
+        }
+    },
+    /**
+     * Mask bitvectors of leaves with every tree's thresholds sorted by attribute, see {@link QuickScorerForest}
+     */
+    QUICK_SCORER {
+        @Override
+        public Classifier evaluatorFor(RandomForest randomForest) {
+            return QuickScorerForest.fromRandomForest(randomForest);
+        }
+    };
+
+    public abstract Classifier evaluatorFor(RandomForest randomForest);
+
+    /**
+     * Loads a random forest written by {@link SerializationUtility#writeModelToGZIPFile} and evaluates it this way
+     */
+    public Classifier load(String modelFile) {
+        return evaluatorFor(new SerializationUtility<RandomForest>().loadObjectFromGZIPFile(modelFile));
+    }
+}
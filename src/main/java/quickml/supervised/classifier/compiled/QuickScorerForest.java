@@ -0,0 +1,342 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.AbstractClassifier;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.CategoricalBranch;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.NumericBranch;
+import quickml.supervised.classifier.randomForest.RandomForest;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link RandomForest} evaluated with the QuickScorer algorithm (Lucchese et al., SIGIR 2015) rather than by
+ * walking each tree from its root, which for forests of many small trees spends most of its time on mispredicted
+ * branches.
+ * <p/>
+ * Each tree's leaves are numbered from left to right, taking a branch's false child as its left, and a prediction
+ * starts with a bitvector per tree with a bit set for every leaf.  A branch that sends the instance to its true
+ * child rules out every leaf of its false child, so its bitvector mask clears them.  Because the numeric thresholds
+ * of every tree are sorted by attribute, the branches an attribute's value sends true are a prefix of that
+ * attribute's list, found without visiting any other node.  The categorical branches sending a value true are found
+ * with a single lookup of the value.  Once every mask is applied, the lowest set bit of each tree's bitvector is the
+ * leaf the instance would have reached.
+ * <p/>
+ * As with {@link CompiledTrees}, a missing numeric value is treated as 0 and a value that isn't a number as NaN, so it
+ * never exceeds a threshold.  Predictions give the mean over the trees of the probability of every classification.
+ * Ignoring an attribute means following both children of its branches, which the bitvectors can't represent, so
+ * predictions without attributes are delegated to a {@link FlatRandomForest} of the same trees.
+ */
+public class QuickScorerForest extends AbstractClassifier {
+    private static final long serialVersionUID = -3519048725146389203L;
+
+    private final String[] attributeNames;
+    private final Serializable[] classifications;
+
+    // for each attribute, its numeric branches sorted by threshold, as the masks to apply when the value exceeds them
+    private final double[][] thresholds;
+    private final int[][] thresholdMaskWords;
+    private final long[][] thresholdMasks;
+    // for each attribute, the masks to apply for each categorical value, null if no categorical branch tests it
+    private final List<Map<Serializable, Masks>> categoricalMasks;
+
+    private final long[] initialBitvectors;
+    private final int[] treeWordOffsets;
+    private final int[] treeLeafOffsets;
+    private final double[] leafProbabilities;
+
+    private final FlatRandomForest flatRandomForest;
+
+    private QuickScorerForest(String[] attributeNames, Serializable[] classifications, int numTrees, int numWords, int numLeaves,
+                              FlatRandomForest flatRandomForest) {
+        this.attributeNames = attributeNames;
+        this.classifications = classifications;
+        this.flatRandomForest = flatRandomForest;
+        thresholds = new double[attributeNames.length][];
+        thresholdMaskWords = new int[attributeNames.length][];
+        thresholdMasks = new long[attributeNames.length][];
+        categoricalMasks = Lists.newArrayList(Collections.<Map<Serializable, Masks>>nCopies(attributeNames.length, null));
+        initialBitvectors = new long[numWords];
+        treeWordOffsets = new int[numTrees + 1];
+        treeLeafOffsets = new int[numTrees];
+        leafProbabilities = new double[numLeaves * classifications.length];
+    }
+
+    public static QuickScorerForest fromRandomForest(RandomForest randomForest) {
+        List<Serializable> classifications = randomForest.getIndexedClassifications();
+        Map<String, Integer> attributeIndices = Maps.newLinkedHashMap();
+        List<List<Leaf>> treeLeaves = Lists.newArrayList();
+        List<BranchLeaves> branches = Lists.newArrayList();
+        int numWords = 0, numLeaves = 0;
+        for (int tree = 0; tree < randomForest.trees.size(); tree++) {
+            List<Leaf> leaves = Lists.newArrayList();
+            numberLeaves(randomForest.trees.get(tree).node, tree, leaves, branches, attributeIndices);
+            treeLeaves.add(leaves);
+            numWords += wordsFor(leaves.size());
+            numLeaves += leaves.size();
+        }
+
+        QuickScorerForest forest = new QuickScorerForest(attributeIndices.keySet().toArray(new String[attributeIndices.size()]),
+                classifications.toArray(new Serializable[classifications.size()]), treeLeaves.size(), numWords, numLeaves,
+                FlatRandomForest.fromRandomForest(randomForest));
+        int leafOffset = 0;
+        for (int tree = 0; tree < treeLeaves.size(); tree++) {
+            List<Leaf> leaves = treeLeaves.get(tree);
+            forest.treeWordOffsets[tree + 1] = forest.treeWordOffsets[tree] + wordsFor(leaves.size());
+            forest.treeLeafOffsets[tree] = leafOffset;
+            for (int leaf = 0; leaf < leaves.size(); leaf++) {
+                forest.initialBitvectors[forest.treeWordOffsets[tree] + leaf / 64] |= 1L << (leaf % 64);
+                for (int c = 0; c < classifications.size(); c++) {
+                    forest.leafProbabilities[(leafOffset + leaf) * classifications.size() + c] = leaves.get(leaf).getProbability(classifications.get(c));
+                }
+            }
+            leafOffset += leaves.size();
+        }
+        forest.addMasks(branches, attributeIndices);
+        return forest;
+    }
+
+    /**
+     * Numbers the leaves below node from left to right, recording the leaves of the false child of every branch.
+     */
+    private static void numberLeaves(Node node, int tree, List<Leaf> leaves, List<BranchLeaves> branches, Map<String, Integer> attributeIndices) {
+        if (node instanceof Leaf) {
+            leaves.add((Leaf) node);
+            return;
+        }
+        Branch branch = (Branch) node;
+        if (!(branch instanceof NumericBranch) && !(branch instanceof CategoricalBranch)) {
+            throw new IllegalArgumentException("Can't score branches of type " + branch.getClass().getSimpleName());
+        }
+        if (!attributeIndices.containsKey(branch.attribute)) {
+            attributeIndices.put(branch.attribute, attributeIndices.size());
+        }
+        int firstFalseLeaf = leaves.size();
+        numberLeaves(branch.falseChild, tree, leaves, branches, attributeIndices);
+        branches.add(new BranchLeaves(branch, tree, firstFalseLeaf, leaves.size()));
+        numberLeaves(branch.trueChild, tree, leaves, branches, attributeIndices);
+    }
+
+    private void addMasks(List<BranchLeaves> branches, Map<String, Integer> attributeIndices) {
+        List<List<BranchLeaves>> numericByAttribute = Lists.newArrayList();
+        for (int attribute = 0; attribute < attributeNames.length; attribute++) {
+            numericByAttribute.add(Lists.<BranchLeaves>newArrayList());
+        }
+        for (BranchLeaves branchLeaves : branches) {
+            int attribute = attributeIndices.get(branchLeaves.branch.attribute);
+            if (branchLeaves.branch instanceof NumericBranch) {
+                numericByAttribute.get(attribute).add(branchLeaves);
+                continue;
+            }
+            Map<Serializable, Masks> valueMasks = categoricalMasks.get(attribute);
+            if (valueMasks == null) {
+                valueMasks = new HashMap<>();
+                categoricalMasks.set(attribute, valueMasks);
+            }
+            for (Serializable value : ((CategoricalBranch) branchLeaves.branch).inSet) {
+                Masks masks = valueMasks.get(value);
+                if (masks == null) {
+                    masks = new Masks();
+                    valueMasks.put(value, masks);
+                }
+                masks.add(branchLeaves, treeWordOffsets);
+            }
+        }
+
+        for (int attribute = 0; attribute < attributeNames.length; attribute++) {
+            List<BranchLeaves> numeric = numericByAttribute.get(attribute);
+            Collections.sort(numeric, new Comparator<BranchLeaves>() {
+                @Override
+                public int compare(BranchLeaves a, BranchLeaves b) {
+                    return Double.compare(((NumericBranch) a.branch).threshold, ((NumericBranch) b.branch).threshold);
+                }
+            });
+            Masks masks = new Masks();
+            List<Double> maskThresholds = Lists.newArrayList();
+            for (BranchLeaves branchLeaves : numeric) {
+                int numMasks = masks.add(branchLeaves, treeWordOffsets);
+                for (int i = 0; i < numMasks; i++) {
+                    maskThresholds.add(((NumericBranch) branchLeaves.branch).threshold);
+                }
+            }
+            thresholds[attribute] = new double[maskThresholds.size()];
+            for (int i = 0; i < maskThresholds.size(); i++) {
+                thresholds[attribute][i] = maskThresholds.get(i);
+            }
+            masks.trim();
+            thresholdMaskWords[attribute] = masks.words;
+            thresholdMasks[attribute] = masks.masks;
+        }
+        for (Map<Serializable, Masks> valueMasks : categoricalMasks) {
+            if (valueMasks != null) {
+                for (Masks masks : valueMasks.values()) {
+                    masks.trim();
+                }
+            }
+        }
+    }
+
+    public List<Serializable> getClassifications() {
+        return Lists.newArrayList(classifications);
+    }
+
+    public int getNumTrees() {
+        return treeLeafOffsets.length;
+    }
+
+    /**
+     * @return the mean, over the trees, of each classification's probability, indexed as {@link #getClassifications()}
+     */
+    public double[] getProbabilities(AttributesMap attributes) {
+        long[] bitvectors = initialBitvectors.clone();
+        for (int attribute = 0; attribute < attributeNames.length; attribute++) {
+            Serializable value = attributes.get(attributeNames[attribute]);
+            double[] attributeThresholds = thresholds[attribute];
+            if (attributeThresholds.length > 0) {
+                double numericValue = value == null ? 0 : (value instanceof Number ? ((Number) value).doubleValue() : Double.NaN);
+                int[] words = thresholdMaskWords[attribute];
+                long[] masks = thresholdMasks[attribute];
+                for (int i = 0; i < attributeThresholds.length && attributeThresholds[i] < numericValue; i++) {
+                    bitvectors[words[i]] &= masks[i];
+                }
+            }
+            Map<Serializable, Masks> valueMasks = categoricalMasks.get(attribute);
+            if (valueMasks != null) {
+                Masks masks = valueMasks.get(value);
+                if (masks != null) {
+                    for (int i = 0; i < masks.size; i++) {
+                        bitvectors[masks.words[i]] &= masks.masks[i];
+                    }
+                }
+            }
+        }
+
+        int numClassifications = classifications.length;
+        double[] probabilities = new double[numClassifications];
+        for (int tree = 0; tree < treeLeafOffsets.length; tree++) {
+            int word = treeWordOffsets[tree];
+            while (bitvectors[word] == 0) {
+                word++;
+            }
+            int leaf = treeLeafOffsets[tree] + (word - treeWordOffsets[tree]) * 64 + Long.numberOfTrailingZeros(bitvectors[word]);
+            int leafOffset = leaf * numClassifications;
+            for (int c = 0; c < numClassifications; c++) {
+                probabilities[c] += leafProbabilities[leafOffset + c];
+            }
+        }
+        for (int c = 0; c < numClassifications; c++) {
+            probabilities[c] /= treeLeafOffsets.length;
+        }
+        return probabilities;
+    }
+
+    @Override
+    public double getProbability(AttributesMap attributes, Serializable classification) {
+        for (int c = 0; c < classifications.length; c++) {
+            if (classifications[c].equals(classification)) {
+                return getProbabilities(attributes)[c];
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public PredictionMap predict(AttributesMap attributes) {
+        double[] probabilities = getProbabilities(attributes);
+        PredictionMap predictionMap = PredictionMap.newMap();
+        for (int c = 0; c < probabilities.length; c++) {
+            predictionMap.put(classifications[c], probabilities[c]);
+        }
+        return predictionMap;
+    }
+
+    @Override
+    public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        return flatRandomForest.predictWithoutAttributes(attributes, attributesToIgnore);
+    }
+
+    @Override
+    public Serializable getClassificationByMaxProb(AttributesMap attributes) {
+        double[] probabilities = getProbabilities(attributes);
+        int best = 0;
+        for (int c = 1; c < probabilities.length; c++) {
+            if (probabilities[c] > probabilities[best]) {
+                best = c;
+            }
+        }
+        return classifications[best];
+    }
+
+    private static int wordsFor(int numLeaves) {
+        return (numLeaves + 63) / 64;
+    }
+
+    /**
+     * A branch with the range of leaf numbers, within its tree, of its false child.
+     */
+    private static class BranchLeaves {
+        final Branch branch;
+        final int tree;
+        final int firstFalseLeaf;
+        final int endFalseLeaf;
+
+        BranchLeaves(Branch branch, int tree, int firstFalseLeaf, int endFalseLeaf) {
+            this.branch = branch;
+            this.tree = tree;
+            this.firstFalseLeaf = firstFalseLeaf;
+            this.endFalseLeaf = endFalseLeaf;
+        }
+    }
+
+    /**
+     * Pairs of the index of a bitvector word and a mask to and it with.
+     */
+    private static class Masks implements Serializable {
+        private static final long serialVersionUID = 7406921548371154206L;
+
+        int[] words = new int[4];
+        long[] masks = new long[4];
+        int size;
+
+        /**
+         * Adds masks clearing the bits of the branch's false leaves, one per word they span.
+         *
+         * @return the number of masks added
+         */
+        int add(BranchLeaves branchLeaves, int[] treeWordOffsets) {
+            int added = 0;
+            int leaf = branchLeaves.firstFalseLeaf;
+            while (leaf < branchLeaves.endFalseLeaf) {
+                int wordEnd = Math.min((leaf / 64 + 1) * 64, branchLeaves.endFalseLeaf);
+                long cleared = (wordEnd - leaf == 64 ? -1L : ((1L << (wordEnd - leaf)) - 1)) << (leaf % 64);
+                if (size == words.length) {
+                    words = Arrays.copyOf(words, size * 2);
+                    masks = Arrays.copyOf(masks, size * 2);
+                }
+                words[size] = treeWordOffsets[branchLeaves.tree] + leaf / 64;
+                masks[size] = ~cleared;
+                size++;
+                added++;
+                leaf = wordEnd;
+            }
+            return added;
+        }
+
+        void trim() {
+            words = Arrays.copyOf(words, size);
+            masks = Arrays.copyOf(masks, size);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.randomForest.RandomForest;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiles trained trees into Java classes, so that a prediction runs straight-line code rather than walking a data
+ * structure.  Each tree becomes a method of nested if statements on local variables holding the attribute values
+ * it tests, returning the offset of the leaf reached.  The generated source is compiled in memory with the
+ * platform's Java compiler and the classes are defined by a private ClassLoader, so they can be unloaded with the model.
+ * <p/>
+ * HotSpot won't JIT compile a method of more than 8000 bytes of bytecode (its HugeMethodLimit), and a tree left to
+ * the bytecode interpreter is slower than walking the {@link FlatNodes} arrays.  So the bytecode of each tree's method
+ * is estimated, at about 9 bytes per numeric test, 18 per categorical test and 4 per leaf, and a tree whose estimate
+ * exceeds maxBytesPerMethod is instead evaluated by walking the arrays, as are all trees if no compiler is available
+ * (e.g. when running on a JRE) or compilation fails.  With the default limit that is a tree of roughly 600 to 1000
+ * nodes, depending on how many of its tests are categorical.
+ */
+public class TreeCompiler {
+    private static final Logger logger = LoggerFactory.getLogger(TreeCompiler.class);
+
+    /**
+     * HotSpot's HugeMethodLimit, the most bytecode a method can have and still be JIT compiled
+     */
+    public static final int DEFAULT_MAX_BYTES_PER_METHOD = 8000;
+
+    // upper bounds on what javac generates for each part of a tree's method
+    static final int NUMERIC_BRANCH_BYTES = 9;
+    static final int CATEGORICAL_BRANCH_BYTES = 18;
+    static final int LEAF_BYTES = 4;
+    static final int LOCAL_VARIABLE_BYTES = 7;
+    /**
+     * Keeps each generated class's constant pool well within its 65535 entry limit
+     */
+    private static final int MAX_NODES_PER_CLASS = 16000;
+    private static final String GENERATED_PACKAGE = "quickml.generated";
+    private static final AtomicLong classCounter = new AtomicLong(0);
+
+    private int maxBytesPerMethod = DEFAULT_MAX_BYTES_PER_METHOD;
+
+    /**
+     * The most bytecode, as estimated, that a tree's method may have for the tree to be compiled
+     */
+    public TreeCompiler maxBytesPerMethod(int maxBytesPerMethod) {
+        Preconditions.checkArgument(maxBytesPerMethod > 0, "maxBytesPerMethod must be positive");
+        this.maxBytesPerMethod = maxBytesPerMethod;
+        return this;
+    }
+
+    public CompiledTrees compile(Tree tree) {
+        return new CompiledTrees(FlatNodes.flatten(Lists.<Node>newArrayList(tree.node), Lists.newArrayList(tree.getClassifications())), maxBytesPerMethod);
+    }
+
+    public CompiledTrees compile(RandomForest randomForest) {
+        return new CompiledTrees(FlatRandomForest.fromRandomForest(randomForest).nodes, maxBytesPerMethod);
+    }
+
+    /**
+     * Compiles the trees of nodes that are small enough.
+     *
+     * @param compiled set to true for each tree that one of the returned evaluators covers
+     */
+    static List<CompiledTreeEvaluator> compileEvaluators(FlatNodes nodes, int maxBytesPerMethod, boolean[] compiled) {
+        List<List<Integer>> batches = Lists.newArrayList();
+        List<Integer> batch = Lists.newArrayList();
+        int batchNodes = 0;
+        for (int tree = 0; tree < nodes.roots.length; tree++) {
+            int treeNodes = treeEnd(nodes, tree) - nodes.roots[tree];
+            int methodBytes = estimateMethodBytes(nodes, tree);
+            if (methodBytes > maxBytesPerMethod) {
+                logger.debug("Tree {} has {} nodes, about {} bytes of bytecode, it will be interpreted", tree, treeNodes, methodBytes);
+                continue;
+            }
+            if (batchNodes + treeNodes > MAX_NODES_PER_CLASS && !batch.isEmpty()) {
+                batches.add(batch);
+                batch = Lists.newArrayList();
+                batchNodes = 0;
+            }
+            batch.add(tree);
+            batchNodes += treeNodes;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        if (batches.isEmpty()) {
+            return Lists.newArrayList();
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            logger.warn("No Java compiler available, trees will be interpreted");
+            return Lists.newArrayList();
+        }
+
+        Map<String, String> sources = Maps.newLinkedHashMap();
+        Map<String, List<Integer>> treesByClass = Maps.newHashMap();
+        for (List<Integer> trees : batches) {
+            String simpleName = "CompiledTrees" + classCounter.incrementAndGet();
+            sources.put(GENERATED_PACKAGE + "." + simpleName, generateSource(nodes, simpleName, trees));
+            treesByClass.put(GENERATED_PACKAGE + "." + simpleName, trees);
+        }
+
+        Map<String, byte[]> classBytes = compileSources(compiler, sources);
+        if (classBytes == null && sources.size() > 1) {
+            // find out which classes are at fault, so the rest can still be used
+            classBytes = Maps.newHashMap();
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                Map<String, byte[]> singleClass = compileSources(compiler, Collections.singletonMap(source.getKey(), source.getValue()));
+                if (singleClass != null) {
+                    classBytes.putAll(singleClass);
+                }
+            }
+        }
+        if (classBytes == null) {
+            return Lists.newArrayList();
+        }
+
+        GeneratedClassLoader classLoader = new GeneratedClassLoader(CompiledTreeEvaluator.class.getClassLoader(), classBytes);
+        List<CompiledTreeEvaluator> evaluators = Lists.newArrayList();
+        for (String className : sources.keySet()) {
+            if (!classBytes.containsKey(className)) {
+                continue;
+            }
+            try {
+                evaluators.add((CompiledTreeEvaluator) classLoader.loadClass(className)
+                        .getConstructor(Set[].class).newInstance((Object) nodes.categorySets.toArray(new Set<?>[nodes.categorySets.size()])));
+                for (int tree : treesByClass.get(className)) {
+                    compiled[tree] = true;
+                }
+            } catch (Exception e) {
+                logger.warn("Couldn't load compiled trees, they will be interpreted", e);
+            }
+        }
+        return evaluators;
+    }
+
+    /**
+     * @return a slight overestimate of the size of the bytecode javac generates for the tree's method
+     */
+    static int estimateMethodBytes(FlatNodes nodes, int tree) {
+        Set<Integer> numericAttributes = Sets.newHashSet();
+        Set<Integer> categoricalAttributes = Sets.newHashSet();
+        int bytes = 0;
+        for (int node = nodes.roots[tree]; node < treeEnd(nodes, tree); node++) {
+            if (nodes.attributeIndex[node] == FlatNodes.LEAF) {
+                bytes += LEAF_BYTES;
+            } else if (nodes.categorySetId[node] == FlatNodes.NUMERIC) {
+                bytes += NUMERIC_BRANCH_BYTES;
+                numericAttributes.add(nodes.attributeIndex[node]);
+            } else {
+                bytes += CATEGORICAL_BRANCH_BYTES;
+                categoricalAttributes.add(nodes.attributeIndex[node]);
+            }
+        }
+        return bytes + LOCAL_VARIABLE_BYTES * (numericAttributes.size() + categoricalAttributes.size());
+    }
+
+    /**
+     * @return the index one past the last node of the tree, the trees being stored contiguously
+     */
+    private static int treeEnd(FlatNodes nodes, int tree) {
+        return tree + 1 < nodes.roots.length ? nodes.roots[tree + 1] : nodes.attributeIndex.length;
+    }
+
+    static String generateSource(FlatNodes nodes, String simpleName, List<Integer> trees) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(GENERATED_PACKAGE).append(";\n\n");
+        source.append("public final class ").append(simpleName).append(" extends ").append(CompiledTreeEvaluator.class.getName()).append(" {\n");
+        source.append("    private final java.util.Set[] s;\n\n");
+        source.append("    public ").append(simpleName).append("(java.util.Set[] s) {\n        this.s = s;\n    }\n\n");
+        source.append("    @Override\n    public void evaluate(double[] x, Object[] o, int[] leafOffsets) {\n");
+        for (int tree : trees) {
+            source.append("        leafOffsets[").append(tree).append("] = t").append(tree).append("(x, o);\n");
+        }
+        source.append("    }\n");
+        for (int tree : trees) {
+            source.append("\n    private int t").append(tree).append("(double[] x, Object[] o) {\n");
+            SortedSet<Integer> numericAttributes = Sets.newTreeSet();
+            SortedSet<Integer> categoricalAttributes = Sets.newTreeSet();
+            for (int node = nodes.roots[tree]; node < treeEnd(nodes, tree); node++) {
+                if (nodes.attributeIndex[node] == FlatNodes.LEAF) {
+                    continue;
+                }
+                if (nodes.categorySetId[node] == FlatNodes.NUMERIC) {
+                    numericAttributes.add(nodes.attributeIndex[node]);
+                } else {
+                    categoricalAttributes.add(nodes.attributeIndex[node]);
+                }
+            }
+            for (int attribute : numericAttributes) {
+                source.append("        final double x").append(attribute).append(" = x[").append(attribute).append("];\n");
+            }
+            for (int attribute : categoricalAttributes) {
+                source.append("        final Object o").append(attribute).append(" = o[").append(attribute).append("];\n");
+            }
+            appendNode(nodes, nodes.roots[tree], 2, source);
+            source.append("    }\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private static void appendNode(FlatNodes nodes, int node, int indent, StringBuilder source) {
+        char[] padding = new char[indent * 4];
+        Arrays.fill(padding, ' ');
+        if (nodes.attributeIndex[node] == FlatNodes.LEAF) {
+            source.append(padding).append("return ").append(nodes.leafOffset[node]).append(";\n");
+            return;
+        }
+        int attribute = nodes.attributeIndex[node];
+        source.append(padding).append("if (");
+        if (nodes.categorySetId[node] == FlatNodes.NUMERIC) {
+            source.append('x').append(attribute).append(" > ").append(doubleLiteral(nodes.threshold[node]));
+        } else {
+            source.append("s[").append(nodes.categorySetId[node]).append("].contains(o").append(attribute).append(')');
+        }
+        source.append(") {\n");
+        appendNode(nodes, nodes.trueChild[node], indent + 1, source);
+        source.append(padding).append("} else {\n");
+        appendNode(nodes, nodes.falseChild[node], indent + 1, source);
+        source.append(padding).append("}\n");
+    }
+
+    private static String doubleLiteral(double value) {
+        if (Double.isNaN(value)) return "Double.NaN";
+        if (value == Double.POSITIVE_INFINITY) return "Double.POSITIVE_INFINITY";
+        if (value == Double.NEGATIVE_INFINITY) return "Double.NEGATIVE_INFINITY";
+        return Double.toString(value) + "d";
+    }
+
+    /**
+     * @return the bytes of each compiled class by name, or null if compilation failed
+     */
+    private static Map<String, byte[]> compileSources(JavaCompiler compiler, Map<String, String> sources) {
+        final Map<String, ByteArrayOutputStream> outputs = Maps.newHashMap();
+        List<JavaFileObject> sourceFiles = Lists.newArrayList();
+        for (final Map.Entry<String, String> source : sources.entrySet()) {
+            sourceFiles.add(new SimpleJavaFileObject(URI.create("string:///" + source.getKey().replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source.getValue();
+                }
+            });
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try {
+            StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+            JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardFileManager) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(Location location, final String className, JavaFileObject.Kind kind, FileObject sibling) {
+                    return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            ByteArrayOutputStream output = new ByteArrayOutputStream();
+                            outputs.put(className, output);
+                            return output;
+                        }
+                    };
+                }
+            };
+            List<String> options = Arrays.asList("-classpath", classpath(), "-g:none", "-nowarn");
+            Boolean succeeded = compiler.getTask(null, fileManager, diagnostics, options, null, sourceFiles).call();
+            if (succeeded == null || !succeeded) {
+                for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                    if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                        logger.warn("Couldn't compile trees, they will be interpreted: {}", diagnostic.getMessage(null));
+                        break;
+                    }
+                }
+                return null;
+            }
+        } catch (RuntimeException | StackOverflowError e) {
+            logger.warn("Couldn't compile trees, they will be interpreted", e);
+            return null;
+        }
+        Map<String, byte[]> classBytes = Maps.newHashMap();
+        for (Map.Entry<String, ByteArrayOutputStream> output : outputs.entrySet()) {
+            classBytes.put(output.getKey(), output.getValue().toByteArray());
+        }
+        return classBytes;
+    }
+
+    private static String classpath() {
+        StringBuilder classpath = new StringBuilder(System.getProperty("java.class.path", ""));
+        CodeSource codeSource = CompiledTreeEvaluator.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            try {
+                classpath.append(File.pathSeparator).append(new File(codeSource.getLocation().toURI()).getPath());
+            } catch (Exception e) {
+                logger.debug("Couldn't add {} to the compiler's classpath", codeSource.getLocation());
+            }
+        }
+        return classpath.toString();
+    }
+
+    private static class GeneratedClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classBytes;
+
+        GeneratedClassLoader(ClassLoader parent, Map<String, byte[]> classBytes) {
+            super(parent);
+            this.classBytes = classBytes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classBytes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
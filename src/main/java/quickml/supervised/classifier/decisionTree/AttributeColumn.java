@@ -0,0 +1,323 @@
+package quickml.supervised.classifier.decisionTree;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import quickml.data.AttributesMap;
+import quickml.data.Instance;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.CategoricalBranch;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.NumericBranch;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static quickml.supervised.classifier.decisionTree.TreeBuilder.MISSING_VALUE;
+
+/**
+ * The values of one attribute across a fixed list of training instances, indexed by the instances' positions (rows)
+ * in the list, for tree builders that score splits from per-row statistics such as gradients or label sums rather
+ * than by re-reading each instance's attributes at every node.
+ * <p/>
+ * Numeric values are bucketed once, into the bins between (at most) maxThresholds quantile thresholds, so that at each
+ * node the statistics can be summed per bin in one pass over its rows and every threshold then scored from prefix
+ * sums.  As in {@link TreeBuilder}, missing numeric values are treated as 0 and missing categorical values are
+ * {@link TreeBuilder#MISSING_VALUE}, which always goes to the out-set.
+ * <p/>
+ * {@link #findSplit} searches the column for its best split given a {@link SplitScorer}, the only part that differs
+ * between builders: numeric thresholds are scored from prefix sums over the bins, and categorical values are ordered
+ * by the scorer's key so that the best prefix of the ordering becomes the in-set.
+ */
+public abstract class AttributeColumn {
+    public final String attribute;
+
+    private AttributeColumn(String attribute) {
+        this.attribute = attribute;
+    }
+
+    /**
+     * @return a column for each attribute of the instances, categorical if any of its values isn't a number, leaving
+     * out numeric attributes with too few distinct values to be split
+     */
+    /**
+     * Scores candidate splits from the sums of the builder's per-row statistics over the rows on their true side.
+     */
+    public interface SplitScorer {
+        /**
+         * @param trueSums the sum of each statistic over the rows going to the true child, only valid during the call
+         * @return how good the split is, higher being better
+         */
+        double score(double[] trueSums);
+
+        /**
+         * @param valueSums the sum of each statistic over the rows with a categorical value
+         * @return the key to order categorical values by, so that the best in-sets are prefixes of the ordering
+         */
+        double order(double[] valueSums);
+    }
+
+    /**
+     * The best split found in a column, with its score
+     */
+    public abstract static class Split {
+        public final double score;
+
+        private Split(double score) {
+            this.score = score;
+        }
+
+        public abstract boolean goesTrue(int row);
+
+        public abstract Branch toBranch(Node parent, double probabilityOfTrueChild);
+    }
+
+    /**
+     * @param statistics the builder's statistics, indexed by row, whose sums the scorer is given
+     * @return the best split of the rows scoring more than minScore and leaving at least minLeafInstances rows on each
+     * side, or null if there is none
+     */
+    public abstract Split findSplit(int[] rows, int minLeafInstances, double minScore, SplitScorer scorer, double[]... statistics);
+
+    private static boolean tooFew(int trueCount, int numRows, int minLeafInstances) {
+        return trueCount == 0 || trueCount == numRows || trueCount < minLeafInstances || numRows - trueCount < minLeafInstances;
+    }
+
+    public static List<AttributeColumn> columnsFor(List<? extends Instance<AttributesMap, ?>> instances, int maxThresholds) {
+        Set<String> attributes = Sets.newHashSet();
+        Set<String> nonNumericAttributes = Sets.newHashSet();
+        for (Instance<AttributesMap, ?> instance : instances) {
+            for (Map.Entry<String, Serializable> attribute : instance.getAttributes().entrySet()) {
+                attributes.add(attribute.getKey());
+                if (attribute.getValue() != null && !(attribute.getValue() instanceof Number)) {
+                    nonNumericAttributes.add(attribute.getKey());
+                }
+            }
+        }
+        List<AttributeColumn> columns = Lists.newArrayList();
+        for (String attribute : attributes) {
+            if (nonNumericAttributes.contains(attribute)) {
+                columns.add(new Categorical(attribute, instances));
+            } else {
+                Numeric column = new Numeric(attribute, instances, maxThresholds);
+                if (column.getNumThresholds() > 0) {
+                    columns.add(column);
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * @return up to maxThresholds distinct, ascending values at evenly spaced quantiles of values, excluding the maximum
+     * since no value can exceed it
+     */
+    public static double[] quantileThresholds(double[] values, int maxThresholds) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double[] candidates = new double[maxThresholds];
+        int count = 0;
+        for (int i = 1; i <= maxThresholds; i++) {
+            double threshold = sorted[(int) ((long) (sorted.length - 1) * i / (maxThresholds + 1))];
+            if (threshold < sorted[sorted.length - 1] && (count == 0 || threshold > candidates[count - 1])) {
+                candidates[count++] = threshold;
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    public static class Numeric extends AttributeColumn {
+        private final double[] thresholds;
+        /**
+         * The number of thresholds each row's value exceeds
+         */
+        private final int[] bins;
+
+        public Numeric(String attribute, List<? extends Instance<AttributesMap, ?>> instances, int maxThresholds) {
+            super(attribute);
+            double[] values = new double[instances.size()];
+            for (int i = 0; i < values.length; i++) {
+                Serializable value = instances.get(i).getAttributes().get(attribute);
+                values[i] = value == null ? 0 : ((Number) value).doubleValue();
+            }
+            thresholds = quantileThresholds(values, maxThresholds);
+            bins = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                int position = Arrays.binarySearch(thresholds, values[i]);
+                bins[i] = position >= 0 ? position : -position - 1;
+            }
+        }
+
+        public int getNumThresholds() {
+            return thresholds.length;
+        }
+
+        /**
+         * @return the bin of the row's value, the number of thresholds it exceeds, so it goes to the true side of a
+         * split on any threshold with a lower index
+         */
+        public int getBin(int row) {
+            return bins[row];
+        }
+
+        /**
+         * Sums each statistic, indexed by row, over the given rows in each bin.
+         *
+         * @return for each statistic, its sum in each bin, followed by the number of rows in each bin
+         */
+        public double[][] sumByBin(int[] rows, double[]... statistics) {
+            double[][] sums = new double[statistics.length + 1][thresholds.length + 1];
+            double[] counts = sums[statistics.length];
+            for (int row : rows) {
+                int bin = bins[row];
+                for (int s = 0; s < statistics.length; s++) {
+                    sums[s][bin] += statistics[s][row];
+                }
+                counts[bin]++;
+            }
+            return sums;
+        }
+
+        public NumericBranch toBranch(Node parent, int thresholdIndex, double probabilityOfTrueChild) {
+            return new NumericBranch(parent, attribute, thresholds[thresholdIndex], probabilityOfTrueChild);
+        }
+
+        @Override
+        public Split findSplit(int[] rows, int minLeafInstances, double minScore, SplitScorer scorer, double[]... statistics) {
+            double[][] sums = sumByBin(rows, statistics);
+            double[] binCounts = sums[statistics.length];
+            // walk the thresholds from highest to lowest, accumulating the instances above each as the true side
+            double[] trueSums = new double[statistics.length];
+            int trueCount = 0;
+            double bestScore = minScore;
+            int bestThreshold = -1;
+            for (int thresholdIndex = thresholds.length - 1; thresholdIndex >= 0; thresholdIndex--) {
+                for (int s = 0; s < statistics.length; s++) {
+                    trueSums[s] += sums[s][thresholdIndex + 1];
+                }
+                trueCount += (int) binCounts[thresholdIndex + 1];
+                if (tooFew(trueCount, rows.length, minLeafInstances)) {
+                    continue;
+                }
+                double score = scorer.score(trueSums);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestThreshold = thresholdIndex;
+                }
+            }
+            if (bestThreshold < 0) {
+                return null;
+            }
+            final int splitThreshold = bestThreshold;
+            return new Split(bestScore) {
+                @Override
+                public boolean goesTrue(int row) {
+                    return bins[row] > splitThreshold;
+                }
+
+                @Override
+                public Branch toBranch(Node parent, double probabilityOfTrueChild) {
+                    return Numeric.this.toBranch(parent, splitThreshold, probabilityOfTrueChild);
+                }
+            };
+        }
+    }
+
+    public static class Categorical extends AttributeColumn {
+        private final Serializable[] values;
+
+        public Categorical(String attribute, List<? extends Instance<AttributesMap, ?>> instances) {
+            super(attribute);
+            values = new Serializable[instances.size()];
+            for (int i = 0; i < values.length; i++) {
+                Serializable value = instances.get(i).getAttributes().get(attribute);
+                values[i] = value == null ? MISSING_VALUE : value;
+            }
+        }
+
+        public Serializable getValue(int row) {
+            return values[row];
+        }
+
+        /**
+         * Sums each statistic, indexed by row, over the given rows with each value.  Rows where the attribute is
+         * missing are left out, as they can't join an in-set.
+         *
+         * @return for each value, the sum of each statistic followed by the number of rows with the value
+         */
+        public Map<Serializable, double[]> sumByValue(int[] rows, double[]... statistics) {
+            Map<Serializable, double[]> sums = Maps.newHashMap();
+            for (int row : rows) {
+                if (values[row].equals(MISSING_VALUE)) {
+                    continue;
+                }
+                double[] valueSums = sums.get(values[row]);
+                if (valueSums == null) {
+                    valueSums = new double[statistics.length + 1];
+                    sums.put(values[row], valueSums);
+                }
+                for (int s = 0; s < statistics.length; s++) {
+                    valueSums[s] += statistics[s][row];
+                }
+                valueSums[statistics.length]++;
+            }
+            return sums;
+        }
+
+        public CategoricalBranch toBranch(Node parent, Set<Serializable> inSet, double probabilityOfTrueChild) {
+            return new CategoricalBranch(parent, attribute, inSet, probabilityOfTrueChild);
+        }
+
+        @Override
+        public Split findSplit(int[] rows, int minLeafInstances, double minScore, final SplitScorer scorer, double[]... statistics) {
+            final Map<Serializable, double[]> sumsByValue = sumByValue(rows, statistics);
+            List<Serializable> orderedValues = Lists.newArrayList(sumsByValue.keySet());
+            Collections.sort(orderedValues, new Comparator<Serializable>() {
+                @Override
+                public int compare(Serializable a, Serializable b) {
+                    return Double.compare(scorer.order(sumsByValue.get(a)), scorer.order(sumsByValue.get(b)));
+                }
+            });
+
+            double[] trueSums = new double[statistics.length];
+            int trueCount = 0;
+            double bestScore = minScore;
+            int bestPrefixLength = 0;
+            for (int prefixLength = 1; prefixLength <= orderedValues.size(); prefixLength++) {
+                double[] valueSums = sumsByValue.get(orderedValues.get(prefixLength - 1));
+                for (int s = 0; s < statistics.length; s++) {
+                    trueSums[s] += valueSums[s];
+                }
+                trueCount += (int) valueSums[statistics.length];
+                if (tooFew(trueCount, rows.length, minLeafInstances)) {
+                    continue;
+                }
+                double score = scorer.score(trueSums);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestPrefixLength = prefixLength;
+                }
+            }
+            if (bestPrefixLength == 0) {
+                return null;
+            }
+            final Set<Serializable> inSet = Sets.newHashSet(orderedValues.subList(0, bestPrefixLength));
+            return new Split(bestScore) {
+                @Override
+                public boolean goesTrue(int row) {
+                    return inSet.contains(values[row]);
+                }
+
+                @Override
+                public Branch toBranch(Node parent, double probabilityOfTrueChild) {
+                    return Categorical.this.toBranch(parent, inSet, probabilityOfTrueChild);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package quickml.supervised.classifier.decisionTree;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.PredictiveModelBuilder;
+import quickml.supervised.classifier.decisionTree.scorers.GiniImpurityScorer;
+import quickml.supervised.classifier.decisionTree.tree.*;
+
+import java.io.Serializable;
+import java.util.*;
+
+import static quickml.supervised.classifier.decisionTree.TreeBuilder.MISSING_VALUE;
+
+/**
+ * An incremental (Very Fast Decision Tree) learner.  Instances are consumed one at a time via {@link #update},
+ * and a leaf is only split once the Hoeffding bound guarantees, with probability 1 - delta, that the best split
+ * found on the instances seen so far is also the best split on the underlying distribution.
+ * <p/>
+ * The cost of an update is independent of the number of instances seen: each update walks to a single leaf and
+ * increments a fixed number of counters.  {@link #getTree()} returns an ordinary {@link Tree} snapshot which is not
+ * affected by subsequent updates, so it can be handed to serving threads while learning continues.
+ * <p/>
+ * This class is not thread safe; a single thread should feed it instances.
+ */
+public class HoeffdingTreeBuilder<T extends ClassifierInstance> implements PredictiveModelBuilder<Tree, T> {
+
+    public static final String GRACE_PERIOD = "gracePeriod";
+    public static final String SPLIT_CONFIDENCE = "splitConfidence";
+    public static final String TIE_THRESHOLD = "tieThreshold";
+    public static final String SCORE_RANGE = "scoreRange";
+
+    private static final double MISSING_WEIGHT_TOLERANCE = 1E-9;
+
+    private Scorer scorer;
+    private int maxDepth = 5;
+    private int gracePeriod = 200;
+    private double splitConfidence = 0.0000001;
+    private double tieThreshold = 0.05;
+    private double scoreRange = 1.0;
+    private double minimumScore = 0.00000000000001;
+    private int minLeafInstances = 0;
+    private int ordinalTestSpilts = 5;
+
+    private HoeffdingNode root;
+    private final Set<Serializable> classifications = Sets.newHashSet();
+    private final Set<String> categoricalAttributes = Sets.newHashSet();
+    private long instancesSeen = 0;
+
+    public HoeffdingTreeBuilder() {
+        this(new GiniImpurityScorer());
+    }
+
+    public HoeffdingTreeBuilder(final Scorer scorer) {
+        this.scorer = scorer;
+    }
+
+    @Override
+    public void updateBuilderConfig(final Map<String, Object> cfg) {
+        if (cfg.containsKey(TreeBuilder.SCORER))
+            scorer((Scorer) cfg.get(TreeBuilder.SCORER));
+        if (cfg.containsKey(TreeBuilder.MAX_DEPTH))
+            maxDepth((Integer) cfg.get(TreeBuilder.MAX_DEPTH));
+        if (cfg.containsKey(TreeBuilder.MIN_SCORE))
+            minimumScore((Double) cfg.get(TreeBuilder.MIN_SCORE));
+        if (cfg.containsKey(TreeBuilder.MIN_LEAF_INSTANCES))
+            minLeafInstances((Integer) cfg.get(TreeBuilder.MIN_LEAF_INSTANCES));
+        if (cfg.containsKey(TreeBuilder.ORDINAL_TEST_SPLITS))
+            ordinalTestSplits((Integer) cfg.get(TreeBuilder.ORDINAL_TEST_SPLITS));
+        if (cfg.containsKey(GRACE_PERIOD))
+            gracePeriod((Integer) cfg.get(GRACE_PERIOD));
+        if (cfg.containsKey(SPLIT_CONFIDENCE))
+            splitConfidence((Double) cfg.get(SPLIT_CONFIDENCE));
+        if (cfg.containsKey(TIE_THRESHOLD))
+            tieThreshold((Double) cfg.get(TIE_THRESHOLD));
+        if (cfg.containsKey(SCORE_RANGE))
+            scoreRange((Double) cfg.get(SCORE_RANGE));
+    }
+
+    public HoeffdingTreeBuilder<T> scorer(final Scorer scorer) {
+        this.scorer = scorer;
+        return this;
+    }
+
+    public HoeffdingTreeBuilder<T> maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public HoeffdingTreeBuilder<T> minimumScore(double minimumScore) {
+        this.minimumScore = minimumScore;
+        return this;
+    }
+
+    public HoeffdingTreeBuilder<T> minLeafInstances(int minLeafInstances) {
+        this.minLeafInstances = minLeafInstances;
+        return this;
+    }
+
+    public HoeffdingTreeBuilder<T> ordinalTestSplits(int ordinalTestSpilts) {
+        Preconditions.checkArgument(ordinalTestSpilts > 1, "ordinalTestSplits must be greater than 1");
+        this.ordinalTestSpilts = ordinalTestSpilts;
+        return this;
+    }
+
+    /**
+     * The number of instances a leaf must accumulate between split attempts.  Also the number of values buffered
+     * at a leaf before the candidate thresholds of a numeric attribute are fixed.
+     */
+    public HoeffdingTreeBuilder<T> gracePeriod(int gracePeriod) {
+        Preconditions.checkArgument(gracePeriod > 0, "gracePeriod must be positive");
+        this.gracePeriod = gracePeriod;
+        return this;
+    }
+
+    /**
+     * The probability (delta) of choosing a split that isn't the best one.
+     */
+    public HoeffdingTreeBuilder<T> splitConfidence(double splitConfidence) {
+        Preconditions.checkArgument(splitConfidence > 0 && splitConfidence < 1, "splitConfidence must be between 0 and 1");
+        this.splitConfidence = splitConfidence;
+        return this;
+    }
+
+    /**
+     * When the Hoeffding bound falls below this value the two best splits are considered equally good, and the best is taken.
+     */
+    public HoeffdingTreeBuilder<T> tieThreshold(double tieThreshold) {
+        this.tieThreshold = tieThreshold;
+        return this;
+    }
+
+    /**
+     * The range (R) of values the scorer can return, e.g. 1.0 for gini impurity, log2(numClasses) for information gain.
+     */
+    public HoeffdingTreeBuilder<T> scoreRange(double scoreRange) {
+        this.scoreRange = scoreRange;
+        return this;
+    }
+
+    /**
+     * Discards everything learned so far.
+     */
+    public void reset() {
+        root = null;
+        classifications.clear();
+        categoricalAttributes.clear();
+        instancesSeen = 0;
+    }
+
+    @Override
+    public Tree buildPredictiveModel(Iterable<T> trainingData) {
+        reset();
+        for (T instance : trainingData) {
+            update(instance);
+        }
+        return getTree();
+    }
+
+    /**
+     * Learns from a single instance.
+     */
+    public void update(T instance) {
+        if (instance.getWeight() <= 0) {
+            return;
+        }
+        instancesSeen++;
+        classifications.add(instance.getLabel());
+        for (Map.Entry<String, Serializable> attributeEntry : instance.getAttributes().entrySet()) {
+            if (attributeEntry.getValue() != null && !(attributeEntry.getValue() instanceof Number)) {
+                categoricalAttributes.add(attributeEntry.getKey());
+            }
+        }
+        if (root == null) {
+            root = new LearningLeaf(0, null);
+        }
+
+        SplitNode parent = null;
+        boolean isTrueChild = false;
+        HoeffdingNode node = root;
+        while (!node.isLeaf()) {
+            parent = (SplitNode) node;
+            isTrueChild = parent.decide(instance);
+            node = isTrueChild ? parent.trueChild : parent.falseChild;
+        }
+
+        LearningLeaf leaf = (LearningLeaf) node;
+        leaf.add(instance);
+        if (leaf.depth < maxDepth && leaf.weightSinceLastAttempt >= gracePeriod) {
+            leaf.weightSinceLastAttempt = 0;
+            HoeffdingNode replacement = attemptToSplit(leaf);
+            if (replacement != null) {
+                if (parent == null) {
+                    root = replacement;
+                } else if (isTrueChild) {
+                    parent.trueChild = replacement;
+                } else {
+                    parent.falseChild = replacement;
+                }
+            }
+        }
+    }
+
+    public long getInstancesSeen() {
+        return instancesSeen;
+    }
+
+    /**
+     * @return a snapshot of the current tree, built from fresh {@link Node}s so that it is unaffected by later updates.
+     */
+    public Tree getTree() {
+        Preconditions.checkState(root != null, "Can't build a tree before any instances have been seen");
+        return new Tree(root.toNode(null), new HashSet<>(classifications));
+    }
+
+    private HoeffdingNode attemptToSplit(LearningLeaf leaf) {
+        if (leaf.counts.allClassifications().size() < 2) {
+            return null;
+        }
+        SplitCandidate best = null;
+        SplitCandidate secondBest = null;
+        for (Map.Entry<String, AttributeStatistics> attributeEntry : leaf.attributeStatistics.entrySet()) {
+            SplitCandidate candidate = attributeEntry.getValue().getBestSplit(attributeEntry.getKey(), leaf.counts);
+            if (candidate == null) {
+                continue;
+            }
+            if (best == null || candidate.score > best.score) {
+                secondBest = best;
+                best = candidate;
+            } else if (secondBest == null || candidate.score > secondBest.score) {
+                secondBest = candidate;
+            }
+        }
+        if (best == null || best.score < minimumScore) {
+            return null;
+        }
+
+        double secondBestScore = secondBest != null ? secondBest.score : 0;
+        double hoeffdingBound = Math.sqrt(scoreRange * scoreRange * Math.log(1.0 / splitConfidence) / (2.0 * leaf.counts.getTotal()));
+        if (best.score - secondBestScore <= hoeffdingBound && hoeffdingBound >= tieThreshold) {
+            return null;
+        }
+
+        SplitNode splitNode = new SplitNode(best);
+        splitNode.trueChild = new LearningLeaf(leaf.depth + 1, best.trueCounts);
+        splitNode.falseChild = new LearningLeaf(leaf.depth + 1, best.falseCounts);
+        return splitNode;
+    }
+
+    private boolean isCategorical(String attribute) {
+        return categoricalAttributes.contains(attribute);
+    }
+
+    private abstract class HoeffdingNode {
+        abstract boolean isLeaf();
+
+        abstract Node toNode(Node parent);
+    }
+
+    private class SplitNode extends HoeffdingNode {
+        private final SplitCandidate split;
+        private HoeffdingNode trueChild, falseChild;
+
+        private SplitNode(SplitCandidate split) {
+            this.split = split;
+        }
+
+        @Override
+        boolean isLeaf() {
+            return false;
+        }
+
+        private boolean decide(ClassifierInstance instance) {
+            Serializable value = instance.getAttributes().get(split.attribute);
+            if (split.inSet != null) {
+                return split.inSet.contains(value);
+            }
+            return value instanceof Number ? ((Number) value).doubleValue() > split.threshold : 0 > split.threshold;
+        }
+
+        @Override
+        Node toNode(Node parent) {
+            Branch branch = split.inSet != null
+                    ? new CategoricalBranch(parent, split.attribute, split.inSet, split.probabilityOfTrueChild)
+                    : new NumericBranch(parent, split.attribute, split.threshold, split.probabilityOfTrueChild);
+            branch.trueChild = trueChild.toNode(branch);
+            branch.falseChild = falseChild.toNode(branch);
+            return branch;
+        }
+    }
+
+    private class LearningLeaf extends HoeffdingNode {
+        private final int depth;
+        private final ClassificationCounter counts = new ClassificationCounter();
+        private final Map<String, AttributeStatistics> attributeStatistics = Maps.newHashMap();
+        private double weightSinceLastAttempt = 0;
+        // the counts this leaf received when its parent was split, used for prediction until it has seen instances itself
+        private final ClassificationCounter splitCounts;
+
+        private LearningLeaf(int depth, ClassificationCounter splitCounts) {
+            this.depth = depth;
+            this.splitCounts = splitCounts;
+        }
+
+        @Override
+        boolean isLeaf() {
+            return true;
+        }
+
+        private void add(T instance) {
+            counts.addClassification(instance.getLabel(), instance.getWeight());
+            weightSinceLastAttempt += instance.getWeight();
+            for (Map.Entry<String, Serializable> attributeEntry : instance.getAttributes().entrySet()) {
+                String attribute = attributeEntry.getKey();
+                AttributeStatistics statistics = attributeStatistics.get(attribute);
+                if (statistics == null || (statistics.isNumeric() && isCategorical(attribute))) {
+                    statistics = isCategorical(attribute) ? new CategoricalAttributeStatistics() : new NumericAttributeStatistics(counts);
+                    attributeStatistics.put(attribute, statistics);
+                }
+                statistics.add(attributeEntry.getValue(), instance.getLabel(), instance.getWeight());
+            }
+        }
+
+        @Override
+        Node toNode(Node parent) {
+            return new Leaf(parent, new ClassificationCounter(counts.getTotal() > 0 ? counts : splitCounts), depth);
+        }
+    }
+
+    private static class SplitCandidate {
+        private String attribute;
+        private double threshold;
+        private Set<Serializable> inSet;
+        private double score;
+        private double probabilityOfTrueChild;
+        private ClassificationCounter trueCounts;
+        private ClassificationCounter falseCounts;
+    }
+
+    /**
+     * Only the instances an attribute is present in are added to its statistics, so the counts of the instances it
+     * is missing from are derived from the leaf's counts when scoring splits.  As in a {@link Tree}, missing numeric
+     * values are taken to be 0 and missing categorical values go to the outset.
+     */
+    private abstract class AttributeStatistics {
+        abstract boolean isNumeric();
+
+        abstract void add(Serializable value, Serializable label, double weight);
+
+        abstract SplitCandidate getBestSplit(String attribute, ClassificationCounter leafCounts);
+
+        /**
+         * @return the counts of the instances the attribute was missing from, or null if there were none
+         */
+        ClassificationCounter missingCounts(ClassificationCounter leafCounts, ClassificationCounter presentCounts) {
+            ClassificationCounter missing = leafCounts.subtract(presentCounts);
+            // allow for rounding error in the weights
+            return missing.getTotal() > MISSING_WEIGHT_TOLERANCE * leafCounts.getTotal() ? missing : null;
+        }
+
+        SplitCandidate scoreCandidate(String attribute, ClassificationCounter inCounts, ClassificationCounter outCounts, SplitCandidate bestSoFar) {
+            if (inCounts.getTotal() <= 0 || outCounts.getTotal() <= 0
+                    || inCounts.getTotal() < minLeafInstances || outCounts.getTotal() < minLeafInstances) {
+                return bestSoFar;
+            }
+            double score = scorer.scoreSplit(inCounts, outCounts);
+            if (bestSoFar != null && score <= bestSoFar.score) {
+                return bestSoFar;
+            }
+            SplitCandidate candidate = new SplitCandidate();
+            candidate.attribute = attribute;
+            candidate.score = score;
+            candidate.probabilityOfTrueChild = inCounts.getTotal() / (inCounts.getTotal() + outCounts.getTotal());
+            candidate.trueCounts = inCounts;
+            candidate.falseCounts = outCounts;
+            return candidate;
+        }
+    }
+
+    /**
+     * Buffers the first gracePeriod values seen, then fixes ordinalTestSplits - 1 quantile thresholds and keeps a
+     * classification counter for each interval between them.  If the attribute was missing from some of the leaf's
+     * instances by then, 0 is made a threshold too, so the missing values can be split from the rest.
+     */
+    private class NumericAttributeStatistics extends AttributeStatistics {
+        private final ClassificationCounter leafCounts;
+        private List<Double> bufferedValues = Lists.newArrayList();
+        private List<Serializable> bufferedLabels = Lists.newArrayList();
+        private List<Double> bufferedWeights = Lists.newArrayList();
+        private double bufferedWeight = 0;
+        private double[] thresholds;
+        private ClassificationCounter[] intervalCounts;
+
+        private NumericAttributeStatistics(ClassificationCounter leafCounts) {
+            this.leafCounts = leafCounts;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        void add(Serializable value, Serializable label, double weight) {
+            double doubleValue = value == null ? 0 : ((Number) value).doubleValue();
+            if (thresholds == null) {
+                bufferedValues.add(doubleValue);
+                bufferedLabels.add(label);
+                bufferedWeights.add(weight);
+                bufferedWeight += weight;
+                if (bufferedValues.size() >= gracePeriod) {
+                    fixThresholds();
+                }
+                return;
+            }
+            intervalCounts[intervalIndex(doubleValue)].addClassification(label, weight);
+        }
+
+        private int intervalIndex(double value) {
+            int index = Arrays.binarySearch(thresholds, value);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private void fixThresholds() {
+            List<Double> sortedValues = Ordering.natural().sortedCopy(bufferedValues);
+            TreeSet<Double> distinctThresholds = new TreeSet<>();
+            for (int x = 1; x < ordinalTestSpilts; x++) {
+                distinctThresholds.add(sortedValues.get(x * (sortedValues.size() - 1) / ordinalTestSpilts));
+            }
+            if (leafCounts.getTotal() - bufferedWeight > MISSING_WEIGHT_TOLERANCE * leafCounts.getTotal()) {
+                distinctThresholds.add(0.0);
+            }
+            thresholds = new double[distinctThresholds.size()];
+            int index = 0;
+            for (Double threshold : distinctThresholds) {
+                thresholds[index++] = threshold;
+            }
+            intervalCounts = new ClassificationCounter[thresholds.length + 1];
+            for (int x = 0; x < intervalCounts.length; x++) {
+                intervalCounts[x] = new ClassificationCounter();
+            }
+            for (int x = 0; x < bufferedValues.size(); x++) {
+                intervalCounts[intervalIndex(bufferedValues.get(x))].addClassification(bufferedLabels.get(x), bufferedWeights.get(x));
+            }
+            bufferedValues = null;
+            bufferedLabels = null;
+            bufferedWeights = null;
+        }
+
+        @Override
+        SplitCandidate getBestSplit(String attribute, ClassificationCounter leafCounts) {
+            if (thresholds == null) {
+                if (bufferedValues.isEmpty()) {
+                    return null;
+                }
+                fixThresholds();
+            }
+            ClassificationCounter[] counts = intervalCounts.clone();
+            ClassificationCounter total = new ClassificationCounter();
+            for (ClassificationCounter interval : counts) {
+                total = total.add(interval);
+            }
+            ClassificationCounter missing = missingCounts(leafCounts, total);
+            if (missing != null) {
+                int zeroInterval = intervalIndex(0);
+                counts[zeroInterval] = counts[zeroInterval].add(missing);
+                total = total.add(missing);
+            }
+            SplitCandidate best = null;
+            ClassificationCounter outCounts = new ClassificationCounter();
+            for (int x = 0; x < thresholds.length; x++) {
+                outCounts = outCounts.add(counts[x]);
+                SplitCandidate candidate = scoreCandidate(attribute, total.subtract(outCounts), outCounts, best);
+                if (candidate != best) {
+                    candidate.threshold = thresholds[x];
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Keeps a classification counter per attribute value.  Insets are grown greedily in order of decreasing
+     * probability of the leaf's most popular classification, as TreeBuilder does for binary classification.
+     */
+    private class CategoricalAttributeStatistics extends AttributeStatistics {
+        private final Map<Serializable, ClassificationCounter> valueCounts = Maps.newHashMap();
+
+        @Override
+        boolean isNumeric() {
+            return false;
+        }
+
+        @Override
+        void add(Serializable value, Serializable label, double weight) {
+            if (value == null) {
+                value = MISSING_VALUE;
+            }
+            ClassificationCounter counts = valueCounts.get(value);
+            if (counts == null) {
+                counts = new ClassificationCounter();
+                valueCounts.put(value, counts);
+            }
+            counts.addClassification(label, weight);
+        }
+
+        @Override
+        SplitCandidate getBestSplit(String attribute, ClassificationCounter leafCounts) {
+            Map<Serializable, ClassificationCounter> counts = Maps.newHashMap(valueCounts);
+            ClassificationCounter present = new ClassificationCounter();
+            for (ClassificationCounter valueCount : valueCounts.values()) {
+                present = present.add(valueCount);
+            }
+            ClassificationCounter missing = missingCounts(leafCounts, present);
+            if (missing != null) {
+                ClassificationCounter missingValueCounts = counts.get(MISSING_VALUE);
+                counts.put(MISSING_VALUE, missingValueCounts == null ? missing : missingValueCounts.add(missing));
+            }
+            if (counts.size() < 2) {
+                return null;
+            }
+            final Serializable referenceClassification = leafCounts.mostPopular().getValue0();
+            List<Map.Entry<Serializable, ClassificationCounter>> sortedValues = Lists.newArrayList(counts.entrySet());
+            Collections.sort(sortedValues, new Comparator<Map.Entry<Serializable, ClassificationCounter>>() {
+                @Override
+                public int compare(Map.Entry<Serializable, ClassificationCounter> e1, Map.Entry<Serializable, ClassificationCounter> e2) {
+                    double probability1 = e1.getValue().getCount(referenceClassification) / e1.getValue().getTotal();
+                    double probability2 = e2.getValue().getCount(referenceClassification) / e2.getValue().getTotal();
+                    return Ordering.natural().reverse().compare(probability1, probability2);
+                }
+            });
+
+            ClassificationCounter total = missing == null ? present : present.add(missing);
+            SplitCandidate best = null;
+            Set<Serializable> inSet = Sets.newHashSet();
+            ClassificationCounter inCounts = new ClassificationCounter();
+            for (Map.Entry<Serializable, ClassificationCounter> valueEntry : sortedValues) {
+                // missing values always go the way of the outset in a CategoricalBranch
+                if (valueEntry.getKey().equals(MISSING_VALUE)) {
+                    continue;
+                }
+                inSet.add(valueEntry.getKey());
+                inCounts = inCounts.add(valueEntry.getValue());
+                SplitCandidate candidate = scoreCandidate(attribute, inCounts, total.subtract(inCounts), best);
+                if (candidate != best) {
+                    candidate.inSet = Sets.newHashSet(inSet);
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -2,13 +2,17 @@ package quickml.supervised.classifier.decisionTree;
 
 import com.google.common.collect.Maps;
 import quickml.data.AttributesMap;
+import quickml.data.FeatureVector;
 import quickml.data.PredictionMap;
+import quickml.data.Schema;
 import quickml.supervised.classifier.AbstractClassifier;
 import quickml.supervised.classifier.decisionTree.tree.Leaf;
 import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.SingleAttributeMarginalizer;
 
 import java.io.Serializable;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -23,16 +27,55 @@ public class Tree extends AbstractClassifier {
     static final long serialVersionUID = 56394564395635672L;
     public final Node node;
     private Set<Serializable> classifications = new HashSet<>();
+    private transient volatile Schema schema;
 
     protected Tree(Node tree, Set<Serializable> classifications) {
         this.node = tree;
         this.classifications = classifications;
     }
 
+    /**
+     * @return a tree making the same predictions from a different root, e.g. a compacted copy of this one's
+     */
+    public Tree withNode(Node node) {
+        return new Tree(node, classifications);
+    }
+
     public Set<Serializable> getClassifications() {
         return classifications;
     }
 
+    /**
+     * @return a schema of the attributes this tree tests, for filling {@link FeatureVector}s
+     */
+    public Schema getSchema() {
+        Schema result = schema;
+        if (result == null) {
+            Schema.Builder schemaBuilder = Schema.builder();
+            node.addToSchema(schemaBuilder);
+            result = schemaBuilder.build();
+            schema = result;
+        }
+        return result;
+    }
+
+    public double getProbability(FeatureVector features, Serializable classification) {
+        return node.getLeaf(features).getProbability(classification);
+    }
+
+    public PredictionMap predict(FeatureVector features) {
+        Leaf leaf = node.getLeaf(features);
+        Map<Serializable, Double> probsByClassification = Maps.newHashMap();
+        for (Serializable classification : leaf.getClassifications()) {
+            probsByClassification.put(classification, leaf.getProbability(classification));
+        }
+        return new PredictionMap(probsByClassification);
+    }
+
+    public Serializable getClassificationByMaxProb(FeatureVector features) {
+        return node.getLeaf(features).getBestClassification();
+    }
+
     @Override
     public double getProbability(AttributesMap attributes, Serializable classification) {
         Leaf leaf = node.getLeaf(attributes);
@@ -64,6 +107,16 @@ public class Tree extends AbstractClassifier {
         return new PredictionMap(probsByClassification);
     }
 
+    /**
+     * Walks the tree once for all the attributes, see {@link SingleAttributeMarginalizer}
+     */
+    @Override
+    public double[][] predictWithoutEachAttribute(AttributesMap attributes, List<String> attributesToIgnore, List<Serializable> classifications) {
+        double[][] probabilities = new double[attributesToIgnore.size()][classifications.size()];
+        new SingleAttributeMarginalizer(attributesToIgnore, classifications).addProbabilities(node, attributes, probabilities);
+        return probabilities;
+    }
+
     @Override
     public Serializable getClassificationByMaxProb(AttributesMap attributes) {
         Leaf leaf = node.getLeaf(attributes);
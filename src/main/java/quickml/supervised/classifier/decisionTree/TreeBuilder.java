@@ -12,6 +12,7 @@ import org.apache.commons.lang.mutable.MutableInt;
 import org.javatuples.Pair;
 import quickml.collections.MapUtils;
 import quickml.data.ClassifierInstance;
+import quickml.supervised.CancellationToken;
 import quickml.supervised.PredictiveModelBuilder;
 import quickml.supervised.classifier.decisionTree.scorers.MSEScorer;
 import quickml.supervised.classifier.decisionTree.tree.*;
@@ -50,6 +51,7 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
     private double degreeOfGainRatioPenalty = 1.0;
     private int ordinalTestSpilts = 5;
     private boolean applyCrossValidationToNodeConstruction = false;
+    private volatile CancellationToken cancellationToken;
 
     //TODO: make it so only one thread computes the below 4 values since all trees compute the same values..
     private  Serializable minorityClassification;
@@ -138,10 +140,38 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
         return this;
     }
 
+    /**
+     * Trees being built check this token before growing each node, and abandon the build with a
+     * {@link java.util.concurrent.CancellationException} once it is cancelled.  May be null.
+     */
+    public TreeBuilder<T> cancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        return this;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
     @Override
     public Tree buildPredictiveModel(Iterable<T> trainingData) {
+        return buildPredictiveModel(trainingData, cancellationToken);
+    }
+
+    /**
+     * Builds a tree that checks the given token rather than the builder's own, so that concurrent builds sharing this
+     * builder can each be cancelled separately.
+     */
+    public Tree buildPredictiveModel(Iterable<T> trainingData, CancellationToken cancellationToken) {
+        checkNotCancelled(cancellationToken);
         Set<Serializable> classifications = getClassificationProperties(trainingData);
-        return new Tree(buildTree(null, trainingData, 0, createNumericSplits(trainingData)), classifications);
+        return new Tree(buildTree(null, trainingData, 0, createNumericSplits(trainingData), cancellationToken), classifications);
+    }
+
+    private static void checkNotCancelled(CancellationToken cancellationToken) {
+        if (cancellationToken != null) {
+            cancellationToken.checkNotCancelled();
+        }
     }
 
     private Set<Serializable> getClassificationProperties(Iterable<T> trainingData) {
@@ -253,8 +283,9 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
     }
 
     private Node buildTree(Node parent, final Iterable<T> trainingData, final int depth,
-                           final Map<String, double[]> splits) {
+                           final Map<String, double[]> splits, final CancellationToken cancellationToken) {
         Preconditions.checkArgument(!Iterables.isEmpty(trainingData), "At Depth: " + depth + ". Can't build a tree with no training data");
+        checkNotCancelled(cancellationToken);
         final Leaf thisLeaf = new Leaf(parent, trainingData, depth);
 
         if (depth >= maxDepth) {
@@ -302,7 +333,7 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
         }
 
         // Recurse down the true branch
-        bestNode.trueChild = buildTree(bestNode, trueTrainingSet, depth + 1, splits);
+        bestNode.trueChild = buildTree(bestNode, trueTrainingSet, depth + 1, splits, cancellationToken);
 
         // And now replace the old split if this is an NumericBranch
         if (bestNode instanceof NumericBranch) {
@@ -311,7 +342,7 @@ public final class TreeBuilder<T extends ClassifierInstance> implements Predicti
         }
 
         // Recurse down the false branch
-        bestNode.falseChild = buildTree(bestNode, falseTrainingSet, depth + 1, splits);
+        bestNode.falseChild = buildTree(bestNode, falseTrainingSet, depth + 1, splits, cancellationToken);
 
         // And now replace the original split if this is an NumericBranch
         if (bestNode instanceof NumericBranch) {
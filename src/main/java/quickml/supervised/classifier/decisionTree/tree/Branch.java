@@ -2,7 +2,9 @@ package quickml.supervised.classifier.decisionTree.tree;
 
 import com.google.common.base.Predicate;
 import quickml.data.AttributesMap;
+import quickml.data.FeatureVector;
 import quickml.data.Instance;
+import quickml.data.Schema;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -17,6 +19,7 @@ public abstract class Branch extends Node {
 
 	public Node trueChild, falseChild;
     private double probabilityOfTrueChild;
+    private transient volatile SlotBinding slotBinding;
 
 	public Branch(Node parent, final String attribute, double probabilityOfTrueChild) {
 		super(parent);
@@ -26,6 +29,27 @@ public abstract class Branch extends Node {
 
 	public abstract boolean decide(Map<String, Serializable> attributes);
 
+	public abstract boolean decide(FeatureVector features);
+
+    /**
+     * @return the slot of this branch's attribute in the schema, cached for the schema most recently asked about
+     */
+    protected int slot(Schema schema) {
+        SlotBinding binding = slotBinding;
+        if (binding == null || binding.schema != schema) {
+            binding = new SlotBinding(schema, schema.slotOf(attribute));
+            slotBinding = binding;
+        }
+        return binding.slot;
+    }
+
+    /**
+     * @return the fraction of training weight that went to the true child, used when marginalizing over this branch's attribute
+     */
+    public double getProbabilityOfTrueChild() {
+        return probabilityOfTrueChild;
+    }
+
 	@Override
 	public int size() {
 		return 1 + trueChild.size() + falseChild.size();
@@ -60,6 +84,21 @@ public abstract class Branch extends Node {
 			return falseChild.getLeaf(attributes);
 	}
 
+	@Override
+	public void addToSchema(final Schema.Builder schemaBuilder) {
+		schemaBuilder.addAttribute(attribute);
+		trueChild.addToSchema(schemaBuilder);
+		falseChild.addToSchema(schemaBuilder);
+	}
+
+	@Override
+	public Leaf getLeaf(final FeatureVector features) {
+		if (decide(features))
+			return trueChild.getLeaf(features);
+		else
+			return falseChild.getLeaf(features);
+	}
+
     @Override
     public double getProbabilityWithoutAttributes(AttributesMap attributes, Serializable classification, Set<String> attributesToIgnore) {
         //TODO[mk] - check with Alex
@@ -124,5 +163,17 @@ public abstract class Branch extends Node {
         result = 31 * result + falseChild.hashCode();
         return result;
     }
-}
 
+    /**
+     * Immutable so that the schema and slot are always read as a consistent pair
+     */
+    private static final class SlotBinding {
+        final Schema schema;
+        final int slot;
+
+        SlotBinding(Schema schema, int slot) {
+            this.schema = schema;
+            this.slot = slot;
+        }
+    }
+}
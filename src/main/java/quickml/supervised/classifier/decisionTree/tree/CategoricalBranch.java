@@ -2,16 +2,20 @@ package quickml.supervised.classifier.decisionTree.tree;
 
 import com.google.common.collect.Sets;
 import quickml.data.AttributesMap;
+import quickml.data.FeatureVector;
+import quickml.data.Schema;
 
 import static quickml.supervised.classifier.decisionTree.TreeBuilder.*;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Map;
 import java.util.Set;
 
 public final class CategoricalBranch extends Branch {
 	private static final long serialVersionUID = -1723969623146234761L;
 	public final Set<Serializable> inSet;
+    private transient volatile CodeBinding codeBinding;
 
 	public CategoricalBranch(Node parent, final String attribute, final Set<Serializable> inSet, double probabilityOfTrueChild) {
 		super(parent, attribute, probabilityOfTrueChild);
@@ -26,6 +30,25 @@ public final class CategoricalBranch extends Branch {
         return inSet.contains(attributeVal);
     }
 
+    @Override
+    public void addToSchema(final Schema.Builder schemaBuilder) {
+        super.addToSchema(schemaBuilder);
+        for (Serializable value : inSet) {
+            schemaBuilder.addCategoricalValue(attribute, value);
+        }
+    }
+
+    @Override
+    public boolean decide(final FeatureVector features) {
+        CodeBinding binding = codeBinding;
+        if (binding == null || binding.schema != features.getSchema()) {
+            binding = new CodeBinding(features.getSchema());
+            codeBinding = binding;
+        }
+        int code = features.getCode(binding.slot);
+        return code != FeatureVector.NO_CODE && binding.inCodes.get(code);
+    }
+
 	@Override
 	public String toString() {
 		return attribute + " in " + inSet;
@@ -55,4 +78,26 @@ public final class CategoricalBranch extends Branch {
         result = 31 * result + inSet.hashCode();
         return result;
     }
+
+    /**
+     * The codes, in one schema, of the values in the in-set
+     */
+    private final class CodeBinding {
+        final Schema schema;
+        final int slot;
+        final BitSet inCodes = new BitSet();
+
+        CodeBinding(Schema schema) {
+            this.schema = schema;
+            this.slot = slot(schema);
+            if (slot >= 0) {
+                for (Serializable value : inSet) {
+                    int code = schema.codeOf(slot, value);
+                    if (code >= 0) {
+                        inCodes.set(code);
+                    }
+                }
+            }
+        }
+    }
 }
@@ -4,9 +4,15 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 import quickml.data.AttributesMap;
 import quickml.data.ClassifierInstance;
+import quickml.data.FeatureVector;
+import quickml.data.Schema;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -29,11 +35,14 @@ public class Leaf extends Node {
      */
     public double exampleCount;
     /**
-     * The actual getBestClassification counts
+     * The actual getBestClassification counts, which mustn't change once the leaf is created
      */
     public final ClassificationCounter classificationCounts;
 
-    protected transient volatile Map.Entry<Serializable, Double> bestClassificationEntry = null;
+    /**
+     * The probabilities, worked out from classificationCounts when the leaf is created or deserialized
+     */
+    private transient ProbabilityTable probabilityTable;
 
 
     public Leaf(Node parent, final Iterable<? extends ClassifierInstance> instances, final int depth) {
@@ -48,6 +57,28 @@ public class Leaf extends Node {
         Preconditions.checkState(classificationCounts.getTotal() > 0, "Classifications must be > 0");
         exampleCount = classificationCounts.getTotal();
         this.depth = depth;
+        probabilityTable = new ProbabilityTable(classificationCounts);
+    }
+
+    /**
+     * For leaves that predict something other than a classification, such as those of regression trees, which have no
+     * classification counts
+     *
+     * @param exampleCount the total weight of the training instances that reached the leaf
+     */
+    protected Leaf(Node parent, final double exampleCount, final int depth) {
+        super(parent);
+        Preconditions.checkArgument(exampleCount > 0, "exampleCount must be > 0");
+        guid = guidCounter.incrementAndGet();
+        this.classificationCounts = new ClassificationCounter();
+        this.exampleCount = exampleCount;
+        this.depth = depth;
+        probabilityTable = new ProbabilityTable(classificationCounts);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        probabilityTable = new ProbabilityTable(classificationCounts);
     }
 
     /**
@@ -55,19 +86,31 @@ public class Leaf extends Node {
      */
 
     public Serializable getBestClassification() {
-        return getBestClassificationEntry().getKey();
+        ProbabilityTable table = probabilityTable;
+        return table.classifications[table.bestClassificationIndex];
     }
 
-    protected synchronized Map.Entry<Serializable, Double> getBestClassificationEntry() {
-        if (bestClassificationEntry != null) return bestClassificationEntry;
+    /**
+     * @return the number of classifications seen at this leaf, which {@link #getClassification(int)} and
+     * {@link #getProbability(int)} index
+     */
+    public int getNumClassifications() {
+        return probabilityTable.classifications.length;
+    }
 
-        for (Map.Entry<Serializable, Double> e : classificationCounts.getCounts().entrySet()) {
-            if (bestClassificationEntry == null || e.getValue() > bestClassificationEntry.getValue()) {
-                bestClassificationEntry = e;
-            }
-        }
+    public Serializable getClassification(int index) {
+        return probabilityTable.classifications[index];
+    }
+
+    public double getProbability(int index) {
+        return probabilityTable.probabilities[index];
+    }
 
-        return bestClassificationEntry;
+    /**
+     * @return the index of the most likely classification
+     */
+    public int getBestClassificationIndex() {
+        return probabilityTable.bestClassificationIndex;
     }
 
     @Override
@@ -88,6 +131,15 @@ public class Leaf extends Node {
         return this;
     }
 
+    @Override
+    public Leaf getLeaf(final FeatureVector features) {
+        return this;
+    }
+
+    @Override
+    public void addToSchema(final Schema.Builder schemaBuilder) {
+    }
+
     @Override
     public int size() {
         return 1;
@@ -109,12 +161,18 @@ public class Leaf extends Node {
     }
 
     public double getProbability(Serializable classification) {
-        final double totalCount = classificationCounts.getTotal();
-        if (totalCount == 0) {
+        ProbabilityTable table = probabilityTable;
+        if (table.totalCount == 0) {
             throw new IllegalStateException("Trying to get a probability from a Leaf with no examples");
         }
-        final double probability = classificationCounts.getCount(classification) / totalCount;
-        return probability;
+        // leaves see few classifications, so a scan beats hashing
+        Serializable[] classifications = table.classifications;
+        for (int i = 0; i < classifications.length; i++) {
+            if (classifications[i] == classification || classifications[i].equals(classification)) {
+                return table.probabilities[i];
+            }
+        }
+        return 0;
     }
 
     public double getProbabilityWithoutAttributes(AttributesMap attributes, Serializable classification, Set<String> attribute) {
@@ -122,7 +180,7 @@ public class Leaf extends Node {
     }
 
     public Set<Serializable> getClassifications() {
-        return classificationCounts.getCounts().keySet();
+        return probabilityTable.classificationSet;
     }
 
     @Override
@@ -149,4 +207,33 @@ public class Leaf extends Node {
         result = 31 * result + classificationCounts.hashCode();
         return result;
     }
+
+    /**
+     * Immutable, so it can be read by any number of threads without locking.
+     */
+    private static final class ProbabilityTable {
+        final Serializable[] classifications;
+        final double[] probabilities;
+        final int bestClassificationIndex;
+        final double totalCount;
+        final Set<Serializable> classificationSet;
+
+        ProbabilityTable(ClassificationCounter classificationCounts) {
+            Map<Serializable, Double> counts = classificationCounts.getCounts();
+            totalCount = classificationCounts.getTotal();
+            classifications = new Serializable[counts.size()];
+            probabilities = new double[counts.size()];
+            int best = 0, index = 0;
+            for (Map.Entry<Serializable, Double> count : counts.entrySet()) {
+                classifications[index] = count.getKey();
+                probabilities[index] = count.getValue() / totalCount;
+                if (probabilities[index] > probabilities[best]) {
+                    best = index;
+                }
+                index++;
+            }
+            bestClassificationIndex = best;
+            classificationSet = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(classifications)));
+        }
+    }
 }
@@ -2,6 +2,8 @@ package quickml.supervised.classifier.decisionTree.tree;
 
 
 import quickml.data.AttributesMap;
+import quickml.data.FeatureVector;
+import quickml.data.Schema;
 
 import java.io.Serializable;
 import java.util.Map;
@@ -37,6 +39,16 @@ public abstract class Node implements Serializable {
 	 */
 	public abstract Leaf getLeaf(AttributesMap attributes);
 
+	/**
+	 * Get a label for a given FeatureVector, without looking up attribute names
+	 */
+	public abstract Leaf getLeaf(FeatureVector features);
+
+	/**
+	 * Adds the attributes, and categorical values, tested in this tree to a schema being built
+	 */
+	public abstract void addToSchema(Schema.Builder schemaBuilder);
+
 	/**
 	 * Return the mean depth of leaves in the tree. A lower number generally
 	 * indicates that the decision tree learner has done a better job.
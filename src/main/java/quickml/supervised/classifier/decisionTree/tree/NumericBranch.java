@@ -4,6 +4,7 @@ package quickml.supervised.classifier.decisionTree.tree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import quickml.data.AttributesMap;
+import quickml.data.FeatureVector;
 
 import java.io.Serializable;
 import java.util.Map;
@@ -31,6 +32,11 @@ public final class NumericBranch extends Branch {
 		return valueAsDouble > threshold;
 	}
 
+	@Override
+	public boolean decide(final FeatureVector features) {
+		return features.getNumeric(slot(features.getSchema())) > threshold;
+	}
+
 	@Override
 	public String toString() {
 		return attribute + " > " + threshold;
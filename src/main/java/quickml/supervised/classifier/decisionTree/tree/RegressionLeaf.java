@@ -0,0 +1,45 @@
+package quickml.supervised.classifier.decisionTree.tree;
+
+/**
+ * A leaf of a regression tree, predicting the weighted mean of the labels of the training instances that reached it.
+ * It has no classification counts; its example count is the total weight of those instances.
+ */
+public class RegressionLeaf extends Leaf {
+    private static final long serialVersionUID = -4519828530951183504L;
+
+    public final double mean;
+    public final double variance;
+
+    public RegressionLeaf(Node parent, final double weight, final double mean, final double variance, final int depth) {
+        super(parent, weight, depth);
+        this.mean = mean;
+        this.variance = variance;
+    }
+
+    @Override
+    public String toString() {
+        return "mean=" + mean + " variance=" + variance + " weight=" + exampleCount;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!super.equals(o)) return false;
+
+        final RegressionLeaf that = (RegressionLeaf) o;
+
+        if (Double.compare(that.mean, mean) != 0) return false;
+        if (Double.compare(that.variance, variance) != 0) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        long temp = Double.doubleToLongBits(mean);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(variance);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        return result;
+    }
+}
@@ -0,0 +1,40 @@
+package quickml.supervised.classifier.decisionTree.tree;
+
+/**
+ * A leaf holding an additive score, as used by boosted ensembles where the prediction is the sum of the scores of
+ * the leaves an instance reaches.  The classification counts are those of the training instances at the leaf.
+ */
+public class ScoreLeaf extends Leaf {
+    private static final long serialVersionUID = 3094628763512377489L;
+
+    public final double score;
+
+    public ScoreLeaf(Node parent, final ClassificationCounter classificationCounts, final int depth, final double score) {
+        super(parent, classificationCounts, depth);
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return "score=" + score;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!super.equals(o)) return false;
+
+        final ScoreLeaf scoreLeaf = (ScoreLeaf) o;
+
+        if (Double.compare(scoreLeaf.score, score) != 0) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        long temp = Double.doubleToLongBits(score);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package quickml.supervised.classifier.decisionTree.tree;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import quickml.data.AttributesMap;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds, in one walk of a tree, what {@link Node#getProbabilityWithoutAttributes} would give when ignoring each of a
+ * list of attributes by itself.
+ * <p/>
+ * Ignoring attribute a, a leaf contributes if every branch on its path that the instance's attributes would send the
+ * other way tests a, weighted by the probabilityOfTrueChild (or its complement) of each branch on a along the path.
+ * So the walk follows the instance's own path, multiplying in each attribute's weight as it goes, and from each branch
+ * on a requested attribute explores the other child with only that attribute ignored.  Leaves off the instance's path
+ * are only reached for the one attribute that leads to them.
+ * <p/>
+ * Not thread safe, it keeps a scratch array between walks.
+ */
+public final class SingleAttributeMarginalizer {
+    private final Map<String, Integer> attributeIndices = Maps.newHashMap();
+    private final Serializable[] classifications;
+    private final double[] pathWeights;
+
+    public SingleAttributeMarginalizer(List<String> attributes, List<Serializable> classifications) {
+        for (int i = 0; i < attributes.size(); i++) {
+            Preconditions.checkArgument(attributeIndices.put(attributes.get(i), i) == null, "Attribute %s is repeated", attributes.get(i));
+        }
+        this.classifications = classifications.toArray(new Serializable[classifications.size()]);
+        pathWeights = new double[attributes.size()];
+    }
+
+    /**
+     * Adds the tree's probability of each classification, when ignoring each attribute, to probabilities
+     *
+     * @param probabilities indexed [attribute][classification] as the lists given to the constructor
+     */
+    public void addProbabilities(Node root, AttributesMap attributes, double[][] probabilities) {
+        Arrays.fill(pathWeights, 1);
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            boolean decision = branch.decide(attributes);
+            Node onPath = decision ? branch.trueChild : branch.falseChild;
+            Integer attribute = attributeIndices.get(branch.attribute);
+            if (attribute != null) {
+                double probabilityOfPath = decision ? branch.getProbabilityOfTrueChild() : 1 - branch.getProbabilityOfTrueChild();
+                Node offPath = decision ? branch.falseChild : branch.trueChild;
+                addIgnoring(offPath, attribute, pathWeights[attribute] * (1 - probabilityOfPath), attributes, probabilities[attribute]);
+                pathWeights[attribute] *= probabilityOfPath;
+            }
+            node = onPath;
+        }
+        Leaf leaf = (Leaf) node;
+        for (int c = 0; c < classifications.length; c++) {
+            double probability = leaf.getProbability(classifications[c]);
+            for (int attribute = 0; attribute < pathWeights.length; attribute++) {
+                probabilities[attribute][c] += pathWeights[attribute] * probability;
+            }
+        }
+    }
+
+    private void addIgnoring(Node node, int attribute, double weight, AttributesMap attributes, double[] probabilities) {
+        if (weight == 0) {
+            return;
+        }
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            Integer branchAttribute = attributeIndices.get(branch.attribute);
+            if (branchAttribute != null && branchAttribute == attribute) {
+                addIgnoring(branch.trueChild, attribute, weight * branch.getProbabilityOfTrueChild(), attributes, probabilities);
+                weight *= 1 - branch.getProbabilityOfTrueChild();
+                node = branch.falseChild;
+            } else {
+                node = branch.decide(attributes) ? branch.trueChild : branch.falseChild;
+            }
+        }
+        Leaf leaf = (Leaf) node;
+        for (int c = 0; c < classifications.length; c++) {
+            probabilities[c] += weight * leaf.getProbability(classifications[c]);
+        }
+    }
+}
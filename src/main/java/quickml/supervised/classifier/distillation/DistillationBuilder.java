@@ -0,0 +1,135 @@
+package quickml.supervised.classifier.distillation;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import quickml.collections.MapUtils;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.PredictiveModelBuilder;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.Classifiers;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Distills a teacher model, typically a large {@link quickml.supervised.classifier.randomForest.RandomForest}, into a
+ * student that is cheap enough to serve where the teacher is too slow, such as a single deep
+ * {@link quickml.supervised.classifier.decisionTree.Tree} or a forest of a few trees.  The depth or size cap of the
+ * student's builder is the main trade off between its speed and how closely it follows the teacher.
+ * <p/>
+ * The training data is augmented with synthetic instances, each a copy of a training instance with some attribute
+ * values swapped for those of other instances, so the student also learns the teacher's behaviour away from the
+ * training points.  Every instance is then labelled with the teacher's predicted probabilities as soft targets: one
+ * instance per classification, weighted by its probability times the weight of the training instance it comes from
+ * (synthetic instances inheriting that of their original), so that the student's leaves estimate the teacher's
+ * probabilities rather than the original labels.
+ */
+public class DistillationBuilder<PM extends Classifier> implements PredictiveModelBuilder<PM, ClassifierInstance> {
+    private static final Logger logger = LoggerFactory.getLogger(DistillationBuilder.class);
+
+    public static final String SYNTHETIC_INSTANCES_PER_INSTANCE = "syntheticInstancesPerInstance";
+    public static final String ATTRIBUTE_RESAMPLE_PROBABILITY = "attributeResampleProbability";
+
+    private final Classifier teacher;
+    private final PredictiveModelBuilder<PM, ClassifierInstance> studentBuilder;
+    private int syntheticInstancesPerInstance = 1;
+    private double attributeResampleProbability = 0.25;
+    private volatile Fidelity fidelity;
+
+    public DistillationBuilder(Classifier teacher, PredictiveModelBuilder<PM, ClassifierInstance> studentBuilder) {
+        this.teacher = teacher;
+        this.studentBuilder = studentBuilder;
+    }
+
+    @Override
+    public void updateBuilderConfig(Map<String, Object> cfg) {
+        studentBuilder.updateBuilderConfig(cfg);
+        if (cfg.containsKey(SYNTHETIC_INSTANCES_PER_INSTANCE))
+            syntheticInstancesPerInstance((Integer) cfg.get(SYNTHETIC_INSTANCES_PER_INSTANCE));
+        if (cfg.containsKey(ATTRIBUTE_RESAMPLE_PROBABILITY))
+            attributeResampleProbability((Double) cfg.get(ATTRIBUTE_RESAMPLE_PROBABILITY));
+    }
+
+    /**
+     * How many synthetic instances to add for each training instance, 0 to distill on the training data alone
+     */
+    public DistillationBuilder<PM> syntheticInstancesPerInstance(int syntheticInstancesPerInstance) {
+        checkArgument(syntheticInstancesPerInstance >= 0, "syntheticInstancesPerInstance must not be negative");
+        this.syntheticInstancesPerInstance = syntheticInstancesPerInstance;
+        return this;
+    }
+
+    /**
+     * The probability that each attribute of a synthetic instance takes its value from another random training instance
+     */
+    public DistillationBuilder<PM> attributeResampleProbability(double attributeResampleProbability) {
+        checkArgument(attributeResampleProbability >= 0 && attributeResampleProbability <= 1, "attributeResampleProbability must be between 0 and 1 (was %s)", attributeResampleProbability);
+        this.attributeResampleProbability = attributeResampleProbability;
+        return this;
+    }
+
+    @Override
+    public PM buildPredictiveModel(Iterable<ClassifierInstance> trainingData) {
+        List<AttributesMap> trainingAttributes = Lists.newArrayList();
+        List<Double> trainingWeights = Lists.newArrayList();
+        for (ClassifierInstance instance : trainingData) {
+            trainingAttributes.add(instance.getAttributes());
+            trainingWeights.add(instance.getWeight());
+        }
+        checkArgument(!trainingAttributes.isEmpty(), "Can't distill without training data");
+
+        List<AttributesMap> transferAttributes = Lists.newArrayList(trainingAttributes);
+        List<Double> transferWeights = Lists.newArrayList(trainingWeights);
+        for (int i = 0; i < syntheticInstancesPerInstance; i++) {
+            for (int j = 0; j < trainingAttributes.size(); j++) {
+                transferAttributes.add(synthesize(trainingAttributes.get(j), trainingAttributes));
+                transferWeights.add(trainingWeights.get(j));
+            }
+        }
+
+        List<PredictionMap> softTargets = Classifiers.predictBatch(teacher, transferAttributes);
+        List<ClassifierInstance> transferSet = Lists.newArrayList();
+        for (int i = 0; i < transferAttributes.size(); i++) {
+            for (Map.Entry<Serializable, Double> probability : softTargets.get(i).entrySet()) {
+                if (probability.getValue() > 0) {
+                    transferSet.add(new ClassifierInstance(transferAttributes.get(i), probability.getKey(), transferWeights.get(i) * probability.getValue()));
+                }
+            }
+        }
+
+        PM student = studentBuilder.buildPredictiveModel(transferSet);
+        fidelity = Fidelity.measure(teacher, student, trainingAttributes);
+        logger.info("Distilled from {} instances, {} of them synthetic: {}", transferAttributes.size(), transferAttributes.size() - trainingAttributes.size(), fidelity);
+        return student;
+    }
+
+    /**
+     * @return how closely the most recently built student follows the teacher on the training data, or null if none
+     * has been built; use {@link Fidelity#measure} on held out data for an unbiased figure
+     */
+    public Fidelity getFidelity() {
+        return fidelity;
+    }
+
+    private AttributesMap synthesize(AttributesMap original, List<AttributesMap> trainingAttributes) {
+        AttributesMap synthetic = AttributesMap.newHashMap();
+        synthetic.putAll(original);
+        for (String attribute : original.keySet()) {
+            if (MapUtils.random.nextDouble() < attributeResampleProbability) {
+                Serializable value = trainingAttributes.get(MapUtils.random.nextInt(trainingAttributes.size())).get(attribute);
+                if (value == null) {
+                    synthetic.remove(attribute);
+                } else {
+                    synthetic.put(attribute, value);
+                }
+            }
+        }
+        return synthetic;
+    }
+}
@@ -0,0 +1,92 @@
+package quickml.supervised.classifier.distillation;
+
+import com.google.common.collect.Lists;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.Classifiers;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How closely a student model's predictions follow those of the teacher it was distilled from
+ */
+public class Fidelity {
+    private final int numInstances;
+    private final double agreement;
+    private final double meanAbsoluteError;
+    private final double maxAbsoluteError;
+
+    private Fidelity(int numInstances, double agreement, double meanAbsoluteError, double maxAbsoluteError) {
+        this.numInstances = numInstances;
+        this.agreement = agreement;
+        this.meanAbsoluteError = meanAbsoluteError;
+        this.maxAbsoluteError = maxAbsoluteError;
+    }
+
+    /**
+     * Compares the two models' predictions on each of the attributes, ideally ones neither was trained on
+     */
+    public static Fidelity measure(Classifier teacher, Classifier student, Iterable<AttributesMap> attributesList) {
+        List<AttributesMap> attributes = Lists.newArrayList(attributesList);
+        List<PredictionMap> teacherPredictions = Classifiers.predictBatch(teacher, attributes);
+        List<PredictionMap> studentPredictions = Classifiers.predictBatch(student, attributes);
+        int agreements = 0, numProbabilities = 0;
+        double totalAbsoluteError = 0, maxAbsoluteError = 0;
+        for (int i = 0; i < attributes.size(); i++) {
+            PredictionMap teacherPrediction = teacherPredictions.get(i);
+            PredictionMap studentPrediction = studentPredictions.get(i);
+            if (mostProbable(teacherPrediction).equals(mostProbable(studentPrediction))) {
+                agreements++;
+            }
+            for (Map.Entry<Serializable, Double> probability : teacherPrediction.entrySet()) {
+                double absoluteError = Math.abs(probability.getValue() - studentPrediction.get(probability.getKey()));
+                totalAbsoluteError += absoluteError;
+                maxAbsoluteError = Math.max(maxAbsoluteError, absoluteError);
+                numProbabilities++;
+            }
+        }
+        return new Fidelity(attributes.size(), attributes.isEmpty() ? 1 : (double) agreements / attributes.size(),
+                numProbabilities == 0 ? 0 : totalAbsoluteError / numProbabilities, maxAbsoluteError);
+    }
+
+    private static Serializable mostProbable(PredictionMap prediction) {
+        Map.Entry<Serializable, Double> best = null;
+        for (Map.Entry<Serializable, Double> probability : prediction.entrySet()) {
+            if (best == null || probability.getValue() > best.getValue()) {
+                best = probability;
+            }
+        }
+        return best == null ? null : best.getKey();
+    }
+
+    public int getNumInstances() {
+        return numInstances;
+    }
+
+    /**
+     * @return the fraction of instances both models give the same most probable classification
+     */
+    public double getAgreement() {
+        return agreement;
+    }
+
+    /**
+     * @return the mean, over instances and the teacher's classifications, of the difference in probability
+     */
+    public double getMeanAbsoluteError() {
+        return meanAbsoluteError;
+    }
+
+    public double getMaxAbsoluteError() {
+        return maxAbsoluteError;
+    }
+
+    @Override
+    public String toString() {
+        return "Fidelity{instances=" + numInstances + ", agreement=" + agreement + ", meanAbsoluteError=" + meanAbsoluteError
+                + ", maxAbsoluteError=" + maxAbsoluteError + "}";
+    }
+}
@@ -5,9 +5,13 @@ import quickml.data.AttributesMap;
 import quickml.data.PredictionMap;
 import quickml.supervised.classifier.AbstractClassifier;
 import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.Classifiers;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,41 +35,58 @@ public class DownsamplingClassifier extends AbstractClassifier {
     }
 
     public double getProbability(AttributesMap attributes, Serializable classification) {
-        double uncorrectedProbability = wrappedClassifier.getProbability(attributes, minorityClassification);
-        double probabilityOfMinorityInstance = Utils.correctProbability(dropProbability, uncorrectedProbability);
-        if (classification.equals(minorityClassification)) {
-            return probabilityOfMinorityInstance;
-        } else {
-            return 1 - probabilityOfMinorityInstance;
-        }
+        return probabilityOf(classification, wrappedClassifier.getProbability(attributes, minorityClassification));
     }
     @Override
     public double getProbabilityWithoutAttributes(AttributesMap attributes, Serializable classification, Set<String> attributesToIgnore) {
-        double uncorrectedProbability = wrappedClassifier.getProbabilityWithoutAttributes(attributes, minorityClassification, attributesToIgnore);
-        double probabilityOfMinorityInstance = Utils.correctProbability(dropProbability, uncorrectedProbability);
-        if (classification.equals(minorityClassification)) {
-            return probabilityOfMinorityInstance;
-        } else {
-            return 1 - probabilityOfMinorityInstance;
-        }
+        return probabilityOf(classification, wrappedClassifier.getProbabilityWithoutAttributes(attributes, minorityClassification, attributesToIgnore));
     }
 
     @Override
     public PredictionMap predict(AttributesMap attributes) {
-        Map<Serializable, Double> probsByClassification = Maps.newHashMap();
-        probsByClassification.put(minorityClassification, getProbability(attributes, minorityClassification));
-        probsByClassification.put(majorityClassification, getProbability(attributes, majorityClassification));
-        return new PredictionMap(probsByClassification);
+        return toPrediction(wrappedClassifier.getProbability(attributes, minorityClassification));
     }
 
     @Override
     public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        return toPrediction(wrappedClassifier.getProbabilityWithoutAttributes(attributes, minorityClassification, attributesToIgnore));
+    }
+
+    /**
+     * Corrects the wrapped model's batch of minority probabilities, so it is still evaluated once per instance and can
+     * use its own batch path
+     */
+    @Override
+    public List<PredictionMap> predictBatch(List<AttributesMap> attributesList) {
+        double[][] uncorrectedProbabilities = Classifiers.predictBatch(wrappedClassifier, attributesList, Collections.singletonList(minorityClassification));
+        List<PredictionMap> predictions = new ArrayList<>(uncorrectedProbabilities.length);
+        for (double[] uncorrectedProbability : uncorrectedProbabilities) {
+            predictions.add(toPrediction(uncorrectedProbability[0]));
+        }
+        return predictions;
+    }
+
+    /**
+     * Both classifications' probabilities follow from the wrapped model's probability of the minority classification,
+     * so it is only asked for that once
+     */
+    private PredictionMap toPrediction(double uncorrectedProbability) {
+        double probabilityOfMinorityInstance = Utils.correctProbability(dropProbability, uncorrectedProbability);
         Map<Serializable, Double> probsByClassification = Maps.newHashMap();
-        probsByClassification.put(minorityClassification, getProbabilityWithoutAttributes(attributes, minorityClassification, attributesToIgnore));
-        probsByClassification.put(majorityClassification, getProbabilityWithoutAttributes(attributes, majorityClassification, attributesToIgnore));
+        probsByClassification.put(minorityClassification, probabilityOfMinorityInstance);
+        probsByClassification.put(majorityClassification, 1 - probabilityOfMinorityInstance);
         return new PredictionMap(probsByClassification);
     }
 
+    private double probabilityOf(Serializable classification, double uncorrectedProbability) {
+        double probabilityOfMinorityInstance = Utils.correctProbability(dropProbability, uncorrectedProbability);
+        if (classification.equals(minorityClassification)) {
+            return probabilityOfMinorityInstance;
+        } else {
+            return 1 - probabilityOfMinorityInstance;
+        }
+    }
+
     @Override
     public Serializable getClassificationByMaxProb(final AttributesMap attributes) {
         return wrappedClassifier.getClassificationByMaxProb(attributes);
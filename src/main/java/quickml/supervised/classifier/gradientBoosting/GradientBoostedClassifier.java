@@ -0,0 +1,150 @@
+package quickml.supervised.classifier.gradientBoosting;
+
+import com.google.common.base.Preconditions;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.AbstractClassifier;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.ScoreLeaf;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A binary classifier made of an additive ensemble of trees.  Each tree's leaves are {@link ScoreLeaf}s, and the
+ * log-odds of the positive classification is the initial score plus the scores of the leaves an instance reaches.
+ */
+public class GradientBoostedClassifier extends AbstractClassifier {
+    private static final long serialVersionUID = -2398475610236547312L;
+
+    public final List<Node> trees;
+    private final double initialScore;
+    private final Serializable positiveClassification;
+    private final Serializable negativeClassification;
+
+    protected GradientBoostedClassifier(List<Node> trees, double initialScore, Serializable positiveClassification, Serializable negativeClassification) {
+        Preconditions.checkArgument(!positiveClassification.equals(negativeClassification), "The two classifications must differ");
+        this.trees = trees;
+        this.initialScore = initialScore;
+        this.positiveClassification = positiveClassification;
+        this.negativeClassification = negativeClassification;
+    }
+
+    /**
+     * @return the log-odds of the positive classification
+     */
+    public double getScore(AttributesMap attributes) {
+        double score = initialScore;
+        for (Node tree : trees) {
+            score += ((ScoreLeaf) tree.getLeaf(attributes)).score;
+        }
+        return score;
+    }
+
+    /**
+     * @return the log-odds of the positive classification, with each ignored attribute's branches replaced by the
+     * average of both children, weighted by the fraction of training data that went each way.
+     */
+    public double getScoreWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        double score = initialScore;
+        for (Node tree : trees) {
+            score += getScoreWithoutAttributes(tree, attributes, attributesToIgnore);
+        }
+        return score;
+    }
+
+    private static double getScoreWithoutAttributes(Node node, AttributesMap attributes, Set<String> attributesToIgnore) {
+        if (node instanceof ScoreLeaf) {
+            return ((ScoreLeaf) node).score;
+        }
+        Branch branch = (Branch) node;
+        if (attributesToIgnore.contains(branch.attribute)) {
+            double probabilityOfTrueChild = branch.getProbabilityOfTrueChild();
+            return probabilityOfTrueChild * getScoreWithoutAttributes(branch.trueChild, attributes, attributesToIgnore)
+                    + (1 - probabilityOfTrueChild) * getScoreWithoutAttributes(branch.falseChild, attributes, attributesToIgnore);
+        }
+        return getScoreWithoutAttributes(branch.decide(attributes) ? branch.trueChild : branch.falseChild, attributes, attributesToIgnore);
+    }
+
+    @Override
+    public double getProbability(AttributesMap attributes, Serializable classification) {
+        return probabilityOf(classification, sigmoid(getScore(attributes)));
+    }
+
+    @Override
+    public double getProbabilityWithoutAttributes(AttributesMap attributes, Serializable classification, Set<String> attributesToIgnore) {
+        return probabilityOf(classification, sigmoid(getScoreWithoutAttributes(attributes, attributesToIgnore)));
+    }
+
+    @Override
+    public PredictionMap predict(AttributesMap attributes) {
+        return toPredictionMap(sigmoid(getScore(attributes)));
+    }
+
+    @Override
+    public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        return toPredictionMap(sigmoid(getScoreWithoutAttributes(attributes, attributesToIgnore)));
+    }
+
+    @Override
+    public Serializable getClassificationByMaxProb(AttributesMap attributes) {
+        return getScore(attributes) >= 0 ? positiveClassification : negativeClassification;
+    }
+
+    public Serializable getPositiveClassification() {
+        return positiveClassification;
+    }
+
+    public Serializable getNegativeClassification() {
+        return negativeClassification;
+    }
+
+    public double getInitialScore() {
+        return initialScore;
+    }
+
+    private double probabilityOf(Serializable classification, double positiveProbability) {
+        if (classification.equals(positiveClassification)) {
+            return positiveProbability;
+        } else if (classification.equals(negativeClassification)) {
+            return 1.0 - positiveProbability;
+        }
+        return 0;
+    }
+
+    private PredictionMap toPredictionMap(double positiveProbability) {
+        PredictionMap predictionMap = PredictionMap.newMap();
+        predictionMap.put(positiveClassification, positiveProbability);
+        predictionMap.put(negativeClassification, 1.0 - positiveProbability);
+        return predictionMap;
+    }
+
+    static double sigmoid(double score) {
+        return 1.0 / (1.0 + Math.exp(-score));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final GradientBoostedClassifier that = (GradientBoostedClassifier) o;
+
+        if (Double.compare(that.initialScore, initialScore) != 0) return false;
+        if (!positiveClassification.equals(that.positiveClassification)) return false;
+        if (!trees.equals(that.trees)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = trees.hashCode();
+        long temp = Double.doubleToLongBits(initialScore);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        result = 31 * result + positiveClassification.hashCode();
+        return result;
+    }
+}
@@ -0,0 +1,382 @@
+package quickml.supervised.classifier.gradientBoosting;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import quickml.collections.MapUtils;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.PredictiveModelBuilder;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.decisionTree.AttributeColumn;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.ScoreLeaf;
+import quickml.supervised.crossValidation.PredictionMapResult;
+import quickml.supervised.crossValidation.PredictionMapResults;
+import quickml.supervised.crossValidation.data.TrainingDataCycler;
+import quickml.supervised.crossValidation.lossfunctions.ClassifierLogCVLossFunction;
+import quickml.supervised.crossValidation.lossfunctions.ClassifierLossFunction;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link GradientBoostedClassifier} for binary classifications by minimizing log-loss.  Each tree is fitted
+ * to the gradient of the loss with respect to the current scores using a second order (Newton) step, so a leaf's
+ * score is -G/(H + l2Regularization) scaled by the shrinkage, where G and H are the summed first and second
+ * derivatives of the instances at the leaf.
+ * <p/>
+ * Numeric attributes are split on (at most) ordinalTestSplits quantile thresholds computed once up front by
+ * {@link AttributeColumn}, which lets each split be evaluated from prefix sums of per-bin gradient statistics.  Categorical values are ordered by their
+ * optimal leaf score, and the best prefix of that ordering becomes the branch's in-set.  As in {@link TreeBuilder},
+ * missing numeric values are treated as 0 and missing categorical values always go to the out-set.
+ */
+public class GradientBoostingBuilder<T extends ClassifierInstance> implements PredictiveModelBuilder<Classifier, T> {
+    private static final Logger logger = LoggerFactory.getLogger(GradientBoostingBuilder.class);
+
+    public static final String NUM_TREES = "numTrees";
+    public static final String SHRINKAGE = "shrinkage";
+    public static final String SUBSAMPLE = "subsample";
+    public static final String L2_REGULARIZATION = "l2Regularization";
+    public static final String EARLY_STOPPING_ROUNDS = "earlyStoppingRounds";
+
+    private static final double MIN_HESSIAN = 1e-16;
+    private static final double MIN_GAIN = 1e-9;
+
+    private int numTrees = 100;
+    private double shrinkage = 0.1;
+    private double subsample = 1.0;
+    private double l2Regularization = 1.0;
+    private int earlyStoppingRounds = 10;
+    private int maxDepth = 3;
+    private int minLeafInstances = 1;
+    private int ordinalTestSplits = 32;
+    private Serializable positiveClassification = null;
+    private ClassifierLossFunction validationLossFunction = new ClassifierLogCVLossFunction(1E-7);
+
+    @Override
+    public void updateBuilderConfig(Map<String, Object> config) {
+        if (config.containsKey(NUM_TREES))
+            numTrees((Integer) config.get(NUM_TREES));
+        if (config.containsKey(SHRINKAGE))
+            shrinkage((Double) config.get(SHRINKAGE));
+        if (config.containsKey(SUBSAMPLE))
+            subsample((Double) config.get(SUBSAMPLE));
+        if (config.containsKey(L2_REGULARIZATION))
+            l2Regularization((Double) config.get(L2_REGULARIZATION));
+        if (config.containsKey(EARLY_STOPPING_ROUNDS))
+            earlyStoppingRounds((Integer) config.get(EARLY_STOPPING_ROUNDS));
+        if (config.containsKey(TreeBuilder.MAX_DEPTH))
+            maxDepth((Integer) config.get(TreeBuilder.MAX_DEPTH));
+        if (config.containsKey(TreeBuilder.MIN_LEAF_INSTANCES))
+            minLeafInstances((Integer) config.get(TreeBuilder.MIN_LEAF_INSTANCES));
+        if (config.containsKey(TreeBuilder.ORDINAL_TEST_SPLITS))
+            ordinalTestSplits((Integer) config.get(TreeBuilder.ORDINAL_TEST_SPLITS));
+    }
+
+    /**
+     * The maximum number of trees, fewer may be built if early stopping kicks in.
+     */
+    public GradientBoostingBuilder<T> numTrees(int numTrees) {
+        Preconditions.checkArgument(numTrees > 0, "numTrees must be positive");
+        this.numTrees = numTrees;
+        return this;
+    }
+
+    /**
+     * Multiplier applied to every leaf score, smaller values need more trees but generalize better.
+     */
+    public GradientBoostingBuilder<T> shrinkage(double shrinkage) {
+        Preconditions.checkArgument(shrinkage > 0 && shrinkage <= 1, "shrinkage must be in (0, 1]");
+        this.shrinkage = shrinkage;
+        return this;
+    }
+
+    /**
+     * The fraction of the training instances, sampled afresh for each tree, used to fit that tree.
+     */
+    public GradientBoostingBuilder<T> subsample(double subsample) {
+        Preconditions.checkArgument(subsample > 0 && subsample <= 1, "subsample must be in (0, 1]");
+        this.subsample = subsample;
+        return this;
+    }
+
+    public GradientBoostingBuilder<T> l2Regularization(double l2Regularization) {
+        Preconditions.checkArgument(l2Regularization >= 0, "l2Regularization must not be negative");
+        this.l2Regularization = l2Regularization;
+        return this;
+    }
+
+    /**
+     * When building from a {@link TrainingDataCycler}, stop once the validation loss has not improved for this many
+     * trees, and keep only the trees up to the best validation loss.
+     */
+    public GradientBoostingBuilder<T> earlyStoppingRounds(int earlyStoppingRounds) {
+        Preconditions.checkArgument(earlyStoppingRounds > 0, "earlyStoppingRounds must be positive");
+        this.earlyStoppingRounds = earlyStoppingRounds;
+        return this;
+    }
+
+    public GradientBoostingBuilder<T> maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public GradientBoostingBuilder<T> minLeafInstances(int minLeafInstances) {
+        this.minLeafInstances = minLeafInstances;
+        return this;
+    }
+
+    public GradientBoostingBuilder<T> ordinalTestSplits(int ordinalTestSplits) {
+        this.ordinalTestSplits = ordinalTestSplits;
+        return this;
+    }
+
+    /**
+     * The classification whose log-odds the trees model.  Defaults to the minority classification in the training data.
+     */
+    public GradientBoostingBuilder<T> positiveClassification(Serializable positiveClassification) {
+        this.positiveClassification = positiveClassification;
+        return this;
+    }
+
+    /**
+     * The loss measured on the validation set for early stopping, defaults to log-loss.
+     */
+    public GradientBoostingBuilder<T> validationLossFunction(ClassifierLossFunction validationLossFunction) {
+        this.validationLossFunction = validationLossFunction;
+        return this;
+    }
+
+    @Override
+    public GradientBoostedClassifier buildPredictiveModel(Iterable<T> trainingData) {
+        return buildPredictiveModel(trainingData, null);
+    }
+
+    /**
+     * Trains on the cycler's current training set, and uses its current validation set for early stopping.
+     */
+    public GradientBoostedClassifier buildPredictiveModel(TrainingDataCycler<T> trainingDataCycler) {
+        return buildPredictiveModel(trainingDataCycler.getTrainingSet(), trainingDataCycler.getValidationSet());
+    }
+
+    private GradientBoostedClassifier buildPredictiveModel(Iterable<T> trainingData, List<T> validationSet) {
+        List<T> instances = Lists.newArrayList();
+        for (T instance : trainingData) {
+            if (instance.getWeight() > 0) {
+                instances.add(instance);
+            }
+        }
+        Preconditions.checkArgument(!instances.isEmpty(), "Can't build a model without positively weighted training instances");
+
+        ClassificationCounter classificationCounts = ClassificationCounter.countAll(instances);
+        Preconditions.checkArgument(classificationCounts.allClassifications().size() == 2,
+                "Gradient boosting requires exactly two classifications, got %s", classificationCounts.allClassifications());
+        Serializable positive = positiveClassification != null ? positiveClassification : minorityClassification(classificationCounts);
+        Preconditions.checkArgument(classificationCounts.allClassifications().contains(positive),
+                "Positive classification %s does not appear in the training data", positive);
+        Serializable negative = null;
+        for (Serializable classification : classificationCounts.allClassifications()) {
+            if (!classification.equals(positive)) {
+                negative = classification;
+            }
+        }
+
+        TrainingState state = new TrainingState(instances, positive);
+        double positiveFraction = classificationCounts.getCount(positive) / classificationCounts.getTotal();
+        double initialScore = Math.log(positiveFraction / (1 - positiveFraction));
+        Arrays.fill(state.scores, initialScore);
+
+        double[] validationScores = null;
+        if (validationSet != null && !validationSet.isEmpty()) {
+            validationScores = new double[validationSet.size()];
+            Arrays.fill(validationScores, initialScore);
+        }
+        double bestValidationLoss = Double.POSITIVE_INFINITY;
+        int bestNumTrees = 0;
+
+        List<Node> trees = Lists.newArrayList();
+        for (int treeIndex = 0; treeIndex < numTrees; treeIndex++) {
+            Node tree = state.buildTree();
+            trees.add(tree);
+            for (int i = 0; i < instances.size(); i++) {
+                state.scores[i] += ((ScoreLeaf) tree.getLeaf(instances.get(i).getAttributes())).score;
+            }
+
+            if (validationScores != null) {
+                for (int i = 0; i < validationScores.length; i++) {
+                    validationScores[i] += ((ScoreLeaf) tree.getLeaf(validationSet.get(i).getAttributes())).score;
+                }
+                double validationLoss = validationLoss(validationSet, validationScores, positive, negative);
+                if (validationLoss < bestValidationLoss) {
+                    bestValidationLoss = validationLoss;
+                    bestNumTrees = trees.size();
+                } else if (trees.size() - bestNumTrees >= earlyStoppingRounds) {
+                    logger.info("Stopping early after {} trees, validation loss was lowest ({}) with {} trees", trees.size(), bestValidationLoss, bestNumTrees);
+                    break;
+                }
+            }
+        }
+        if (validationScores != null && bestNumTrees > 0) {
+            trees = Lists.newArrayList(trees.subList(0, bestNumTrees));
+        }
+        return new GradientBoostedClassifier(trees, initialScore, positive, negative);
+    }
+
+    private double validationLoss(List<T> validationSet, double[] validationScores, Serializable positive, Serializable negative) {
+        List<PredictionMapResult> results = Lists.newArrayListWithCapacity(validationSet.size());
+        for (int i = 0; i < validationScores.length; i++) {
+            double positiveProbability = GradientBoostedClassifier.sigmoid(validationScores[i]);
+            PredictionMap prediction = PredictionMap.newMap();
+            prediction.put(positive, positiveProbability);
+            prediction.put(negative, 1.0 - positiveProbability);
+            T instance = validationSet.get(i);
+            results.add(new PredictionMapResult(prediction, instance.getLabel(), instance.getWeight()));
+        }
+        return validationLossFunction.getLoss(new PredictionMapResults(results));
+    }
+
+    private static Serializable minorityClassification(ClassificationCounter classificationCounts) {
+        Serializable minority = null;
+        for (Map.Entry<Serializable, Double> entry : classificationCounts.getCounts().entrySet()) {
+            if (minority == null || entry.getValue() < classificationCounts.getCount(minority)) {
+                minority = entry.getKey();
+            }
+        }
+        return minority;
+    }
+
+    /**
+     * The training instances in a column oriented form, along with their current scores.
+     */
+    private class TrainingState {
+        private final List<T> instances;
+        private final double[] labels;
+        private final double[] weights;
+        private final double[] scores;
+        private final double[] gradients;
+        private final double[] hessians;
+        private final List<AttributeColumn> columns;
+
+        TrainingState(List<T> instances, Serializable positive) {
+            this.instances = instances;
+            int size = instances.size();
+            labels = new double[size];
+            weights = new double[size];
+            scores = new double[size];
+            gradients = new double[size];
+            hessians = new double[size];
+            for (int i = 0; i < size; i++) {
+                T instance = instances.get(i);
+                labels[i] = instance.getLabel().equals(positive) ? 1.0 : 0.0;
+                weights[i] = instance.getWeight();
+            }
+            columns = AttributeColumn.columnsFor(instances, ordinalTestSplits);
+        }
+
+        Node buildTree() {
+            for (int i = 0; i < scores.length; i++) {
+                double probability = GradientBoostedClassifier.sigmoid(scores[i]);
+                gradients[i] = weights[i] * (probability - labels[i]);
+                hessians[i] = weights[i] * Math.max(probability * (1 - probability), MIN_HESSIAN);
+            }
+            return buildNode(null, sampleRows(), 0);
+        }
+
+        private int[] sampleRows() {
+            int[] rows = new int[scores.length];
+            int count = 0;
+            for (int i = 0; i < rows.length; i++) {
+                if (subsample >= 1 || MapUtils.random.nextDouble() < subsample) {
+                    rows[count++] = i;
+                }
+            }
+            if (count == 0) {
+                for (int i = 0; i < rows.length; i++) rows[i] = i;
+                count = rows.length;
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+        private Node buildNode(Node parent, int[] rows, int depth) {
+            double gradientSum = 0, hessianSum = 0;
+            for (int row : rows) {
+                gradientSum += gradients[row];
+                hessianSum += hessians[row];
+            }
+
+            AttributeColumn.Split bestSplit = null;
+            if (depth < maxDepth && rows.length >= 2 * minLeafInstances) {
+                AttributeColumn.SplitScorer scorer = new Gain(gradientSum, hessianSum);
+                for (AttributeColumn column : columns) {
+                    AttributeColumn.Split split = column.findSplit(rows, minLeafInstances, MIN_GAIN, scorer, gradients, hessians);
+                    if (split != null && (bestSplit == null || split.score > bestSplit.score)) {
+                        bestSplit = split;
+                    }
+                }
+            }
+
+            if (bestSplit == null) {
+                ClassificationCounter counts = new ClassificationCounter();
+                for (int row : rows) {
+                    counts.addClassification(instances.get(row).getLabel(), weights[row]);
+                }
+                double score = -shrinkage * gradientSum / (hessianSum + l2Regularization);
+                return new ScoreLeaf(parent, counts, depth, score);
+            }
+
+            int[] trueRows = new int[rows.length];
+            int[] falseRows = new int[rows.length];
+            int trueCount = 0, falseCount = 0;
+            double trueWeight = 0, totalWeight = 0;
+            for (int row : rows) {
+                totalWeight += weights[row];
+                if (bestSplit.goesTrue(row)) {
+                    trueRows[trueCount++] = row;
+                    trueWeight += weights[row];
+                } else {
+                    falseRows[falseCount++] = row;
+                }
+            }
+            Branch branch = bestSplit.toBranch(parent, trueWeight / totalWeight);
+            branch.trueChild = buildNode(branch, Arrays.copyOf(trueRows, trueCount), depth + 1);
+            branch.falseChild = buildNode(branch, Arrays.copyOf(falseRows, falseCount), depth + 1);
+            return branch;
+        }
+    }
+
+    /**
+     * Scores a split by its gain in the second order approximation of the loss, given the sums of the gradients and
+     * hessians on its true side; categorical values are ordered by the leaf score each would have alone.
+     */
+    private class Gain implements AttributeColumn.SplitScorer {
+        private final double gradientSum;
+        private final double hessianSum;
+        private final double parentScore;
+
+        Gain(double gradientSum, double hessianSum) {
+            this.gradientSum = gradientSum;
+            this.hessianSum = hessianSum;
+            parentScore = gradientSum * gradientSum / (hessianSum + l2Regularization);
+        }
+
+        @Override
+        public double score(double[] trueSums) {
+            double falseGradient = gradientSum - trueSums[0];
+            double falseHessian = hessianSum - trueSums[1];
+            return trueSums[0] * trueSums[0] / (trueSums[1] + l2Regularization)
+                    + falseGradient * falseGradient / (falseHessian + l2Regularization) - parentScore;
+        }
+
+        @Override
+        public double order(double[] valueSums) {
+            return valueSums[0] / (valueSums[1] + l2Regularization);
+        }
+    }
+}
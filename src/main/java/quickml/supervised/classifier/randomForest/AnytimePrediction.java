@@ -0,0 +1,68 @@
+package quickml.supervised.classifier.randomForest;
+
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.decisionTree.Tree;
+
+import java.util.List;
+
+/**
+ * A prediction from as many of a {@link RandomForest}'s trees as a budget allowed, see
+ * {@link RandomForest#predictWithTreeBudget} and {@link RandomForest#predictBeforeDeadline}.
+ */
+public class AnytimePrediction {
+    private final PredictionMap prediction;
+    private final int treesUsed;
+    private final int numTrees;
+
+    AnytimePrediction(PredictionMap prediction, int treesUsed, int numTrees) {
+        this.prediction = prediction;
+        this.treesUsed = treesUsed;
+        this.numTrees = numTrees;
+    }
+
+    /**
+     * @return the mean of the probabilities given by the trees used
+     */
+    public PredictionMap getPrediction() {
+        return prediction;
+    }
+
+    public int getTreesUsed() {
+        return treesUsed;
+    }
+
+    /**
+     * @return whether every tree of the forest was used, so the prediction is the same as {@link RandomForest#predict}'s
+     */
+    public boolean isComplete() {
+        return treesUsed == numTrees;
+    }
+
+    /**
+     * Rates each tree by the mean probability it gives the correct classification of the validation instances,
+     * weighted by their weights, so the most accurate trees are used first under a budget.
+     *
+     * @return the importance of each tree, indexed as {@link RandomForest#trees}
+     */
+    public static double[] importancesFromValidationSet(RandomForest randomForest, List<? extends ClassifierInstance> validationSet) {
+        double[] importances = new double[randomForest.trees.size()];
+        for (int i = 0; i < importances.length; i++) {
+            Tree tree = randomForest.trees.get(i);
+            double totalWeight = 0;
+            for (ClassifierInstance instance : validationSet) {
+                importances[i] += instance.getWeight() * tree.getProbability(instance.getAttributes(), instance.getLabel());
+                totalWeight += instance.getWeight();
+            }
+            if (totalWeight > 0) {
+                importances[i] /= totalWeight;
+            }
+        }
+        return importances;
+    }
+
+    @Override
+    public String toString() {
+        return prediction + " from " + treesUsed + " of " + numTrees + " trees";
+    }
+}
@@ -0,0 +1,224 @@
+package quickml.supervised.classifier.randomForest;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import quickml.data.AttributesMap;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Makes decisions from a {@link RandomForest} evaluating only as many trees as it takes for the outcome to be settled,
+ * giving the same decision as evaluating them all.
+ * <p/>
+ * For each tree, the least and greatest probability any of its leaves gives each classification is found up front.
+ * After each tree is evaluated, the trees still to go can add at least the sum of their least probabilities and at
+ * most the sum of their greatest, so once no classification could overtake the leader, or a probability can no longer
+ * cross the threshold, the rest are skipped.  Evaluating the trees that differ most between their leaves first
+ * (see {@link #orderByProbabilitySpread()}) settles decisions soonest.
+ */
+public class EarlyExitForest {
+    /**
+     * Keeps decisions that are only settled to within rounding error going on to the next tree
+     */
+    private static final double MARGIN = 1e-9;
+
+    private final RandomForest randomForest;
+    private final Serializable[] classifications;
+    // the least and greatest probability of each classification at the leaves of each tree, indexed [tree][classification]
+    private final double[][] leastProbabilities;
+    private final double[][] greatestProbabilities;
+
+    private int[] treeOrder;
+    // sums of the least and greatest probabilities of the trees from each position of treeOrder on, indexed [position][classification]
+    private double[][] leastRemaining;
+    private double[][] greatestRemaining;
+
+    public EarlyExitForest(RandomForest randomForest) {
+        this.randomForest = randomForest;
+        List<Serializable> indexedClassifications = randomForest.getIndexedClassifications();
+        classifications = indexedClassifications.toArray(new Serializable[indexedClassifications.size()]);
+        int numTrees = randomForest.trees.size();
+        leastProbabilities = new double[numTrees][classifications.length];
+        greatestProbabilities = new double[numTrees][classifications.length];
+        for (int tree = 0; tree < numTrees; tree++) {
+            Arrays.fill(leastProbabilities[tree], 1);
+            findProbabilityRange(randomForest.trees.get(tree).node, leastProbabilities[tree], greatestProbabilities[tree]);
+        }
+        int[] order = new int[numTrees];
+        for (int tree = 0; tree < numTrees; tree++) {
+            order[tree] = tree;
+        }
+        setTreeOrder(order);
+    }
+
+    /**
+     * Evaluates the trees in this order, given as indices into {@link RandomForest#trees}, which must include every tree once
+     */
+    public EarlyExitForest treeOrder(List<Integer> treeOrder) {
+        Preconditions.checkArgument(treeOrder.size() == randomForest.trees.size(), "The order must include all %s trees", randomForest.trees.size());
+        boolean[] included = new boolean[treeOrder.size()];
+        int[] order = new int[treeOrder.size()];
+        for (int position = 0; position < order.length; position++) {
+            int tree = treeOrder.get(position);
+            Preconditions.checkArgument(tree >= 0 && tree < order.length && !included[tree], "Tree %s is out of range or repeated", tree);
+            included[tree] = true;
+            order[position] = tree;
+        }
+        setTreeOrder(order);
+        return this;
+    }
+
+    /**
+     * Evaluates first the trees whose leaves' probabilities differ the most, as they do the most to settle a decision
+     */
+    public EarlyExitForest orderByProbabilitySpread() {
+        List<Integer> order = Lists.newArrayList();
+        for (int tree = 0; tree < randomForest.trees.size(); tree++) {
+            order.add(tree);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(spread(b), spread(a));
+            }
+        });
+        return treeOrder(order);
+    }
+
+    /**
+     * @return the index of each tree in {@link RandomForest#trees}, in the order they are evaluated
+     */
+    public List<Integer> getTreeOrder() {
+        List<Integer> order = Lists.newArrayListWithCapacity(treeOrder.length);
+        for (int tree : treeOrder) {
+            order.add(tree);
+        }
+        return order;
+    }
+
+    /**
+     * @return the classification {@link RandomForest#getClassificationByMaxProb(AttributesMap)} would give
+     */
+    public Decision<Serializable> getClassificationByMaxProb(AttributesMap attributes) {
+        double[] sums = new double[classifications.length];
+        for (int position = 0; position < treeOrder.length; position++) {
+            Leaf leaf = randomForest.trees.get(treeOrder[position]).node.getLeaf(attributes);
+            for (int c = 0; c < classifications.length; c++) {
+                sums[c] += leaf.getProbability(classifications[c]);
+            }
+            int leader = 0;
+            for (int c = 1; c < classifications.length; c++) {
+                if (sums[c] > sums[leader]) {
+                    leader = c;
+                }
+            }
+            if (position + 1 == treeOrder.length || isSettled(leader, sums, position + 1)) {
+                return new Decision<>(classifications[leader], position + 1);
+            }
+        }
+        throw new IllegalStateException("A forest always has a tree");
+    }
+
+    /**
+     * @return whether the forest's probability of the classification is greater than the threshold
+     */
+    public Decision<Boolean> isProbabilityAbove(AttributesMap attributes, Serializable classification, double threshold) {
+        int c = randomForest.getClassificationIndex(classification);
+        if (c < 0) {
+            throw new IllegalArgumentException(classification + " isn't one of the forest's classifications");
+        }
+        double thresholdSum = threshold * treeOrder.length;
+        double sum = 0;
+        for (int position = 0; position < treeOrder.length; position++) {
+            sum += randomForest.trees.get(treeOrder[position]).node.getLeaf(attributes).getProbability(classification);
+            int evaluated = position + 1;
+            if (evaluated == treeOrder.length) {
+                return new Decision<>(sum > thresholdSum, evaluated);
+            }
+            if (sum + leastRemaining[evaluated][c] > thresholdSum + MARGIN) {
+                return new Decision<>(true, evaluated);
+            }
+            if (sum + greatestRemaining[evaluated][c] < thresholdSum - MARGIN) {
+                return new Decision<>(false, evaluated);
+            }
+        }
+        throw new IllegalStateException("A forest always has a tree");
+    }
+
+    private boolean isSettled(int leader, double[] sums, int position) {
+        double leaderLeast = sums[leader] + leastRemaining[position][leader];
+        for (int c = 0; c < sums.length; c++) {
+            if (c != leader && sums[c] + greatestRemaining[position][c] > leaderLeast - MARGIN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setTreeOrder(int[] order) {
+        treeOrder = order;
+        leastRemaining = new double[order.length + 1][classifications.length];
+        greatestRemaining = new double[order.length + 1][classifications.length];
+        for (int position = order.length - 1; position >= 0; position--) {
+            for (int c = 0; c < classifications.length; c++) {
+                leastRemaining[position][c] = leastRemaining[position + 1][c] + leastProbabilities[order[position]][c];
+                greatestRemaining[position][c] = greatestRemaining[position + 1][c] + greatestProbabilities[order[position]][c];
+            }
+        }
+    }
+
+    private double spread(int tree) {
+        double spread = 0;
+        for (int c = 0; c < classifications.length; c++) {
+            spread += greatestProbabilities[tree][c] - leastProbabilities[tree][c];
+        }
+        return spread;
+    }
+
+    private void findProbabilityRange(Node node, double[] least, double[] greatest) {
+        if (node instanceof Branch) {
+            findProbabilityRange(((Branch) node).trueChild, least, greatest);
+            findProbabilityRange(((Branch) node).falseChild, least, greatest);
+            return;
+        }
+        Leaf leaf = (Leaf) node;
+        for (int c = 0; c < classifications.length; c++) {
+            double probability = leaf.getProbability(classifications[c]);
+            least[c] = Math.min(least[c], probability);
+            greatest[c] = Math.max(greatest[c], probability);
+        }
+    }
+
+    /**
+     * A decision along with how many trees were evaluated to reach it
+     */
+    public static class Decision<T> {
+        private final T value;
+        private final int treesEvaluated;
+
+        Decision(T value, int treesEvaluated) {
+            this.value = value;
+            this.treesEvaluated = treesEvaluated;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public int getTreesEvaluated() {
+            return treesEvaluated;
+        }
+
+        @Override
+        public String toString() {
+            return value + " after " + treesEvaluated + " trees";
+        }
+    }
+}
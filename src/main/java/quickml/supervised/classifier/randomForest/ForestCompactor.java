@@ -0,0 +1,250 @@
+package quickml.supervised.classifier.randomForest;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.CategoricalBranch;
+import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.NumericBranch;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shrinks a {@link RandomForest} for serving by sharing one copy of each distinct subtree between all the places it
+ * occurs, in any of the trees, and optionally rounding leaf probabilities so that near-identical leaves become
+ * identical and are shared too.  Java serialization writes a shared node once, so the saving carries over to the
+ * model file.
+ * <p/>
+ * Subtrees are shared when they make the same predictions and marginalize the same way, so branches must also agree
+ * on probabilityOfTrueChild, and leaves only on their classification counts (a shared leaf keeps the depth of the
+ * first place it was found, so {@link Node#meanDepth()} is approximate).  Since a shared node has many parents, every
+ * node of the compacted forest has a null {@link Node#parent}; it is meant for prediction, not for further training or
+ * pruning.
+ */
+public class ForestCompactor {
+
+    private int quantizationBits = 0;
+
+    /**
+     * Rounds each leaf's probabilities to multiples of 1/(2^bits - 1), e.g. 8 or 16, keeping them summing to 1, so no
+     * probability moves by 1/(2^bits - 1) or more.  0, the default, leaves probabilities exact.
+     */
+    public ForestCompactor quantizationBits(int quantizationBits) {
+        Preconditions.checkArgument(quantizationBits >= 0 && quantizationBits <= 30, "quantizationBits must be between 0 and 30");
+        this.quantizationBits = quantizationBits;
+        return this;
+    }
+
+    public Compaction compact(RandomForest randomForest) {
+        Interner interner = new Interner(quantizationBits);
+        List<Tree> trees = Lists.newArrayListWithCapacity(randomForest.trees.size());
+        int nodesBefore = 0;
+        for (Tree tree : randomForest.trees) {
+            nodesBefore += tree.node.size();
+            trees.add(tree.withNode(interner.intern(tree.node)));
+        }
+        RandomForest compacted = randomForest.withTrees(trees);
+        return new Compaction(compacted, nodesBefore, interner.branches.size() + interner.leaves.size(),
+                serializedSize(randomForest), serializedSize(compacted), interner.maxProbabilityError);
+    }
+
+    private static long serializedSize(Serializable model) {
+        CountingOutputStream counter = new CountingOutputStream(ByteStreams.nullOutputStream());
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(model);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize model", e);
+        }
+        return counter.getCount();
+    }
+
+    /**
+     * Rebuilds trees bottom up, returning the copy already made of any equivalent subtree
+     */
+    private static class Interner {
+        private final int quantizationLevels;
+        final Map<BranchKey, Branch> branches = Maps.newHashMap();
+        // keyed on the counts as a plain map, since ClassificationCounters are only equal to themselves
+        final Map<Map<Serializable, Double>, Leaf> leaves = Maps.newHashMap();
+        double maxProbabilityError = 0;
+
+        Interner(int quantizationBits) {
+            quantizationLevels = quantizationBits == 0 ? 0 : (1 << quantizationBits) - 1;
+        }
+
+        Node intern(Node node) {
+            if (node instanceof Branch) {
+                return intern((Branch) node);
+            }
+            Preconditions.checkArgument(node.getClass() == Leaf.class, "Can't compact a %s", node.getClass().getSimpleName());
+            Leaf leaf = (Leaf) node;
+            ClassificationCounter counts = quantizationLevels == 0 ? leaf.classificationCounts : quantize(leaf);
+            Map<Serializable, Double> key = counts.getCounts();
+            Leaf interned = leaves.get(key);
+            if (interned == null) {
+                interned = new Leaf(null, counts, leaf.depth);
+                leaves.put(key, interned);
+            }
+            return interned;
+        }
+
+        private Branch intern(Branch branch) {
+            Node trueChild = intern(branch.trueChild);
+            Node falseChild = intern(branch.falseChild);
+            Branch copy;
+            if (branch instanceof NumericBranch) {
+                copy = new NumericBranch(null, branch.attribute, ((NumericBranch) branch).threshold, branch.getProbabilityOfTrueChild());
+            } else if (branch instanceof CategoricalBranch) {
+                copy = new CategoricalBranch(null, branch.attribute, ((CategoricalBranch) branch).inSet, branch.getProbabilityOfTrueChild());
+            } else {
+                throw new IllegalArgumentException("Can't compact a " + branch.getClass().getSimpleName());
+            }
+            copy.trueChild = trueChild;
+            copy.falseChild = falseChild;
+            BranchKey key = new BranchKey(copy);
+            Branch interned = branches.get(key);
+            if (interned == null) {
+                branches.put(key, copy);
+                interned = copy;
+            }
+            return interned;
+        }
+
+        /**
+         * Shares out the quantization levels in proportion to the counts, giving the levels left over after rounding
+         * down to the classifications that lost the most, so every probability moves by less than one level
+         */
+        private ClassificationCounter quantize(Leaf leaf) {
+            final int numClassifications = leaf.getNumClassifications();
+            final double[] exact = new double[numClassifications];
+            long[] levels = new long[numClassifications];
+            long unassigned = quantizationLevels;
+            List<Integer> byRemainder = Lists.newArrayListWithCapacity(numClassifications);
+            for (int c = 0; c < numClassifications; c++) {
+                exact[c] = leaf.getProbability(c) * quantizationLevels;
+                levels[c] = (long) Math.floor(exact[c]);
+                unassigned -= levels[c];
+                byRemainder.add(c);
+            }
+            final long[] floored = levels.clone();
+            Collections.sort(byRemainder, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(exact[b] - floored[b], exact[a] - floored[a]);
+                }
+            });
+            for (int i = 0; i < unassigned; i++) {
+                levels[byRemainder.get(i % numClassifications)]++;
+            }
+            ClassificationCounter counts = new ClassificationCounter();
+            for (int c = 0; c < numClassifications; c++) {
+                counts.addClassification(leaf.getClassification(c), levels[c]);
+                maxProbabilityError = Math.max(maxProbabilityError, Math.abs((double) levels[c] / quantizationLevels - leaf.getProbability(c)));
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Equal for branches that test the same thing, with the same probabilityOfTrueChild, and have the very same
+     * (already interned) children
+     */
+    private static class BranchKey {
+        private final Branch branch;
+
+        BranchKey(Branch branch) {
+            this.branch = branch;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BranchKey)) return false;
+            Branch that = ((BranchKey) o).branch;
+            // with identical children, Branch.equals only compares what this branch tests
+            return branch.trueChild == that.trueChild && branch.falseChild == that.falseChild
+                    && Double.compare(branch.getProbabilityOfTrueChild(), that.getProbabilityOfTrueChild()) == 0
+                    && branch.equals(that);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{branch.attribute, branch.getProbabilityOfTrueChild(),
+                    System.identityHashCode(branch.trueChild), System.identityHashCode(branch.falseChild)});
+        }
+    }
+
+    /**
+     * A compacted forest, with how much smaller it is
+     */
+    public static class Compaction {
+        private final RandomForest randomForest;
+        private final int nodesBefore;
+        private final int nodesAfter;
+        private final long serializedBytesBefore;
+        private final long serializedBytesAfter;
+        private final double maxProbabilityError;
+
+        Compaction(RandomForest randomForest, int nodesBefore, int nodesAfter, long serializedBytesBefore, long serializedBytesAfter, double maxProbabilityError) {
+            this.randomForest = randomForest;
+            this.nodesBefore = nodesBefore;
+            this.nodesAfter = nodesAfter;
+            this.serializedBytesBefore = serializedBytesBefore;
+            this.serializedBytesAfter = serializedBytesAfter;
+            this.maxProbabilityError = maxProbabilityError;
+        }
+
+        public RandomForest getRandomForest() {
+            return randomForest;
+        }
+
+        public int getNodesBefore() {
+            return nodesBefore;
+        }
+
+        /**
+         * @return the number of distinct nodes left once equivalent subtrees are shared
+         */
+        public int getNodesAfter() {
+            return nodesAfter;
+        }
+
+        public long getSerializedBytesBefore() {
+            return serializedBytesBefore;
+        }
+
+        public long getSerializedBytesAfter() {
+            return serializedBytesAfter;
+        }
+
+        public long getSerializedBytesSaved() {
+            return serializedBytesBefore - serializedBytesAfter;
+        }
+
+        /**
+         * @return the most any leaf's probability of any classification was moved by quantization, which bounds how far
+         * any of the compacted forest's probabilities can be from the original's
+         */
+        public double getMaxProbabilityError() {
+            return maxProbabilityError;
+        }
+
+        @Override
+        public String toString() {
+            return "Compaction{nodes " + nodesBefore + " -> " + nodesAfter + ", serialized bytes " + serializedBytesBefore
+                    + " -> " + serializedBytesAfter + ", max probability error " + maxProbabilityError + "}";
+        }
+    }
+}
@@ -1,18 +1,24 @@
 package quickml.supervised.classifier.randomForest;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
-import com.google.common.util.concurrent.AtomicDouble;
+import com.google.common.collect.Lists;
 
 import quickml.data.AttributesMap;
+import quickml.data.FeatureVector;
 import quickml.data.PredictionMap;
+import quickml.data.Schema;
 import quickml.supervised.classifier.AbstractClassifier;
 import quickml.supervised.classifier.decisionTree.Tree;
 import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.SingleAttributeMarginalizer;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Created with IntelliJ IDEA.
@@ -25,9 +31,27 @@ public class RandomForest extends AbstractClassifier {
 
     static final long serialVersionUID = 56394564395638954L;
 
+    /**
+     * How many instances {@link #predictBatch} passes through each tree at a time.  Small enough that the instances'
+     * attributes stay in cache while every tree is applied to them, large enough that each tree's top levels do too.
+     */
+    static final int BATCH_BLOCK_SIZE = 256;
+
     public final List<Tree> trees;
     private Set<Serializable> classifications = new HashSet<>();
     private boolean binaryClassification = true;
+    /**
+     * How much each tree matters, for choosing which to evaluate first when not all of them can be, null to use their sizes
+     */
+    private double[] treeImportances;
+    /**
+     * Forests of at least this many trees are evaluated in parallel chunks of treesPerChunk trees, 0 to never be
+     */
+    private int minTreesForParallelEvaluation;
+    private int treesPerChunk;
+    private transient volatile Schema schema;
+    private transient volatile Serializable[] indexedClassifications;
+    private transient volatile int[] importanceOrder;
 
     protected RandomForest(List<Tree> trees, Set<Serializable> classifications) {
         Preconditions.checkArgument(trees.size() > 0, "We must have at least one tree");
@@ -40,8 +64,186 @@ public class RandomForest extends AbstractClassifier {
         }
     }
 
+    public Set<Serializable> getClassifications() {
+        return classifications;
+    }
+
+    /**
+     * @param treeImportances how much each tree matters, indexed as {@link #trees}, e.g. from
+     *                        {@link AnytimePrediction#importancesFromValidationSet}
+     * @return a forest of the same trees that evaluates the most important first when predicting within a budget
+     */
+    public RandomForest withTreeImportances(double[] treeImportances) {
+        Preconditions.checkArgument(treeImportances.length == trees.size(), "Expected an importance for each of the %s trees", trees.size());
+        RandomForest randomForest = copyWithTrees(trees);
+        randomForest.treeImportances = treeImportances.clone();
+        return randomForest;
+    }
+
+    /**
+     * @return a forest of the given trees in place of these, e.g. compacted or pruned copies, keeping any tree
+     * importances and other settings
+     */
+    public RandomForest withTrees(List<Tree> trees) {
+        Preconditions.checkArgument(trees.size() == this.trees.size(), "Expected a replacement for each of the %s trees", this.trees.size());
+        return copyWithTrees(trees);
+    }
+
+    /**
+     * Spreads a single prediction over the cores, for giant forests where the latency of one request matters: when
+     * there are at least minTrees trees, they are split into chunks of treesPerChunk that are evaluated in parallel on
+     * a shared {@link ForkJoinPool}, and the chunks' sums are added up in order, so a prediction always comes out the
+     * same.  Smaller forests, where handing off to other threads costs more than it saves, stay sequential.
+     *
+     * @return a forest of the same trees that evaluates them in parallel when there are enough
+     */
+    public RandomForest withParallelEvaluation(int minTrees, int treesPerChunk) {
+        Preconditions.checkArgument(minTrees > 0 && treesPerChunk > 0, "minTrees and treesPerChunk must be positive");
+        RandomForest randomForest = copyWithTrees(trees);
+        randomForest.minTreesForParallelEvaluation = minTrees;
+        randomForest.treesPerChunk = treesPerChunk;
+        return randomForest;
+    }
+
+    /**
+     * @return whether predictions are split between threads, see {@link #withParallelEvaluation(int, int)}
+     */
+    public boolean isEvaluatedInParallel() {
+        return minTreesForParallelEvaluation > 0 && trees.size() >= minTreesForParallelEvaluation;
+    }
+
+    private RandomForest copyWithTrees(List<Tree> trees) {
+        RandomForest randomForest = new RandomForest(trees, classifications);
+        randomForest.treeImportances = treeImportances;
+        randomForest.minTreesForParallelEvaluation = minTreesForParallelEvaluation;
+        randomForest.treesPerChunk = treesPerChunk;
+        return randomForest;
+    }
+
+    /**
+     * For warm starting: a forest of grownTrees, which are these trees less the numOldestTreesDropped oldest followed
+     * by any new ones, keeping the parallel evaluation settings.  Retained trees keep their importances, if any were
+     * given, and new trees get the mean importance of the retained ones, as nothing is known about them yet.
+     */
+    RandomForest copyWithGrownTrees(List<Tree> grownTrees, int numOldestTreesDropped, Set<Serializable> classifications) {
+        RandomForest randomForest = new RandomForest(grownTrees, classifications);
+        randomForest.minTreesForParallelEvaluation = minTreesForParallelEvaluation;
+        randomForest.treesPerChunk = treesPerChunk;
+        int numRetainedTrees = trees.size() - numOldestTreesDropped;
+        if (treeImportances != null && numRetainedTrees > 0) {
+            double[] grownImportances = Arrays.copyOfRange(treeImportances, numOldestTreesDropped, numOldestTreesDropped + grownTrees.size());
+            double meanImportance = 0;
+            for (int tree = 0; tree < numRetainedTrees; tree++) {
+                meanImportance += grownImportances[tree] / numRetainedTrees;
+            }
+            Arrays.fill(grownImportances, numRetainedTrees, grownImportances.length, meanImportance);
+            randomForest.treeImportances = grownImportances;
+        }
+        return randomForest;
+    }
+
+    /**
+     * @return the importance given by {@link #withTreeImportances}, or if none was the number of nodes in the tree
+     */
+    public double getTreeImportance(int tree) {
+        return treeImportances != null ? treeImportances[tree] : trees.get(tree).node.size();
+    }
+
+    /**
+     * @return the classifications in the order {@link #predictInto} indexes them, which doesn't change for the life
+     * of this forest
+     */
+    public List<Serializable> getIndexedClassifications() {
+        return Collections.unmodifiableList(Arrays.asList(indexedClassifications()));
+    }
+
+    /**
+     * @return the index of the classification in {@link #getIndexedClassifications()}, or -1 if it isn't one of them
+     */
+    public int getClassificationIndex(Serializable classification) {
+        Serializable[] indexed = indexedClassifications();
+        for (int c = 0; c < indexed.length; c++) {
+            if (indexed[c].equals(classification)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private Serializable[] indexedClassifications() {
+        Serializable[] result = indexedClassifications;
+        if (result == null) {
+            result = classifications.toArray(new Serializable[classifications.size()]);
+            indexedClassifications = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return a schema of the attributes any of the trees test, for filling {@link FeatureVector}s
+     */
+    public Schema getSchema() {
+        Schema result = schema;
+        if (result == null) {
+            Schema.Builder schemaBuilder = Schema.builder();
+            for (Tree tree : trees) {
+                tree.node.addToSchema(schemaBuilder);
+            }
+            result = schemaBuilder.build();
+            schema = result;
+        }
+        return result;
+    }
+
+    public double getProbability(FeatureVector features, Serializable classification) {
+        double total = 0;
+        for (Tree tree : trees) {
+            final double probability = tree.getProbability(features, classification);
+            if (Double.isInfinite(probability) || Double.isNaN(probability)) {
+                throw new RuntimeException("Probability must be a normal number, not "+probability);
+            }
+            total += probability;
+        }
+        return total / trees.size();
+    }
+
+    public PredictionMap predict(final FeatureVector features) {
+        if (binaryClassification) {
+            PredictionMap probsByClassification = PredictionMap.newMap();
+            Iterator<Serializable> classIterator = classifications.iterator();
+            Serializable firstClassification = classIterator.next();
+            double firstProbability = getProbability(features, firstClassification);
+            probsByClassification.put(firstClassification, firstProbability);
+            if (classIterator.hasNext()) {
+                probsByClassification.put(classIterator.next(), 1.0 - firstProbability);
+            }
+            return probsByClassification;
+        }
+        PredictionMap sumsByClassification = new PredictionMap(new HashMap<Serializable, Double>());
+        for (Tree tree : trees) {
+            final Leaf leaf = tree.node.getLeaf(features);
+            for (Serializable classification : leaf.getClassifications()) {
+                Double sum = sumsByClassification.get(classification);
+                sumsByClassification.put(classification, (sum == null ? 0.0 : sum) + leaf.getProbability(classification));
+            }
+        }
+        PredictionMap probsByClassification = new PredictionMap(new HashMap<Serializable, Double>());
+        for (Map.Entry<Serializable, Double> sumEntry : sumsByClassification.entrySet()) {
+            probsByClassification.put(sumEntry.getKey(), sumEntry.getValue() / trees.size());
+        }
+        return probsByClassification;
+    }
+
     @Override
     public double getProbability(AttributesMap attributes, Serializable classification) {
+        if (isEvaluatedInParallel()) {
+            double[] total = new double[1];
+            addProbabilitiesInParallel(attributes, new Serializable[]{classification}, 1, total);
+            if (Double.isInfinite(total[0]) || Double.isNaN(total[0])) {
+                throw new RuntimeException("Probability must be a normal number, not "+total[0]);
+            }
+            return total[0] / trees.size();
+        }
         double total = 0;
         for (Tree tree : trees) {
             final double probability = tree.getProbability(attributes, classification);
@@ -76,19 +278,15 @@ public class RandomForest extends AbstractClassifier {
     }
 
     private PredictionMap getPredictionForNClasses(AttributesMap attributes) {
-        PredictionMap sumsByClassification = new PredictionMap(new HashMap<Serializable, Double>());
-        for (Tree tree : trees) {
-            final PredictionMap treeProbs = tree.predict(attributes);
-            for (Map.Entry<Serializable, Double> tpe : treeProbs.entrySet()) {
-                Double sum = sumsByClassification.get(tpe.getKey());
-                if (sum == null) sum = 0.0;
-                sum += tpe.getValue();
-                sumsByClassification.put(tpe.getKey(), sum);
-            }
-        }
+        Serializable[] indexed = indexedClassifications();
+        double[] probabilities = new double[indexed.length];
+        predictInto(attributes, probabilities);
         PredictionMap probsByClassification = new PredictionMap(new HashMap<Serializable, Double>());
-        for (Map.Entry<Serializable, Double> sumEntry : sumsByClassification.entrySet()) {
-            probsByClassification.put(sumEntry.getKey(), sumEntry.getValue() / trees.size());
+        for (int c = 0; c < indexed.length; c++) {
+            // leaves only count the classifications they saw, so this keeps just those some leaf reached
+            if (probabilities[c] > 0) {
+                probsByClassification.put(indexed[c], probabilities[c]);
+            }
         }
         return probsByClassification;
     }
@@ -112,6 +310,24 @@ public class RandomForest extends AbstractClassifier {
         return probsByClassification;
     }
 
+    /**
+     * Walks each tree once for all the attributes, see {@link SingleAttributeMarginalizer}
+     */
+    @Override
+    public double[][] predictWithoutEachAttribute(AttributesMap attributes, List<String> attributesToIgnore, List<Serializable> classifications) {
+        double[][] probabilities = new double[attributesToIgnore.size()][classifications.size()];
+        SingleAttributeMarginalizer marginalizer = new SingleAttributeMarginalizer(attributesToIgnore, classifications);
+        for (Tree tree : trees) {
+            marginalizer.addProbabilities(tree.node, attributes, probabilities);
+        }
+        for (double[] attributeProbabilities : probabilities) {
+            for (int c = 0; c < attributeProbabilities.length; c++) {
+                attributeProbabilities[c] /= trees.size();
+            }
+        }
+        return probabilities;
+    }
+
     private PredictionMap getPredictionForTwoClasses(AttributesMap attributes) {
         PredictionMap probsByClassification = PredictionMap.newMap();
         Iterator<Serializable> classIterator = classifications.iterator();
@@ -128,29 +344,275 @@ public class RandomForest extends AbstractClassifier {
         return probsByClassification;
     }
 
+    /**
+     * Writes the probability of each classification into out, indexed as {@link #getIndexedClassifications()}.
+     * When evaluated sequentially nothing is allocated, so this suits serving many predictions a second with a reused
+     * array; evaluating in parallel allocates a task and an array of sums for each chunk of trees.
+     *
+     * @param out must have room for every classification
+     */
+    public void predictInto(AttributesMap attributes, double[] out) {
+        Serializable[] indexed = indexedClassifications();
+        if (out.length < indexed.length) {
+            throw new IllegalArgumentException("out has room for " + out.length + " classifications but there are " + indexed.length);
+        }
+        Arrays.fill(out, 0, indexed.length, 0);
+        if (isEvaluatedInParallel()) {
+            int numSummed = binaryClassification ? Math.min(1, indexed.length) : indexed.length;
+            addProbabilitiesInParallel(attributes, indexed, numSummed, out);
+            for (int c = 0; c < numSummed; c++) {
+                out[c] /= trees.size();
+            }
+            if (binaryClassification && indexed.length > 1) {
+                out[1] = 1.0 - out[0];
+            }
+            return;
+        }
+        if (binaryClassification) {
+            for (Tree tree : trees) {
+                out[0] += tree.node.getLeaf(attributes).getProbability(indexed[0]);
+            }
+            out[0] /= trees.size();
+            if (indexed.length > 1) {
+                out[1] = 1.0 - out[0];
+            }
+            return;
+        }
+        for (Tree tree : trees) {
+            Leaf leaf = tree.node.getLeaf(attributes);
+            for (int c = 0; c < indexed.length; c++) {
+                out[c] += leaf.getProbability(indexed[c]);
+            }
+        }
+        for (int c = 0; c < indexed.length; c++) {
+            out[c] /= trees.size();
+        }
+    }
+
+    /**
+     * The allocation free equivalent of {@link #getClassificationByMaxProb(AttributesMap)}.
+     *
+     * @param scratch an array with room for every classification, which is overwritten with their probabilities
+     * @return the index in {@link #getIndexedClassifications()} of the most probable classification
+     */
+    public int getClassificationIndexByMaxProb(AttributesMap attributes, double[] scratch) {
+        predictInto(attributes, scratch);
+        int best = 0;
+        for (int c = 1; c < classifications.size(); c++) {
+            if (scratch[c] > scratch[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
     @Override
     public Serializable getClassificationByMaxProb(AttributesMap attributes) {
-        Map<Serializable, AtomicDouble> probTotals = Maps.newHashMap();
-        for (Tree tree : trees) {
-            Leaf leaf =tree.node.getLeaf(attributes);
-            for (Serializable classification : leaf.getClassifications()) {
-                AtomicDouble ttlProb = probTotals.get(classification);
-                if (ttlProb == null) {
-                    ttlProb = new AtomicDouble(0);
-                    probTotals.put(classification, ttlProb);
+        Serializable[] indexed = indexedClassifications();
+        return indexed[getClassificationIndexByMaxProb(attributes, new double[indexed.length])];
+    }
+
+    /**
+     * Predicts from at most maxTrees trees, the most important first, see {@link #getTreeImportance(int)}.
+     */
+    public AnytimePrediction predictWithTreeBudget(AttributesMap attributes, int maxTrees) {
+        Preconditions.checkArgument(maxTrees > 0, "Must be allowed at least one tree");
+        return predictAnytime(attributes, maxTrees, false, 0);
+    }
+
+    /**
+     * Predicts from the most important trees that can be evaluated before the deadline, see
+     * {@link #getTreeImportance(int)}.  At least one tree is always evaluated, however late.
+     *
+     * @param deadlineNanos the deadline as a value of {@link System#nanoTime()}
+     */
+    public AnytimePrediction predictBeforeDeadline(AttributesMap attributes, long deadlineNanos) {
+        return predictAnytime(attributes, trees.size(), true, deadlineNanos);
+    }
+
+    private AnytimePrediction predictAnytime(AttributesMap attributes, int maxTrees, boolean hasDeadline, long deadlineNanos) {
+        Serializable[] indexed = indexedClassifications();
+        int[] order = importanceOrder();
+        double[] sums = new double[indexed.length];
+        int treesUsed = 0;
+        while (treesUsed < Math.min(maxTrees, order.length)) {
+            // compared by difference, as nanoTime values may overflow
+            if (treesUsed > 0 && hasDeadline && System.nanoTime() - deadlineNanos >= 0) {
+                break;
+            }
+            Leaf leaf = trees.get(order[treesUsed]).node.getLeaf(attributes);
+            for (int c = 0; c < indexed.length; c++) {
+                sums[c] += leaf.getProbability(indexed[c]);
+            }
+            treesUsed++;
+        }
+
+        PredictionMap probsByClassification = PredictionMap.newMap();
+        if (binaryClassification) {
+            probsByClassification.put(indexed[0], sums[0] / treesUsed);
+            if (indexed.length > 1) {
+                probsByClassification.put(indexed[1], 1.0 - sums[0] / treesUsed);
+            }
+        } else {
+            for (int c = 0; c < indexed.length; c++) {
+                if (sums[c] > 0) {
+                    probsByClassification.put(indexed[c], sums[c] / treesUsed);
                 }
-                ttlProb.addAndGet(leaf.getProbability(classification));
             }
         }
-        Serializable bestClassification = null;
-        double bestClassificationTtlProb = 0;
-        for (Map.Entry<Serializable, AtomicDouble> classificationProb : probTotals.entrySet()) {
-            if (bestClassification == null || classificationProb.getValue().get() > bestClassificationTtlProb) {
-                bestClassification = classificationProb.getKey();
-                bestClassificationTtlProb = classificationProb.getValue().get();
+        return new AnytimePrediction(probsByClassification, treesUsed, trees.size());
+    }
+
+    private int[] importanceOrder() {
+        int[] result = importanceOrder;
+        if (result == null) {
+            List<Integer> order = new ArrayList<>(trees.size());
+            final double[] importances = new double[trees.size()];
+            for (int tree = 0; tree < trees.size(); tree++) {
+                order.add(tree);
+                importances[tree] = getTreeImportance(tree);
             }
+            Collections.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(importances[b], importances[a]);
+                }
+            });
+            result = new int[order.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = order.get(i);
+            }
+            importanceOrder = result;
+        }
+        return result;
+    }
+
+    /**
+     * Predicts tree by tree over blocks of instances rather than instance by instance, so each tree's nodes are
+     * read once per block.  Every classification is included in the predictions, with 0 for any that no leaf
+     * reached.
+     */
+    @Override
+    public List<PredictionMap> predictBatch(List<AttributesMap> attributesList) {
+        List<Serializable> classificationList = new ArrayList<>(classifications);
+        List<PredictionMap> predictions = new ArrayList<>(attributesList.size());
+        if (binaryClassification) {
+            double[][] probabilities = predictBatch(attributesList, classificationList.subList(0, 1));
+            for (double[] instanceProbabilities : probabilities) {
+                PredictionMap prediction = PredictionMap.newMap();
+                prediction.put(classificationList.get(0), instanceProbabilities[0]);
+                if (classificationList.size() > 1) {
+                    prediction.put(classificationList.get(1), 1.0 - instanceProbabilities[0]);
+                }
+                predictions.add(prediction);
+            }
+        } else {
+            double[][] probabilities = predictBatch(attributesList, classificationList);
+            for (double[] instanceProbabilities : probabilities) {
+                PredictionMap prediction = new PredictionMap(new HashMap<Serializable, Double>());
+                for (int c = 0; c < instanceProbabilities.length; c++) {
+                    prediction.put(classificationList.get(c), instanceProbabilities[c]);
+                }
+                predictions.add(prediction);
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * @return the mean over the trees of each classification's probability, as {@link #getProbability(AttributesMap, Serializable)}
+     */
+    @Override
+    public double[][] predictBatch(List<AttributesMap> attributesList, List<Serializable> classifications) {
+        Serializable[] classificationArray = classifications.toArray(new Serializable[classifications.size()]);
+        double[][] probabilities = new double[attributesList.size()][classificationArray.length];
+        for (int blockStart = 0; blockStart < probabilities.length; blockStart += BATCH_BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + BATCH_BLOCK_SIZE, probabilities.length);
+            for (Tree tree : trees) {
+                for (int i = blockStart; i < blockEnd; i++) {
+                    Leaf leaf = tree.node.getLeaf(attributesList.get(i));
+                    double[] instanceProbabilities = probabilities[i];
+                    for (int c = 0; c < classificationArray.length; c++) {
+                        instanceProbabilities[c] += leaf.getProbability(classificationArray[c]);
+                    }
+                }
+            }
+        }
+        for (double[] instanceProbabilities : probabilities) {
+            for (int c = 0; c < instanceProbabilities.length; c++) {
+                instanceProbabilities[c] /= trees.size();
+            }
+        }
+        return probabilities;
+    }
+
+    /**
+     * Adds each tree's probabilities of the first numSummed classifications to sums, evaluating chunks of trees in
+     * parallel and adding up their partial sums in chunk order
+     */
+    private void addProbabilitiesInParallel(AttributesMap attributes, Serializable[] classifications, int numSummed, double[] sums) {
+        ChunkedSum chunkedSum = new ChunkedSum(attributes, classifications, numSummed, sums);
+        if (ForkJoinTask.inForkJoinPool()) {
+            chunkedSum.invoke();
+        } else {
+            SharedPool.POOL.invoke(chunkedSum);
+        }
+    }
+
+    private void addProbabilities(AttributesMap attributes, Serializable[] classifications, int numSummed, int fromTree, int toTree, double[] sums) {
+        for (int tree = fromTree; tree < toTree; tree++) {
+            Leaf leaf = trees.get(tree).node.getLeaf(attributes);
+            for (int c = 0; c < numSummed; c++) {
+                sums[c] += leaf.getProbability(classifications[c]);
+            }
+        }
+    }
+
+    private class ChunkedSum extends RecursiveAction {
+        private static final long serialVersionUID = 4217560143095893562L;
+
+        private final AttributesMap attributes;
+        private final Serializable[] classifications;
+        private final int numSummed;
+        private final double[] sums;
+
+        ChunkedSum(AttributesMap attributes, Serializable[] classifications, int numSummed, double[] sums) {
+            this.attributes = attributes;
+            this.classifications = classifications;
+            this.numSummed = numSummed;
+            this.sums = sums;
         }
-        return bestClassification;
+
+        @Override
+        protected void compute() {
+            List<RecursiveTask<double[]>> chunks = Lists.newArrayList();
+            for (int fromTree = 0; fromTree < trees.size(); fromTree += treesPerChunk) {
+                final int chunkStart = fromTree;
+                final int chunkEnd = Math.min(fromTree + treesPerChunk, trees.size());
+                chunks.add(new RecursiveTask<double[]>() {
+                    @Override
+                    protected double[] compute() {
+                        double[] chunkSums = new double[numSummed];
+                        addProbabilities(attributes, classifications, numSummed, chunkStart, chunkEnd, chunkSums);
+                        return chunkSums;
+                    }
+                });
+            }
+            invokeAll(chunks);
+            for (RecursiveTask<double[]> chunk : chunks) {
+                double[] chunkSums = chunk.join();
+                for (int c = 0; c < numSummed; c++) {
+                    sums[c] += chunkSums[c];
+                }
+            }
+        }
+    }
+
+    /**
+     * Holds the pool shared by every forest that evaluates in parallel, created when the first one is used
+     */
+    private static class SharedPool {
+        static final ForkJoinPool POOL = new ForkJoinPool();
     }
 
     @Override
@@ -1,8 +1,10 @@
 package quickml.supervised.classifier.randomForest;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import quickml.supervised.CancellationToken;
 import quickml.supervised.PredictiveModelBuilder;
 import quickml.data.ClassifierInstance;
 import quickml.supervised.classifier.Classifier;
@@ -15,6 +17,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -29,12 +33,16 @@ import java.util.concurrent.Future;
 public class RandomForestBuilder<T extends ClassifierInstance> implements PredictiveModelBuilder<Classifier, T> {
 
     public static final String NUM_TREES = "numTrees";
+    public static final String MAX_BUILD_TIME_MILLIS = "maxBuildTimeMillis";
+    public static final String MIN_TREES = "minTrees";
 
     private static final Logger logger = LoggerFactory.getLogger(RandomForestBuilder.class);
     private final TreeBuilder<T> treeBuilder;
     private int numTrees = 20;
     private int executorThreadCount = Runtime.getRuntime().availableProcessors();
-    private ExecutorService executorService;
+    private long maxBuildTimeMillis = CancellationToken.NO_DEADLINE;
+    private int minTrees = 1;
+    private CancellationToken cancellationToken;
 
     public RandomForestBuilder() {
         this(new TreeBuilder<T>().ignoreAttributeAtNodeProbability(0.7).minCategoricalAttributeValueOccurances(11).maxDepth(5));
@@ -49,6 +57,10 @@ public class RandomForestBuilder<T extends ClassifierInstance> implements Predic
         treeBuilder.updateBuilderConfig(config);
         if (config.containsKey(NUM_TREES))
             this.numTrees((Integer) config.get(NUM_TREES));
+        if (config.containsKey(MAX_BUILD_TIME_MILLIS))
+            this.maxBuildTimeMillis(((Number) config.get(MAX_BUILD_TIME_MILLIS)).longValue());
+        if (config.containsKey(MIN_TREES))
+            this.minTrees((Integer) config.get(MIN_TREES));
     }
 
     public RandomForestBuilder<T> numTrees(int numTrees) {
@@ -61,41 +73,133 @@ public class RandomForestBuilder<T extends ClassifierInstance> implements Predic
         return this;
     }
 
+    /**
+     * Wall-clock budget for a build.  Once it is exhausted the trees still being built are abandoned and the forest
+     * is made from the trees completed so far, provided there are at least minTrees of them.
+     */
+    public RandomForestBuilder<T> maxBuildTimeMillis(long maxBuildTimeMillis) {
+        Preconditions.checkArgument(maxBuildTimeMillis > 0, "maxBuildTimeMillis must be positive");
+        this.maxBuildTimeMillis = maxBuildTimeMillis;
+        return this;
+    }
+
+    /**
+     * The fewest trees a cancelled or timed out build may return.  If fewer trees were completed the build fails
+     * with a {@link CancellationException}.
+     */
+    public RandomForestBuilder<T> minTrees(int minTrees) {
+        Preconditions.checkArgument(minTrees > 0, "minTrees must be positive");
+        this.minTrees = minTrees;
+        return this;
+    }
+
+    /**
+     * Cancelling this token stops a build in progress, with the same outcome as the time budget running out.  May be null.
+     */
+    public RandomForestBuilder<T> cancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        return this;
+    }
+
     @Override
     public RandomForest buildPredictiveModel(Iterable<T> trainingData) {
-        executorService = Executors.newFixedThreadPool(executorThreadCount);
         logger.info("Building random forest with {} trees", numTrees);
+        List<Tree> trees = buildTrees(trainingData, numTrees);
+        return new RandomForest(trees, getClassifications(trees));
+    }
+
+    /**
+     * Grows an existing forest rather than rebuilding it.  Only the new trees are built.
+     *
+     * @param existingForest the forest to start from, it is not modified
+     * @param numTreesToAdd the number of trees to build from the trainingData
+     * @param numOldestTreesToReplace the number of trees, from the start of the existing forest's tree list (i.e. the oldest),
+     *                                to drop from the returned forest
+     * @return a new forest containing the retained trees followed by the new ones, with the existing forest's
+     * parallel evaluation settings and, if it has them, the retained trees' importances
+     */
+    public RandomForest buildPredictiveModel(RandomForest existingForest, Iterable<T> trainingData, int numTreesToAdd, int numOldestTreesToReplace) {
+        Preconditions.checkArgument(numTreesToAdd >= 0, "numTreesToAdd must not be negative");
+        Preconditions.checkArgument(numOldestTreesToReplace >= 0 && numOldestTreesToReplace <= existingForest.trees.size(),
+                "numOldestTreesToReplace must be between 0 and the number of trees in the existing forest (%s)", existingForest.trees.size());
+        logger.info("Adding {} trees to a random forest of {} trees, replacing the oldest {}", numTreesToAdd, existingForest.trees.size(), numOldestTreesToReplace);
+
+        List<Tree> trees = Lists.newArrayList(existingForest.trees.subList(numOldestTreesToReplace, existingForest.trees.size()));
+        if (numTreesToAdd > 0) {
+            trees.addAll(buildTrees(trainingData, numTreesToAdd));
+        }
+        return existingForest.copyWithGrownTrees(trees, numOldestTreesToReplace, getClassifications(trees));
+    }
+
+    /**
+     * Builds numTreesToAdd trees and appends them to a copy of the existing forest.
+     */
+    public RandomForest addTrees(RandomForest existingForest, Iterable<T> trainingData, int numTreesToAdd) {
+        return buildPredictiveModel(existingForest, trainingData, numTreesToAdd, 0);
+    }
+
+    /**
+     * Replaces the oldest numTreesToReplace trees of the existing forest with the same number of trees built from trainingData.
+     */
+    public RandomForest replaceOldestTrees(RandomForest existingForest, Iterable<T> trainingData, int numTreesToReplace) {
+        return buildPredictiveModel(existingForest, trainingData, numTreesToReplace, numTreesToReplace);
+    }
+
+    private List<Tree> buildTrees(Iterable<T> trainingData, int numTreesToBuild) {
+        ExecutorService executorService = Executors.newFixedThreadPool(executorThreadCount);
+
+        List<Future<Tree>> treeFutures = Lists.newArrayListWithCapacity(numTreesToBuild);
+        List<Tree> trees = Lists.newArrayListWithCapacity(numTreesToBuild);
+
+        // Each tree polls this token as it grows each node, so in-flight trees stop once it fires.  It is passed to
+        // every tree rather than set on the shared tree builder, so concurrent builds keep their own deadlines.
+        CancellationToken buildToken = CancellationToken.withTimeout(cancellationToken, maxBuildTimeMillis);
+
+        try {
+            // Submit all tree building jobs to the executor
+            for (int treeIndex = 0; treeIndex < numTreesToBuild; treeIndex++) {
+                treeFutures.add(submitTreeBuild(executorService, trainingData, treeIndex, buildToken));
+            }
 
-        List<Future<Tree>> treeFutures = Lists.newArrayListWithCapacity(numTrees);
-        List<Tree> trees = Lists.newArrayListWithCapacity(numTrees);
+            // Collect all completed trees. Will block until complete or cancelled
+            collectTreeFutures(trees, treeFutures);
+        } finally {
+            executorService.shutdown();
+        }
 
-        // Submit all tree building jobs to the executor
-        for (int treeIndex = 0; treeIndex < numTrees; treeIndex++) {
-            treeFutures.add(submitTreeBuild(trainingData, treeIndex));
+        if (trees.size() < numTreesToBuild) {
+            logger.warn("Random forest build was cancelled, {} of {} trees were completed", trees.size(), numTreesToBuild);
+            if (trees.size() < Math.min(minTrees, numTreesToBuild)) {
+                throw new CancellationException("Random forest build was cancelled after " + trees.size()
+                        + " trees, fewer than the minimum of " + Math.min(minTrees, numTreesToBuild));
+            }
         }
+        return trees;
+    }
 
-        // Collect all completed trees. Will block until complete
-        collectTreeFutures(trees, treeFutures);
+    private Set<Serializable> getClassifications(List<Tree> trees) {
+        // recomputed from the trees themselves so that classes only known to replaced trees are dropped
         Set<Serializable> classifications = new HashSet<>();
         for (Tree tree : trees) {
             classifications.addAll(tree.getClassifications());
         }
-        return new RandomForest(trees, classifications);
+        return classifications;
     }
 
-    private Future<Tree> submitTreeBuild(final Iterable<T> trainingData, final int treeIndex) {
+    private Future<Tree> submitTreeBuild(ExecutorService executorService, final Iterable<T> trainingData, final int treeIndex,
+                                         final CancellationToken buildToken) {
         return executorService.submit(new Callable<Tree>() {
             @Override
             public Tree call() throws Exception {
-                return buildModel(trainingData, treeIndex);
+                return buildModel(trainingData, treeIndex, buildToken);
             }
         });
     }
 
-    private Tree buildModel(Iterable<T> trainingData, int treeIndex) {
+    private Tree buildModel(Iterable<T> trainingData, int treeIndex, CancellationToken buildToken) {
         logger.debug("Building tree {} of {}", treeIndex, numTrees);
         int x= 3* 922;
-        return treeBuilder.buildPredictiveModel(trainingData);
+        return treeBuilder.buildPredictiveModel(trainingData, buildToken);
     }
 
 
@@ -103,15 +207,16 @@ public class RandomForestBuilder<T extends ClassifierInstance> implements Predic
         for (Future<Tree> treeFuture : treeFutures) {
             collectTreeFutures(trees, treeFuture);
         }
-
-        executorService.shutdown();
     }
 
     private void collectTreeFutures(List<Tree> trees, Future<Tree> treeFuture) {
         try {
             trees.add(treeFuture.get());
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof CancellationException)) {
+                throw new RuntimeException(e);
+            }
         } catch (Exception e) {
-            e.printStackTrace();
             throw new RuntimeException(e);
         }
     }
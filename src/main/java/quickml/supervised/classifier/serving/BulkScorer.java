@@ -0,0 +1,184 @@
+package quickml.supervised.classifier.serving;
+
+import au.com.bytecode.opencsv.CSVWriter;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.Classifiers;
+import quickml.utlities.CSVToInstanceReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scores inputs of any size in constant memory, as a pipeline of three stages: a reader thread pulls instances from
+ * the input in batches and hands each to a pool of predicting threads, and the calling thread writes the predictions
+ * out in input order as each batch is done.  At most {@link #maxQueuedBatches(int)} batches are between the reader and
+ * the writer at once, so when the predictors or the writer fall behind, the reader waits rather than reading ahead.
+ */
+public class BulkScorer {
+    private final Classifier model;
+    private int predictorThreads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 256;
+    private int maxQueuedBatches = 0;
+
+    /**
+     * Receives each instance along with its prediction, in the order the instances were read
+     */
+    public interface PredictionSink {
+        void write(ClassifierInstance instance, PredictionMap prediction) throws IOException;
+    }
+
+    public BulkScorer(Classifier model) {
+        this.model = model;
+    }
+
+    public BulkScorer predictorThreads(int predictorThreads) {
+        Preconditions.checkArgument(predictorThreads > 0, "predictorThreads must be positive");
+        this.predictorThreads = predictorThreads;
+        return this;
+    }
+
+    /**
+     * How many instances are scored with each call to {@link Classifiers#predictBatch(Classifier, List)}
+     */
+    public BulkScorer batchSize(int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * How many batches may be read ahead of the writer, by default twice the number of predictor threads
+     */
+    public BulkScorer maxQueuedBatches(int maxQueuedBatches) {
+        Preconditions.checkArgument(maxQueuedBatches > 0, "maxQueuedBatches must be positive");
+        this.maxQueuedBatches = maxQueuedBatches;
+        return this;
+    }
+
+    /**
+     * @return how many instances were scored
+     */
+    public long score(final Iterator<? extends ClassifierInstance> instances, PredictionSink sink) throws IOException {
+        final ExecutorService predictors = Executors.newFixedThreadPool(predictorThreads, new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("bulk-scorer-predictor-%d").build());
+        final BlockingQueue<Future<ScoredBatch>> inFlight = new ArrayBlockingQueue<>(maxQueuedBatches > 0 ? maxQueuedBatches : 2 * predictorThreads);
+        final Future<ScoredBatch> endOfInput = Futures.immediateFuture(null);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    try {
+                        while (instances.hasNext()) {
+                            final List<ClassifierInstance> batch = Lists.newArrayListWithCapacity(batchSize);
+                            while (batch.size() < batchSize && instances.hasNext()) {
+                                batch.add(instances.next());
+                            }
+                            inFlight.put(predictors.submit(new Callable<ScoredBatch>() {
+                                @Override
+                                public ScoredBatch call() {
+                                    return new ScoredBatch(batch);
+                                }
+                            }));
+                        }
+                        inFlight.put(endOfInput);
+                    } catch (Throwable t) {
+                        // whatever the input throws, even an Error, the writer must be told or it waits forever
+                        inFlight.put(Futures.<ScoredBatch>immediateFailedFuture(t));
+                    }
+                } catch (InterruptedException e) {
+                    // the writer has given up
+                }
+            }
+        }, "bulk-scorer-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long written = 0;
+        try {
+            while (true) {
+                Future<ScoredBatch> next = inFlight.take();
+                if (next == endOfInput) {
+                    return written;
+                }
+                ScoredBatch scoredBatch = next.get();
+                for (int i = 0; i < scoredBatch.instances.size(); i++) {
+                    sink.write(scoredBatch.instances.get(i), scoredBatch.predictions.get(i));
+                }
+                written += scoredBatch.instances.size();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scoring", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException("Failed to score", e.getCause());
+        } finally {
+            reader.interrupt();
+            predictors.shutdownNow();
+        }
+    }
+
+    /**
+     * Streams a csv file through the model, writing a csv with each row's label, then its probability of each of the
+     * classifications.  Rows being scored needn't have a real label, so the label column can carry an id, e.g. one
+     * chosen with {@link quickml.utlities.CSVToInstanceReaderBuilder#collumnNameForLabel}.
+     *
+     * @return how many rows were scored
+     */
+    public long scoreCsv(Reader in, CSVToInstanceReader csvReader, Writer out, final List<Serializable> classifications) throws IOException {
+        Iterator<ClassifierInstance> instances = csvReader.iterateCsvFromReader(in);
+        final CSVWriter csvWriter = new CSVWriter(out);
+        final String[] row = new String[classifications.size() + 1];
+        row[0] = "label";
+        for (int c = 0; c < classifications.size(); c++) {
+            row[c + 1] = classifications.get(c).toString();
+        }
+        csvWriter.writeNext(row);
+        long scored = score(instances, new PredictionSink() {
+            @Override
+            public void write(ClassifierInstance instance, PredictionMap prediction) {
+                row[0] = instance.getLabel().toString();
+                for (int c = 0; c < classifications.size(); c++) {
+                    row[c + 1] = Double.toString(prediction.get(classifications.get(c)));
+                }
+                csvWriter.writeNext(row);
+            }
+        });
+        csvWriter.flush();
+        return scored;
+    }
+
+    private class ScoredBatch {
+        final List<ClassifierInstance> instances;
+        final List<PredictionMap> predictions;
+
+        ScoredBatch(List<ClassifierInstance> instances) {
+            this.instances = instances;
+            List<AttributesMap> attributesList = Lists.newArrayListWithCapacity(instances.size());
+            for (ClassifierInstance instance : instances) {
+                attributesList.add(instance.getAttributes());
+            }
+            predictions = Classifiers.predictBatch(model, attributesList);
+        }
+    }
+}
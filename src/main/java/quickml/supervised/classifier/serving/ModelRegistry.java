@@ -0,0 +1,227 @@
+package quickml.supervised.classifier.serving;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import quickml.data.AttributesMap;
+import quickml.supervised.classifier.Classifier;
+import quickml.utlities.SerializationUtility;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serves named {@link Classifier}s that can be replaced while predictions are being made.  Each name's versions are
+ * held behind an atomic reference, so {@link #get} never blocks and always returns a complete model; a caller that
+ * fetches the model once per request finishes that request on the model it started with, however many times it is
+ * replaced in the meantime.
+ * <p/>
+ * Models can be loaded from gzipped files in the background.  Loading briefly needs room for the new model alongside
+ * the one being served, so it is refused up front, leaving the current model in place, if the heap can't fit the file
+ * expanded by {@link #memoryExpansionFactor(double)}.  Before being published a model is warmed up by predicting on
+ * sample inputs, so the first requests it serves don't pay for class loading and JIT compilation.  By default a
+ * replaced version is dropped as soon as requests stop using it; keeping earlier versions for {@link #rollback} is
+ * opt-in through {@link #retainedVersions(int)}, since each holds its model in memory, so retaining one version doubles
+ * the memory resident models take, and a background load then briefly holds three.
+ */
+public class ModelRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ModelRegistry.class);
+
+    private final ConcurrentMap<String, AtomicReference<Versions>> models = new ConcurrentHashMap<>();
+    private final ExecutorService loadExecutor;
+    private double memoryExpansionFactor = 10;
+    private int retainedVersions = 0;
+    private int warmUpRounds = 100;
+
+    /**
+     * Loads models one at a time on a daemon thread of its own
+     */
+    public ModelRegistry() {
+        this(Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("model-registry-loader-%d").build()));
+    }
+
+    public ModelRegistry(ExecutorService loadExecutor) {
+        this.loadExecutor = loadExecutor;
+    }
+
+    /**
+     * How many times larger than its gzipped file a model is expected to be in the heap, for checking there is room to
+     * load it
+     */
+    public ModelRegistry memoryExpansionFactor(double memoryExpansionFactor) {
+        Preconditions.checkArgument(memoryExpansionFactor >= 0, "memoryExpansionFactor must not be negative");
+        this.memoryExpansionFactor = memoryExpansionFactor;
+        return this;
+    }
+
+    /**
+     * How many replaced versions of each model to keep for rolling back to, by default 0 to free a model as soon as it
+     * is replaced
+     */
+    public ModelRegistry retainedVersions(int retainedVersions) {
+        Preconditions.checkArgument(retainedVersions >= 0, "retainedVersions must not be negative");
+        this.retainedVersions = retainedVersions;
+        return this;
+    }
+
+    /**
+     * How many times to predict on each warm-up input before publishing a model
+     */
+    public ModelRegistry warmUpRounds(int warmUpRounds) {
+        Preconditions.checkArgument(warmUpRounds >= 0, "warmUpRounds must not be negative");
+        this.warmUpRounds = warmUpRounds;
+        return this;
+    }
+
+    /**
+     * @return the model currently published under the name, or null if there is none
+     */
+    public Classifier get(String name) {
+        ModelVersion current = getCurrentVersion(name);
+        return current == null ? null : current.getModel();
+    }
+
+    /**
+     * @return the version currently published under the name, or null if there is none
+     */
+    public ModelVersion getCurrentVersion(String name) {
+        AtomicReference<Versions> reference = models.get(name);
+        if (reference == null) {
+            return null;
+        }
+        return reference.get().current();
+    }
+
+    /**
+     * @return the current version of the model followed by those retained for rolling back to, newest first
+     */
+    public List<ModelVersion> getVersions(String name) {
+        AtomicReference<Versions> reference = models.get(name);
+        return reference == null ? Collections.<ModelVersion>emptyList() : reference.get().history;
+    }
+
+    /**
+     * Warms up the model on the inputs, then publishes it as the newest version under the name
+     */
+    public ModelVersion publish(String name, Classifier model, List<AttributesMap> warmUpInputs) {
+        return publish(name, model, null, warmUpInputs);
+    }
+
+    /**
+     * Loads, warms up and publishes a model from a gzipped file on the registry's load executor.  If there isn't room
+     * in the heap for it, or it fails to load, the future fails and the current version stays published.
+     */
+    public Future<ModelVersion> loadInBackground(final String name, final String modelFile, final List<AttributesMap> warmUpInputs) {
+        return loadExecutor.submit(new Callable<ModelVersion>() {
+            @Override
+            public ModelVersion call() {
+                checkMemoryFor(modelFile);
+                Classifier model = new SerializationUtility<Classifier>().loadObjectFromGZIPFile(modelFile);
+                return publish(name, model, modelFile, warmUpInputs);
+            }
+        });
+    }
+
+    /**
+     * Republishes the newest retained version of the model in place of the current one, which is dropped
+     *
+     * @return the version now published
+     */
+    public ModelVersion rollback(String name) {
+        AtomicReference<Versions> reference = models.get(name);
+        Preconditions.checkArgument(reference != null, "No model is published as %s", name);
+        while (true) {
+            Versions versions = reference.get();
+            if (versions.history.size() < 2) {
+                throw new IllegalStateException("No earlier version of " + name + " is retained to roll back to");
+            }
+            Versions rolledBack = new Versions(versions.history.subList(1, versions.history.size()), versions.lastVersion);
+            if (reference.compareAndSet(versions, rolledBack)) {
+                logger.info("Rolled back {} to {}", versions.current(), rolledBack.current());
+                return rolledBack.current();
+            }
+        }
+    }
+
+    /**
+     * Stops publishing any version of the model
+     */
+    public void remove(String name) {
+        models.remove(name);
+    }
+
+    /**
+     * Stops the load executor once any loads already submitted are done
+     */
+    public void shutdown() {
+        loadExecutor.shutdown();
+    }
+
+    private ModelVersion publish(String name, Classifier model, String source, List<AttributesMap> warmUpInputs) {
+        warmUp(model, warmUpInputs);
+        while (true) {
+            AtomicReference<Versions> reference = models.get(name);
+            if (reference == null) {
+                AtomicReference<Versions> created = new AtomicReference<>(new Versions(ImmutableList.<ModelVersion>of(), 0));
+                AtomicReference<Versions> existing = models.putIfAbsent(name, created);
+                reference = existing == null ? created : existing;
+            }
+            Versions versions = reference.get();
+            ModelVersion published = new ModelVersion(name, versions.lastVersion + 1, model, source, System.currentTimeMillis());
+            List<ModelVersion> history = ImmutableList.<ModelVersion>builder().add(published)
+                    .addAll(versions.history.subList(0, Math.min(versions.history.size(), retainedVersions))).build();
+            // if the name was removed meanwhile the reference is no longer served, so publish under the name afresh
+            if (reference.compareAndSet(versions, new Versions(history, published.getVersion())) && models.get(name) == reference) {
+                logger.info("Published {}", published);
+                return published;
+            }
+        }
+    }
+
+    private void warmUp(Classifier model, List<AttributesMap> warmUpInputs) {
+        for (int round = 0; round < warmUpRounds; round++) {
+            for (AttributesMap attributes : warmUpInputs) {
+                model.predict(attributes);
+            }
+        }
+    }
+
+    private void checkMemoryFor(String modelFile) {
+        File file = new File(modelFile);
+        Preconditions.checkArgument(file.isFile(), "No model file at %s", modelFile);
+        Runtime runtime = Runtime.getRuntime();
+        long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        double required = file.length() * memoryExpansionFactor;
+        if (required > available) {
+            throw new IllegalStateException("Not loading " + modelFile + ", it needs about " + (long) required
+                    + " bytes of heap but only " + available + " are available");
+        }
+    }
+
+    /**
+     * The versions of one model, immutable so they can be swapped atomically
+     */
+    private static class Versions {
+        final List<ModelVersion> history;
+        final long lastVersion;
+
+        Versions(List<ModelVersion> history, long lastVersion) {
+            this.history = ImmutableList.copyOf(history);
+            this.lastVersion = lastVersion;
+        }
+
+        ModelVersion current() {
+            return history.isEmpty() ? null : history.get(0);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package quickml.supervised.classifier.serving;
+
+import quickml.supervised.classifier.Classifier;
+
+/**
+ * A model published under a name in a {@link ModelRegistry}, immutable
+ */
+public class ModelVersion {
+    private final String name;
+    private final long version;
+    private final Classifier model;
+    private final String source;
+    private final long publishedAtMillis;
+
+    ModelVersion(String name, long version, Classifier model, String source, long publishedAtMillis) {
+        this.name = name;
+        this.version = version;
+        this.model = model;
+        this.source = source;
+        this.publishedAtMillis = publishedAtMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the version number, counting up from 1 with each model published under the name
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Classifier getModel() {
+        return model;
+    }
+
+    /**
+     * @return the file the model was loaded from, or null if it was published from memory
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public long getPublishedAtMillis() {
+        return publishedAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return name + " v" + version + (source != null ? " from " + source : "");
+    }
+}
@@ -0,0 +1,206 @@
+package quickml.supervised.classifier.serving;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the requests and responses of a {@link ScoringServer}, as JSON or in a compact binary form.
+ * <p/>
+ * A JSON request is an object of attribute values, or an array of them, and the response is an object of
+ * probabilities by classification, or an array of them.  Numbers are read as Doubles, strings as Strings and booleans
+ * as Booleans; nulls are left out.
+ * <p/>
+ * A binary request is the number of instances, then for each the number of attributes followed by each attribute's
+ * name, a type byte ({@link #NUMBER} or {@link #STRING}) and its value, all as written by {@link DataOutput}.  The
+ * response is the number of instances, then for each the number of classifications followed by each one's name and
+ * probability.  Java serialization is deliberately not used, as deserializing it from the network isn't safe, and
+ * the counts in a request are checked against the bytes that follow them, so a short request can't claim more
+ * instances or attributes than it holds.
+ */
+public class Payloads {
+    public static final byte NUMBER = 0;
+    public static final byte STRING = 1;
+
+    // the fewest bytes an instance (its count of attributes) and an attribute (an empty name, type and empty string) take
+    private static final int MIN_INSTANCE_BYTES = 4;
+    private static final int MIN_ATTRIBUTE_BYTES = 5;
+
+    private Payloads() {
+    }
+
+    public static List<AttributesMap> readJsonRequest(String json) {
+        JsonElement root;
+        try {
+            root = new JsonParser().parse(json);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Malformed JSON request", e);
+        }
+        List<AttributesMap> attributesList = Lists.newArrayList();
+        if (root.isJsonArray()) {
+            for (JsonElement element : root.getAsJsonArray()) {
+                attributesList.add(toAttributes(element));
+            }
+        } else {
+            attributesList.add(toAttributes(root));
+        }
+        return attributesList;
+    }
+
+    /**
+     * @param asArray whether to write an array, as for a request that was one, rather than the single prediction
+     */
+    public static String writeJsonResponse(List<PredictionMap> predictions, boolean asArray) {
+        if (!asArray) {
+            return toJson(predictions.get(0)).toString();
+        }
+        JsonArray array = new JsonArray();
+        for (PredictionMap prediction : predictions) {
+            array.add(toJson(prediction));
+        }
+        return array.toString();
+    }
+
+    public static boolean isJsonArray(String json) {
+        return json.trim().startsWith("[");
+    }
+
+    public static void writeBinaryRequest(List<AttributesMap> attributesList, DataOutput out) throws IOException {
+        out.writeInt(attributesList.size());
+        for (AttributesMap attributes : attributesList) {
+            int numAttributes = 0;
+            for (Serializable value : attributes.values()) {
+                if (value != null) {
+                    numAttributes++;
+                }
+            }
+            out.writeInt(numAttributes);
+            for (Map.Entry<String, Serializable> attribute : attributes.entrySet()) {
+                Serializable value = attribute.getValue();
+                if (value == null) {
+                    continue;
+                }
+                out.writeUTF(attribute.getKey());
+                if (value instanceof Number) {
+                    out.writeByte(NUMBER);
+                    out.writeDouble(((Number) value).doubleValue());
+                } else {
+                    out.writeByte(STRING);
+                    out.writeUTF(value.toString());
+                }
+            }
+        }
+    }
+
+    public static List<AttributesMap> readBinaryRequest(byte[] request) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(request);
+        DataInput in = new DataInputStream(bytes);
+        int numInstances = in.readInt();
+        checkCount(numInstances, MIN_INSTANCE_BYTES, bytes.available());
+        List<AttributesMap> attributesList = Lists.newArrayList();
+        for (int i = 0; i < numInstances; i++) {
+            int numAttributes = in.readInt();
+            checkCount(numAttributes, MIN_ATTRIBUTE_BYTES, bytes.available());
+            AttributesMap attributes = AttributesMap.newHashMap();
+            for (int a = 0; a < numAttributes; a++) {
+                String name = in.readUTF();
+                byte type = in.readByte();
+                if (type == NUMBER) {
+                    attributes.put(name, in.readDouble());
+                } else if (type == STRING) {
+                    attributes.put(name, in.readUTF());
+                } else {
+                    throw new IllegalArgumentException("Unknown type " + type + " for attribute " + name);
+                }
+            }
+            attributesList.add(attributes);
+        }
+        return attributesList;
+    }
+
+    public static void writeBinaryResponse(List<PredictionMap> predictions, DataOutput out) throws IOException {
+        out.writeInt(predictions.size());
+        for (PredictionMap prediction : predictions) {
+            out.writeInt(prediction.size());
+            for (Map.Entry<Serializable, Double> probability : prediction.entrySet()) {
+                out.writeUTF(probability.getKey().toString());
+                out.writeDouble(probability.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return for each instance, its probabilities by the name of the classification
+     */
+    public static List<Map<String, Double>> readBinaryResponse(DataInput in) throws IOException {
+        int numInstances = in.readInt();
+        List<Map<String, Double>> predictions = Lists.newArrayList();
+        for (int i = 0; i < numInstances; i++) {
+            int numClassifications = in.readInt();
+            Map<String, Double> prediction = Maps.newHashMap();
+            for (int c = 0; c < numClassifications; c++) {
+                prediction.put(in.readUTF(), in.readDouble());
+            }
+            predictions.add(prediction);
+        }
+        return predictions;
+    }
+
+    private static void checkCount(int count, int minBytesEach, int remainingBytes) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count " + count + " in binary request");
+        }
+        if ((long) count * minBytesEach > remainingBytes) {
+            throw new IllegalArgumentException("Count " + count + " in binary request is more than its remaining " + remainingBytes + " bytes can hold");
+        }
+    }
+
+    private static AttributesMap toAttributes(JsonElement element) {
+        if (!element.isJsonObject()) {
+            throw new IllegalArgumentException("Expected a JSON object of attributes but got " + element);
+        }
+        AttributesMap attributes = AttributesMap.newHashMap();
+        for (Map.Entry<String, JsonElement> attribute : element.getAsJsonObject().entrySet()) {
+            JsonElement value = attribute.getValue();
+            if (value.isJsonNull()) {
+                continue;
+            }
+            if (!value.isJsonPrimitive()) {
+                throw new IllegalArgumentException("Attribute " + attribute.getKey() + " must be a number, string or boolean");
+            }
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isNumber()) {
+                attributes.put(attribute.getKey(), primitive.getAsDouble());
+            } else if (primitive.isBoolean()) {
+                attributes.put(attribute.getKey(), primitive.getAsBoolean());
+            } else {
+                attributes.put(attribute.getKey(), primitive.getAsString());
+            }
+        }
+        return attributes;
+    }
+
+    private static JsonObject toJson(PredictionMap prediction) {
+        JsonObject object = new JsonObject();
+        for (Map.Entry<Serializable, Double> probability : prediction.entrySet()) {
+            object.addProperty(probability.getKey().toString(), probability.getValue());
+        }
+        return object;
+    }
+}
@@ -0,0 +1,465 @@
+package quickml.supervised.classifier.serving;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.Classifiers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves predictions of a model in a {@link ModelRegistry} over HTTP, using the JDK's built in server so it runs
+ * anywhere, including a laptop for load testing.
+ * <p/>
+ * POST /predict takes a JSON request, or a binary one with Content-Type application/octet-stream, as described in
+ * {@link Payloads}, and responds in kind.  Rather than predicting for each request as it arrives, concurrent requests
+ * are queued and gathered into micro-batches of up to {@link #maxBatchSize(int)} instances, waiting at most
+ * {@link #maxWaitMicros(long)} after the first for others to join, and each batch is scored with one call to
+ * {@link Classifiers#predictBatch(Classifier, List)}.  The model is looked up once per batch, so a newly published version takes
+ * over from the next batch.  When {@link #maxQueuedRequests(int)} are already waiting, requests are turned away with
+ * a 503 rather than queueing without limit, as are requests not scored within {@link #requestTimeoutMillis(long)}.
+ * If a batch fails, each of its requests is scored by itself, so that a request the model can't score (e.g. a string
+ * where a number is expected) is answered with a 422 without failing the others.
+ * <p/>
+ * GET /stats gives the {@link LatencyHistogram}s of each stage a request passes through (decode, queue, score, encode
+ * and total, from reading the request to having the response ready to send) along with the mean batch size, also
+ * available from {@link #getLatencyHistograms()}.
+ */
+public class ScoringServer {
+    private static final Logger logger = LoggerFactory.getLogger(ScoringServer.class);
+
+    public static final String DECODE = "decode";
+    public static final String QUEUE = "queue";
+    public static final String SCORE = "score";
+    public static final String ENCODE = "encode";
+    public static final String TOTAL = "total";
+
+    private static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    private final ModelRegistry registry;
+    private final String modelName;
+    private int port = 8080;
+    private int maxBatchSize = 64;
+    private long maxWaitMicros = 1000;
+    private int maxQueuedRequests = 10000;
+    private int handlerThreads = 64;
+    private int scoringThreads = Runtime.getRuntime().availableProcessors();
+    private long requestTimeoutMillis = 10000;
+
+    private final Map<String, LatencyHistogram> latencyHistograms = ImmutableMap.of(DECODE, new LatencyHistogram(),
+            QUEUE, new LatencyHistogram(), SCORE, new LatencyHistogram(), ENCODE, new LatencyHistogram(), TOTAL, new LatencyHistogram());
+    private final AtomicLong batchesScored = new AtomicLong();
+    private final AtomicLong instancesScored = new AtomicLong();
+
+    private BlockingQueue<PendingRequest> queue;
+    private HttpServer httpServer;
+    private ExecutorService handlerExecutor;
+    private ExecutorService scoringExecutor;
+    private Thread batcherThread;
+    private volatile boolean running;
+
+    /**
+     * Serves whichever version of the model is currently published under the name
+     */
+    public ScoringServer(ModelRegistry registry, String modelName) {
+        this.registry = registry;
+        this.modelName = modelName;
+    }
+
+    /**
+     * Serves just this model
+     */
+    public ScoringServer(Classifier model) {
+        this(new ModelRegistry().warmUpRounds(0), "model");
+        registry.publish(modelName, model, Collections.<AttributesMap>emptyList());
+    }
+
+    /**
+     * The port to listen on, 0 for any free one, see {@link #getPort()}
+     */
+    public ScoringServer port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public ScoringServer maxBatchSize(int maxBatchSize) {
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * How long the first request of a batch may wait for others to join it, the price in latency paid for throughput;
+     * 0 scores whatever has already queued up
+     */
+    public ScoringServer maxWaitMicros(long maxWaitMicros) {
+        Preconditions.checkArgument(maxWaitMicros >= 0, "maxWaitMicros must not be negative");
+        this.maxWaitMicros = maxWaitMicros;
+        return this;
+    }
+
+    public ScoringServer maxQueuedRequests(int maxQueuedRequests) {
+        Preconditions.checkArgument(maxQueuedRequests > 0, "maxQueuedRequests must be positive");
+        this.maxQueuedRequests = maxQueuedRequests;
+        return this;
+    }
+
+    /**
+     * How many requests can be handled at once; each waits for its batch to be scored, so this bounds how large
+     * batches can get
+     */
+    public ScoringServer handlerThreads(int handlerThreads) {
+        Preconditions.checkArgument(handlerThreads > 0, "handlerThreads must be positive");
+        this.handlerThreads = handlerThreads;
+        return this;
+    }
+
+    /**
+     * How many batches can be scored at once
+     */
+    public ScoringServer scoringThreads(int scoringThreads) {
+        Preconditions.checkArgument(scoringThreads > 0, "scoringThreads must be positive");
+        this.scoringThreads = scoringThreads;
+        return this;
+    }
+
+    /**
+     * How long a request waits for its batch to be scored before it is answered with a 503
+     */
+    public ScoringServer requestTimeoutMillis(long requestTimeoutMillis) {
+        Preconditions.checkArgument(requestTimeoutMillis > 0, "requestTimeoutMillis must be positive");
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        return this;
+    }
+
+    public synchronized ScoringServer start() throws IOException {
+        Preconditions.checkState(!running, "The server is already running");
+        queue = new ArrayBlockingQueue<>(maxQueuedRequests);
+        handlerExecutor = Executors.newFixedThreadPool(handlerThreads, daemonThreads("scoring-server-handler-%d"));
+        scoringExecutor = Executors.newFixedThreadPool(scoringThreads, daemonThreads("scoring-server-scorer-%d"));
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.createContext("/predict", new PredictHandler());
+        httpServer.createContext("/stats", new StatsHandler());
+        httpServer.setExecutor(handlerExecutor);
+        running = true;
+        batcherThread = daemonThreads("scoring-server-batcher-%d").newThread(new Batcher());
+        batcherThread.start();
+        httpServer.start();
+        logger.info("Serving {} on port {}", modelName, getPort());
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        httpServer.stop(0);
+        batcherThread.interrupt();
+        scoringExecutor.shutdown();
+        handlerExecutor.shutdown();
+        List<PendingRequest> unscored = Lists.newArrayList();
+        queue.drainTo(unscored);
+        fail(unscored, 503, "The server is stopping");
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * @return the latency of each stage, keyed by {@link #DECODE}, {@link #QUEUE}, {@link #SCORE}, {@link #ENCODE} and
+     * {@link #TOTAL}
+     */
+    public Map<String, LatencyHistogram> getLatencyHistograms() {
+        return latencyHistograms;
+    }
+
+    public double getMeanBatchSize() {
+        long batches = batchesScored.get();
+        return batches == 0 ? 0 : (double) instancesScored.get() / batches;
+    }
+
+    private static ThreadFactory daemonThreads(String nameFormat) {
+        return new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build();
+    }
+
+    /**
+     * Gathers queued requests into batches and hands them to the scoring threads
+     */
+    private class Batcher implements Runnable {
+        @Override
+        public void run() {
+            while (running) {
+                final List<PendingRequest> batch = Lists.newArrayList();
+                try {
+                    PendingRequest first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    int batchSize = first.attributesList.size();
+                    long deadline = first.enqueuedNanos + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+                    while (batchSize < maxBatchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        PendingRequest next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        batchSize += next.attributesList.size();
+                    }
+                    scoringExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            score(batch);
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    fail(batch, 503, "The server is stopping");
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RejectedExecutionException e) {
+                    fail(batch, 503, "The server is stopping");
+                }
+            }
+        }
+    }
+
+    private void score(List<PendingRequest> batch) {
+        try {
+            long start = System.nanoTime();
+            List<AttributesMap> attributesList = Lists.newArrayList();
+            for (PendingRequest request : batch) {
+                latencyHistograms.get(QUEUE).recordNanos(start - request.enqueuedNanos);
+                attributesList.addAll(request.attributesList);
+            }
+            Classifier model = registry.get(modelName);
+            if (model == null) {
+                fail(batch, 503, "No model is published as " + modelName);
+                return;
+            }
+            List<PredictionMap> predictions;
+            try {
+                predictions = Classifiers.predictBatch(model, attributesList);
+            } catch (RuntimeException e) {
+                scoreEach(model, batch);
+                return;
+            }
+            latencyHistograms.get(SCORE).recordNanos(System.nanoTime() - start);
+            batchesScored.incrementAndGet();
+            instancesScored.addAndGet(attributesList.size());
+            int offset = 0;
+            for (PendingRequest request : batch) {
+                int size = request.attributesList.size();
+                request.predictions.set(predictions.subList(offset, offset + size));
+                offset += size;
+            }
+        } catch (Throwable t) {
+            // whatever happens, the handler threads waiting on the batch must be answered
+            logger.error("Failed to score a batch", t);
+            fail(batch, 500, "Scoring failed: " + t);
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+        }
+    }
+
+    /**
+     * Scores each request of a batch that failed by itself, so only those the model can't score fail
+     */
+    private void scoreEach(Classifier model, List<PendingRequest> batch) {
+        for (PendingRequest request : batch) {
+            try {
+                request.predictions.set(Classifiers.predictBatch(model, request.attributesList));
+            } catch (RuntimeException e) {
+                request.fail(422, "Can't score the request: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fails each of the requests that hasn't already been answered
+     */
+    private static void fail(List<PendingRequest> requests, int status, String message) {
+        for (PendingRequest request : requests) {
+            request.fail(status, message);
+        }
+    }
+
+    private class PredictHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, JSON_CONTENT_TYPE, error("Use POST"));
+                    return;
+                }
+                long start = System.nanoTime();
+                byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+                String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                boolean binary = contentType != null && contentType.startsWith(BINARY_CONTENT_TYPE);
+                String json = binary ? null : new String(body, Charsets.UTF_8);
+                List<AttributesMap> attributesList;
+                try {
+                    attributesList = binary ? Payloads.readBinaryRequest(body)
+                            : Payloads.readJsonRequest(json);
+                } catch (IllegalArgumentException | IOException e) {
+                    respond(exchange, 400, JSON_CONTENT_TYPE, error("Malformed request: " + e.getMessage()));
+                    return;
+                }
+                if (attributesList.isEmpty()) {
+                    respond(exchange, 400, JSON_CONTENT_TYPE, error("No instances to score"));
+                    return;
+                }
+                latencyHistograms.get(DECODE).recordNanos(System.nanoTime() - start);
+
+                PendingRequest request = new PendingRequest(attributesList);
+                if (!queue.offer(request)) {
+                    respond(exchange, 503, JSON_CONTENT_TYPE, error("Too many requests queued"));
+                    return;
+                }
+                List<PredictionMap> predictions;
+                try {
+                    predictions = request.predictions.get(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException e) {
+                    ScoringFailure failure = (ScoringFailure) e.getCause();
+                    respond(exchange, failure.status, JSON_CONTENT_TYPE, error(failure.getMessage()));
+                    return;
+                } catch (TimeoutException e) {
+                    respond(exchange, 503, JSON_CONTENT_TYPE, error("Timed out waiting to be scored"));
+                    return;
+                }
+
+                long encodeStart = System.nanoTime();
+                byte[] response;
+                if (binary) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    Payloads.writeBinaryResponse(predictions, new DataOutputStream(bytes));
+                    response = bytes.toByteArray();
+                } else {
+                    response = Payloads.writeJsonResponse(predictions, Payloads.isJsonArray(json)).getBytes(Charsets.UTF_8);
+                }
+                long end = System.nanoTime();
+                latencyHistograms.get(ENCODE).recordNanos(end - encodeStart);
+                latencyHistograms.get(TOTAL).recordNanos(end - start);
+                respond(exchange, 200, binary ? BINARY_CONTENT_TYPE : JSON_CONTENT_TYPE, response);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, JSON_CONTENT_TYPE, error("Interrupted"));
+            } catch (RuntimeException e) {
+                logger.error("Failed to handle request", e);
+                respond(exchange, 500, JSON_CONTENT_TYPE, error(String.valueOf(e.getMessage())));
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private class StatsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                JsonObject stats = new JsonObject();
+                for (Map.Entry<String, LatencyHistogram> stage : latencyHistograms.entrySet()) {
+                    LatencyHistogram histogram = stage.getValue();
+                    JsonObject stageStats = new JsonObject();
+                    stageStats.addProperty("count", histogram.getCount());
+                    stageStats.addProperty("meanMicros", histogram.getMeanMicros());
+                    stageStats.addProperty("p50Micros", histogram.getPercentileMicros(50));
+                    stageStats.addProperty("p90Micros", histogram.getPercentileMicros(90));
+                    stageStats.addProperty("p99Micros", histogram.getPercentileMicros(99));
+                    stageStats.addProperty("maxMicros", histogram.getMaxMicros());
+                    stats.add(stage.getKey(), stageStats);
+                }
+                stats.addProperty("batches", batchesScored.get());
+                stats.addProperty("meanBatchSize", getMeanBatchSize());
+                respond(exchange, 200, JSON_CONTENT_TYPE, stats.toString().getBytes(Charsets.UTF_8));
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private static byte[] error(String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("error", message);
+        return error.toString().getBytes(Charsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * A request waiting for its batch to be scored
+     */
+    private static class PendingRequest {
+        final List<AttributesMap> attributesList;
+        final long enqueuedNanos = System.nanoTime();
+        final SettableFuture<List<PredictionMap>> predictions = SettableFuture.create();
+
+        PendingRequest(List<AttributesMap> attributesList) {
+            this.attributesList = attributesList;
+        }
+
+        /**
+         * Answers the request with the status, unless it has already been answered
+         */
+        void fail(int status, String message) {
+            predictions.setException(new ScoringFailure(status, message));
+        }
+    }
+
+    /**
+     * Why a request wasn't scored, with the status to respond with
+     */
+    private static class ScoringFailure extends Exception {
+        private static final long serialVersionUID = -2876104388459281733L;
+
+        final int status;
+
+        ScoringFailure(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -2,11 +2,16 @@ package quickml.supervised.crossValidation.attributeImportance;
 
 import com.google.common.collect.Lists;
 import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
 import quickml.supervised.PredictiveModelBuilder;
 import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.Classifiers;
+import quickml.supervised.crossValidation.PredictionMapResult;
+import quickml.supervised.crossValidation.PredictionMapResults;
 import quickml.supervised.crossValidation.data.TrainingDataCycler;
 import quickml.supervised.crossValidation.lossfunctions.ClassifierLossFunction;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -14,9 +19,14 @@ import java.util.Set;
 import static com.google.common.collect.Sets.newHashSet;
 import static java.lang.Math.max;
 import static quickml.supervised.Utils.calcResultPredictions;
-import static quickml.supervised.Utils.calcResultpredictionsWithoutAttrs;
 
 public class AttributeImportanceFinder <T extends ClassifierInstance> {
+    /**
+     * How many probabilities to hold at once when finding the predictions without each attribute, bounding the memory
+     * taken by a large validation set with many attributes
+     */
+    private static final int MAX_BUFFERED_PROBABILITIES = 1 << 22;
+
     private final PredictiveModelBuilder<Classifier, T> modelBuilder;
     private final TrainingDataCycler<T> dataCycler;
     private final int numAttributesToRemovePerIteration;
@@ -44,9 +54,10 @@ public class AttributeImportanceFinder <T extends ClassifierInstance> {
 
     public AttributeLossSummary determineAttributeImportance() {
         ArrayList<AttributeLossTracker> attributeLossTrackers = Lists.newArrayList();
+        List<Serializable> classifications = Lists.newArrayList(getAllClassifications(dataCycler));
 
         for (int i = 0; i < numberOfIterations; i++) {
-            AttributeLossTracker lossTracker = calcLossForAttributes();
+            AttributeLossTracker lossTracker = calcLossForAttributes(classifications);
             removeLowestPerformingAttributes(lossTracker.getOrderedAttributes());
             attributeLossTrackers.add(lossTracker);
             lossTracker.logResults();
@@ -72,13 +83,13 @@ public class AttributeImportanceFinder <T extends ClassifierInstance> {
      * overall loss when no attribute is removed. This is updated on each cycle of the training/validation set
      *
      */
-    private AttributeLossTracker calcLossForAttributes() {
+    private AttributeLossTracker calcLossForAttributes(List<Serializable> classifications) {
         Set<String> allAttributes = getAllAttributes(dataCycler);
         AttributeLossTracker lossTracker = new AttributeLossTracker(allAttributes, lossFunctions, primaryLossFunction);
 
         do {
             Classifier model = modelBuilder.buildPredictiveModel(dataCycler.getTrainingSet());
-            trackLossForEachAttribute(allAttributes, lossTracker, model);
+            trackLossForEachAttribute(allAttributes, classifications, lossTracker, model);
             trackLossForNoMissingAttribute(lossTracker, model);
             dataCycler.nextCycle();
         } while (dataCycler.hasMore());
@@ -90,11 +101,48 @@ public class AttributeImportanceFinder <T extends ClassifierInstance> {
         lossTracker.noMissingAttributeLoss(calcResultPredictions(model, dataCycler.getValidationSet()));
     }
 
-    private void trackLossForEachAttribute(Set<String> allAttributes, AttributeLossTracker lossTracker, Classifier model) {
-        for (String attribute : allAttributes) {
-            lossTracker.updateAttribute(attribute,
-                    calcResultpredictionsWithoutAttrs(model, dataCycler.getValidationSet(), newHashSet(attribute)));
+    /**
+     * Finds the predictions without each attribute with one call per instance for a block of attributes at a time,
+     * rather than one per attribute, holding the block's probabilities in a primitive buffer until each attribute's
+     * results are handed to the loss tracker.
+     */
+    private void trackLossForEachAttribute(Set<String> allAttributes, List<Serializable> classifications, AttributeLossTracker lossTracker, Classifier model) {
+        List<String> attributes = Lists.newArrayList(allAttributes);
+        List<T> validationSet = dataCycler.getValidationSet();
+        int blockSize = (int) max(1, MAX_BUFFERED_PROBABILITIES / max(1L, (long) validationSet.size() * classifications.size()));
+        for (int blockStart = 0; blockStart < attributes.size(); blockStart += blockSize) {
+            List<String> block = attributes.subList(blockStart, Math.min(blockStart + blockSize, attributes.size()));
+            int numClassifications = classifications.size();
+            // indexed [attribute][instance * numClassifications + classification]
+            double[][] probabilities = new double[block.size()][validationSet.size() * numClassifications];
+            for (int i = 0; i < validationSet.size(); i++) {
+                double[][] instanceProbabilities = Classifiers.predictWithoutEachAttribute(model, validationSet.get(i).getAttributes(), block, classifications);
+                for (int a = 0; a < block.size(); a++) {
+                    System.arraycopy(instanceProbabilities[a], 0, probabilities[a], i * numClassifications, numClassifications);
+                }
+            }
+            for (int a = 0; a < block.size(); a++) {
+                List<PredictionMapResult> results = new ArrayList<>(validationSet.size());
+                for (int i = 0; i < validationSet.size(); i++) {
+                    PredictionMap prediction = PredictionMap.newMap();
+                    for (int c = 0; c < numClassifications; c++) {
+                        prediction.put(classifications.get(c), probabilities[a][i * numClassifications + c]);
+                    }
+                    T instance = validationSet.get(i);
+                    results.add(new PredictionMapResult(prediction, instance.getLabel(), instance.getWeight()));
+                }
+                lossTracker.updateAttribute(block.get(a), new PredictionMapResults(results));
+                probabilities[a] = null;
+            }
+        }
+    }
+
+    private Set<Serializable> getAllClassifications(TrainingDataCycler<T> dataCycler) {
+        Set<Serializable> classifications = newHashSet();
+        for (T instance : dataCycler.getAllData()) {
+            classifications.add(instance.getLabel());
         }
+        return classifications;
     }
 
     private Set<String> getAllAttributes(TrainingDataCycler<T> dataCycler) {
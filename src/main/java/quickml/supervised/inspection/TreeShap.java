@@ -0,0 +1,345 @@
+package quickml.supervised.inspection;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import quickml.data.AttributesMap;
+import quickml.data.Schema;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.randomForest.RandomForest;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Explains predictions of trees and random forests with exact SHAP values, computed by the TreeSHAP algorithm
+ * (Lundberg, Erion and Lee, "Consistent Individualized Feature Attribution for Tree Ensembles", 2018) in time
+ * proportional to the number of leaves times the square of the depth, rather than by trying every subset of the
+ * attributes.
+ * <p/>
+ * The value of a subset of the attributes is the prediction with the others ignored, as
+ * {@link Node#getProbabilityWithoutAttributes} gives, so each branch's probabilityOfTrueChild is the fraction of
+ * training data covering its true child.  For every classification, the contributions of all the attributes plus the
+ * expected value (the prediction with every attribute ignored) add up to the prediction.
+ */
+public class TreeShap {
+
+    private int executorThreadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of threads {@link #explain(RandomForest, List)} explains a batch with
+     */
+    public TreeShap executorThreadCount(int executorThreadCount) {
+        Preconditions.checkArgument(executorThreadCount > 0, "executorThreadCount must be positive");
+        this.executorThreadCount = executorThreadCount;
+        return this;
+    }
+
+    public ShapValues explain(Tree tree, AttributesMap attributes) {
+        Schema schema = tree.getSchema();
+        List<Serializable> classifications = Lists.newArrayList(tree.getClassifications());
+        ShapValues shapValues = new ShapValues(attributesOf(schema), classifications);
+        new Explainer(schema, classifications).addTree(tree.node, attributes, shapValues);
+        return shapValues;
+    }
+
+    public ShapValues explain(RandomForest randomForest, AttributesMap attributes) {
+        return new Explainer(randomForest.getSchema(), randomForest.getIndexedClassifications()).explain(randomForest, attributes);
+    }
+
+    /**
+     * Explains each of a batch of predictions, split between executorThreadCount threads
+     *
+     * @return the explanations, in the same order as attributesList
+     */
+    public List<ShapValues> explain(final RandomForest randomForest, List<AttributesMap> attributesList) {
+        int chunkSize = Math.max(1, (attributesList.size() + executorThreadCount - 1) / executorThreadCount);
+        ExecutorService executorService = Executors.newFixedThreadPool(executorThreadCount);
+        try {
+            List<Future<List<ShapValues>>> futures = Lists.newArrayList();
+            for (final List<AttributesMap> chunk : Lists.partition(attributesList, chunkSize)) {
+                futures.add(executorService.submit(new Callable<List<ShapValues>>() {
+                    @Override
+                    public List<ShapValues> call() {
+                        Explainer explainer = new Explainer(randomForest.getSchema(), randomForest.getIndexedClassifications());
+                        List<ShapValues> explanations = Lists.newArrayListWithCapacity(chunk.size());
+                        for (AttributesMap attributes : chunk) {
+                            explanations.add(explainer.explain(randomForest, attributes));
+                        }
+                        return explanations;
+                    }
+                }));
+            }
+            List<ShapValues> explanations = Lists.newArrayListWithCapacity(attributesList.size());
+            for (Future<List<ShapValues>> future : futures) {
+                explanations.addAll(future.get());
+            }
+            return explanations;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to explain predictions", e);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static List<String> attributesOf(Schema schema) {
+        List<String> attributes = Lists.newArrayListWithCapacity(schema.size());
+        for (int slot = 0; slot < schema.size(); slot++) {
+            attributes.add(schema.attributeName(slot));
+        }
+        return attributes;
+    }
+
+    /**
+     * Explains one prediction at a time, not thread safe
+     */
+    private static class Explainer {
+        private static final int NO_ATTRIBUTE = -1;
+
+        private final Schema schema;
+        private final List<String> attributes;
+        private final List<Serializable> classifications;
+        private final Serializable[] classificationArray;
+
+        Explainer(Schema schema, List<Serializable> classifications) {
+            this.schema = schema;
+            this.attributes = attributesOf(schema);
+            this.classifications = classifications;
+            this.classificationArray = classifications.toArray(new Serializable[classifications.size()]);
+        }
+
+        ShapValues explain(RandomForest randomForest, AttributesMap attributesMap) {
+            ShapValues shapValues = new ShapValues(attributes, classifications);
+            for (Tree tree : randomForest.trees) {
+                addTree(tree.node, attributesMap, shapValues);
+            }
+            shapValues.divideBy(randomForest.trees.size());
+            return shapValues;
+        }
+
+        void addTree(Node root, AttributesMap attributesMap, ShapValues shapValues) {
+            addExpectedValue(root, 1, shapValues.expectedValues);
+            recurse(root, attributesMap, shapValues.contributions, new Path(0), 0, 1, 1, NO_ATTRIBUTE);
+        }
+
+        private void addExpectedValue(Node node, double weight, double[] expectedValues) {
+            if (node instanceof Leaf) {
+                for (int c = 0; c < classificationArray.length; c++) {
+                    expectedValues[c] += weight * ((Leaf) node).getProbability(classificationArray[c]);
+                }
+                return;
+            }
+            Branch branch = (Branch) node;
+            addExpectedValue(branch.trueChild, weight * branch.getProbabilityOfTrueChild(), expectedValues);
+            addExpectedValue(branch.falseChild, weight * (1 - branch.getProbabilityOfTrueChild()), expectedValues);
+        }
+
+        private void recurse(Node node, AttributesMap attributesMap, double[][] contributions, Path parentPath, int depth,
+                             double zeroFraction, double oneFraction, int attribute) {
+            Path path = parentPath.copy(depth + 1);
+            path.extend(depth, zeroFraction, oneFraction, attribute);
+
+            if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                for (int i = 1; i <= depth; i++) {
+                    double weight = path.unwoundSum(depth, i) * (path.oneFractions[i] - path.zeroFractions[i]);
+                    double[] attributeContributions = contributions[path.attributes[i]];
+                    for (int c = 0; c < classificationArray.length; c++) {
+                        attributeContributions[c] += weight * leaf.getProbability(classificationArray[c]);
+                    }
+                }
+                return;
+            }
+
+            Branch branch = (Branch) node;
+            boolean decision = branch.decide(attributesMap);
+            Node hot = decision ? branch.trueChild : branch.falseChild;
+            Node cold = decision ? branch.falseChild : branch.trueChild;
+            double hotZeroFraction = decision ? branch.getProbabilityOfTrueChild() : 1 - branch.getProbabilityOfTrueChild();
+            double coldZeroFraction = 1 - hotZeroFraction;
+            int branchAttribute = schema.slotOf(branch.attribute);
+
+            // an attribute already on the path is unwound, so that it is only counted once with its fractions combined
+            double incomingZeroFraction = 1, incomingOneFraction = 1;
+            for (int i = 1; i <= depth; i++) {
+                if (path.attributes[i] == branchAttribute) {
+                    incomingZeroFraction = path.zeroFractions[i];
+                    incomingOneFraction = path.oneFractions[i];
+                    path.unwind(depth, i);
+                    depth--;
+                    break;
+                }
+            }
+
+            recurse(hot, attributesMap, contributions, path, depth + 1, hotZeroFraction * incomingZeroFraction, incomingOneFraction, branchAttribute);
+            // a cold child that no training data reached contributes nothing
+            if (coldZeroFraction * incomingZeroFraction > 0) {
+                recurse(cold, attributesMap, contributions, path, depth + 1, coldZeroFraction * incomingZeroFraction, 0, branchAttribute);
+            }
+        }
+    }
+
+    /**
+     * The attributes split on along a path from the root, each with the fraction of the paths that go its way when
+     * it is ignored (zero) and when it is known (one), and the weights of the subsets of the path's attributes.
+     */
+    private static class Path {
+        final int[] attributes;
+        final double[] zeroFractions;
+        final double[] oneFractions;
+        final double[] weights;
+
+        Path(int length) {
+            attributes = new int[length];
+            zeroFractions = new double[length];
+            oneFractions = new double[length];
+            weights = new double[length];
+        }
+
+        Path copy(int length) {
+            Path copy = new Path(length);
+            int copied = Math.min(length, attributes.length);
+            System.arraycopy(attributes, 0, copy.attributes, 0, copied);
+            System.arraycopy(zeroFractions, 0, copy.zeroFractions, 0, copied);
+            System.arraycopy(oneFractions, 0, copy.oneFractions, 0, copied);
+            System.arraycopy(weights, 0, copy.weights, 0, copied);
+            return copy;
+        }
+
+        void extend(int depth, double zeroFraction, double oneFraction, int attribute) {
+            attributes[depth] = attribute;
+            zeroFractions[depth] = zeroFraction;
+            oneFractions[depth] = oneFraction;
+            weights[depth] = depth == 0 ? 1 : 0;
+            for (int i = depth - 1; i >= 0; i--) {
+                weights[i + 1] += oneFraction * weights[i] * (i + 1) / (depth + 1);
+                weights[i] = zeroFraction * weights[i] * (depth - i) / (depth + 1);
+            }
+        }
+
+        void unwind(int depth, int index) {
+            double oneFraction = oneFractions[index];
+            double zeroFraction = zeroFractions[index];
+            double nextOnePortion = weights[depth];
+            for (int i = depth - 1; i >= 0; i--) {
+                if (oneFraction != 0) {
+                    double weight = weights[i];
+                    weights[i] = nextOnePortion * (depth + 1) / ((i + 1) * oneFraction);
+                    nextOnePortion = weight - weights[i] * zeroFraction * (depth - i) / (depth + 1);
+                } else {
+                    weights[i] = weights[i] * (depth + 1) / (zeroFraction * (depth - i));
+                }
+            }
+            for (int i = index; i < depth; i++) {
+                attributes[i] = attributes[i + 1];
+                zeroFractions[i] = zeroFractions[i + 1];
+                oneFractions[i] = oneFractions[i + 1];
+            }
+        }
+
+        /**
+         * @return the total weight of the subsets if the attribute at index were unwound
+         */
+        double unwoundSum(int depth, int index) {
+            double oneFraction = oneFractions[index];
+            double zeroFraction = zeroFractions[index];
+            double nextOnePortion = weights[depth];
+            double total = 0;
+            for (int i = depth - 1; i >= 0; i--) {
+                if (oneFraction != 0) {
+                    double portion = nextOnePortion / ((i + 1) * oneFraction);
+                    total += portion;
+                    nextOnePortion = weights[i] - portion * zeroFraction * (depth - i);
+                } else {
+                    total += weights[i] / (zeroFraction * (depth - i));
+                }
+            }
+            return total * (depth + 1);
+        }
+    }
+
+    /**
+     * The contribution of each attribute to the probability of each classification of a prediction
+     */
+    public static class ShapValues {
+        private final List<String> attributes;
+        private final List<Serializable> classifications;
+        final double[][] contributions;
+        final double[] expectedValues;
+
+        ShapValues(List<String> attributes, List<Serializable> classifications) {
+            this.attributes = attributes;
+            this.classifications = classifications;
+            contributions = new double[attributes.size()][classifications.size()];
+            expectedValues = new double[classifications.size()];
+        }
+
+        void divideBy(double divisor) {
+            for (double[] attributeContributions : contributions) {
+                for (int c = 0; c < attributeContributions.length; c++) {
+                    attributeContributions[c] /= divisor;
+                }
+            }
+            for (int c = 0; c < expectedValues.length; c++) {
+                expectedValues[c] /= divisor;
+            }
+        }
+
+        /**
+         * @return the attributes the model tests, the only ones that can contribute
+         */
+        public List<String> getAttributes() {
+            return attributes;
+        }
+
+        public List<Serializable> getClassifications() {
+            return classifications;
+        }
+
+        /**
+         * @return the contribution of the attribute to the probability of the classification, 0 if the model doesn't test it
+         */
+        public double getContribution(String attribute, Serializable classification) {
+            int a = attributes.indexOf(attribute);
+            int c = classifications.indexOf(classification);
+            return a < 0 || c < 0 ? 0 : contributions[a][c];
+        }
+
+        /**
+         * @return each attribute's contribution to the probability of each classification, indexed
+         * [attribute][classification] as {@link #getAttributes()} and {@link #getClassifications()}
+         */
+        public double[][] getContributions() {
+            double[][] copy = new double[contributions.length][];
+            for (int a = 0; a < contributions.length; a++) {
+                copy[a] = contributions[a].clone();
+            }
+            return copy;
+        }
+
+        /**
+         * @return the probability of the classification with every attribute ignored
+         */
+        public double getExpectedValue(Serializable classification) {
+            int c = classifications.indexOf(classification);
+            return c < 0 ? 0 : expectedValues[c];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("ShapValues{expected=").append(Arrays.toString(expectedValues));
+            for (int a = 0; a < attributes.size(); a++) {
+                builder.append(", ").append(attributes.get(a)).append('=').append(Arrays.toString(contributions[a]));
+            }
+            return builder.append('}').toString();
+        }
+    }
+}
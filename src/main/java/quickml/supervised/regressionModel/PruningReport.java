@@ -0,0 +1,54 @@
+package quickml.supervised.regressionModel;
+
+/**
+ * The outcome of pruning a tree or forest: the pruned copy, and its size and validation loss before and after.
+ */
+public class PruningReport<M> {
+    private final M prunedModel;
+    private final int nodesBefore;
+    private final int nodesAfter;
+    private final double lossBefore;
+    private final double lossAfter;
+
+    public PruningReport(M prunedModel, int nodesBefore, int nodesAfter, double lossBefore, double lossAfter) {
+        this.prunedModel = prunedModel;
+        this.nodesBefore = nodesBefore;
+        this.nodesAfter = nodesAfter;
+        this.lossBefore = lossBefore;
+        this.lossAfter = lossAfter;
+    }
+
+    public M getPrunedModel() {
+        return prunedModel;
+    }
+
+    public int getNodesBefore() {
+        return nodesBefore;
+    }
+
+    public int getNodesAfter() {
+        return nodesAfter;
+    }
+
+    public int getNodesRemoved() {
+        return nodesBefore - nodesAfter;
+    }
+
+    public double getFractionOfNodesRemoved() {
+        return nodesBefore > 0 ? (double) getNodesRemoved() / nodesBefore : 0;
+    }
+
+    public double getLossBefore() {
+        return lossBefore;
+    }
+
+    public double getLossAfter() {
+        return lossAfter;
+    }
+
+    @Override
+    public String toString() {
+        return "nodes: " + nodesBefore + " -> " + nodesAfter + " (" + Math.round(100 * getFractionOfNodesRemoved()) + "% removed), "
+                + "validation loss: " + lossBefore + " -> " + lossAfter;
+    }
+}
@@ -0,0 +1,53 @@
+package quickml.supervised.regressionModel.RegressionTree;
+
+import quickml.data.AttributesMap;
+import quickml.supervised.PredictiveModel;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An ensemble of regression trees whose prediction is the mean of the trees' predictions.
+ */
+public class RegressionForest implements PredictiveModel<AttributesMap, Double> {
+    private static final long serialVersionUID = -6309154512716327480L;
+
+    public final List<RegressionTree> trees;
+
+    protected RegressionForest(List<RegressionTree> trees) {
+        this.trees = trees;
+    }
+
+    @Override
+    public Double predict(AttributesMap attributes) {
+        double total = 0;
+        for (RegressionTree tree : trees) {
+            total += tree.getValue(attributes);
+        }
+        return total / trees.size();
+    }
+
+    @Override
+    public Double predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        double total = 0;
+        for (RegressionTree tree : trees) {
+            total += tree.predictWithoutAttributes(attributes, attributesToIgnore);
+        }
+        return total / trees.size();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final RegressionForest that = (RegressionForest) o;
+
+        return trees.equals(that.trees);
+    }
+
+    @Override
+    public int hashCode() {
+        return trees.hashCode();
+    }
+}
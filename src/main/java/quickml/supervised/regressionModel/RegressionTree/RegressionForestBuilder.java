@@ -0,0 +1,82 @@
+package quickml.supervised.regressionModel.RegressionTree;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import quickml.data.AttributesMap;
+import quickml.data.Instance;
+import quickml.supervised.PredictiveModelBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds a {@link RegressionForest}, with the trees built in parallel.  As with
+ * {@link quickml.supervised.classifier.randomForest.RandomForestBuilder}, the trees differ because the tree builder
+ * randomly ignores attributes at each node.
+ */
+public class RegressionForestBuilder<T extends Instance<AttributesMap, Double>> implements PredictiveModelBuilder<RegressionForest, T> {
+
+    public static final String NUM_TREES = "numTrees";
+
+    private static final Logger logger = LoggerFactory.getLogger(RegressionForestBuilder.class);
+    private final RegressionTreeBuilder<T> treeBuilder;
+    private int numTrees = 20;
+    private int executorThreadCount = Runtime.getRuntime().availableProcessors();
+
+    public RegressionForestBuilder() {
+        this(new RegressionTreeBuilder<T>().ignoreAttributeAtNodeProbability(0.7).maxDepth(5));
+    }
+
+    public RegressionForestBuilder(RegressionTreeBuilder<T> treeBuilder) {
+        this.treeBuilder = treeBuilder;
+    }
+
+    @Override
+    public void updateBuilderConfig(Map<String, Object> config) {
+        treeBuilder.updateBuilderConfig(config);
+        if (config.containsKey(NUM_TREES))
+            this.numTrees((Integer) config.get(NUM_TREES));
+    }
+
+    public RegressionForestBuilder<T> numTrees(int numTrees) {
+        this.numTrees = numTrees;
+        return this;
+    }
+
+    public RegressionForestBuilder<T> executorThreadCount(int threadCount) {
+        this.executorThreadCount = threadCount;
+        return this;
+    }
+
+    @Override
+    public RegressionForest buildPredictiveModel(final Iterable<T> trainingData) {
+        logger.info("Building regression forest with {} trees", numTrees);
+        ExecutorService executorService = Executors.newFixedThreadPool(executorThreadCount);
+        try {
+            List<Future<RegressionTree>> treeFutures = Lists.newArrayListWithCapacity(numTrees);
+            for (int treeIndex = 0; treeIndex < numTrees; treeIndex++) {
+                treeFutures.add(executorService.submit(new Callable<RegressionTree>() {
+                    @Override
+                    public RegressionTree call() throws Exception {
+                        return treeBuilder.buildPredictiveModel(trainingData);
+                    }
+                }));
+            }
+
+            List<RegressionTree> trees = Lists.newArrayListWithCapacity(numTrees);
+            for (Future<RegressionTree> treeFuture : treeFutures) {
+                trees.add(treeFuture.get());
+            }
+            return new RegressionForest(trees);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
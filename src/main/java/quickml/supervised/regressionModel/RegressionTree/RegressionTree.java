@@ -0,0 +1,68 @@
+package quickml.supervised.regressionModel.RegressionTree;
+
+import quickml.data.AttributesMap;
+import quickml.supervised.PredictiveModel;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.RegressionLeaf;
+
+import java.util.Set;
+
+/**
+ * A decision tree predicting a real value, the weighted mean label of the training instances at the leaf reached.
+ */
+public class RegressionTree implements PredictiveModel<AttributesMap, Double> {
+    private static final long serialVersionUID = 2983165702338741390L;
+
+    public final Node node;
+
+    protected RegressionTree(Node node) {
+        this.node = node;
+    }
+
+    @Override
+    public Double predict(AttributesMap attributes) {
+        return getValue(attributes);
+    }
+
+    public double getValue(AttributesMap attributes) {
+        return ((RegressionLeaf) node.getLeaf(attributes)).mean;
+    }
+
+    /**
+     * Branches on ignored attributes are replaced by the average of both children, weighted by the fraction of
+     * training data that went each way.
+     */
+    @Override
+    public Double predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+        return getValueWithoutAttributes(node, attributes, attributesToIgnore);
+    }
+
+    static double getValueWithoutAttributes(Node node, AttributesMap attributes, Set<String> attributesToIgnore) {
+        if (node instanceof RegressionLeaf) {
+            return ((RegressionLeaf) node).mean;
+        }
+        Branch branch = (Branch) node;
+        if (attributesToIgnore.contains(branch.attribute)) {
+            double probabilityOfTrueChild = branch.getProbabilityOfTrueChild();
+            return probabilityOfTrueChild * getValueWithoutAttributes(branch.trueChild, attributes, attributesToIgnore)
+                    + (1 - probabilityOfTrueChild) * getValueWithoutAttributes(branch.falseChild, attributes, attributesToIgnore);
+        }
+        return getValueWithoutAttributes(branch.decide(attributes) ? branch.trueChild : branch.falseChild, attributes, attributesToIgnore);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final RegressionTree that = (RegressionTree) o;
+
+        return node.equals(that.node);
+    }
+
+    @Override
+    public int hashCode() {
+        return node.hashCode();
+    }
+}
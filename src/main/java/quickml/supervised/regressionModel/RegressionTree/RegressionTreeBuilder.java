@@ -0,0 +1,201 @@
+package quickml.supervised.regressionModel.RegressionTree;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import quickml.collections.MapUtils;
+import quickml.data.AttributesMap;
+import quickml.data.Instance;
+import quickml.supervised.PredictiveModelBuilder;
+import quickml.supervised.classifier.decisionTree.AttributeColumn;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.RegressionLeaf;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds {@link RegressionTree}s by choosing, at each node, the split that most reduces the weighted sum of squared
+ * errors of the labels.
+ * <p/>
+ * Each candidate split is scored from the running weight, weighted sum and weighted sum of squares of the labels on
+ * either side: SSE = sumOfSquares - sum^2 / weight.  Numeric attributes are bucketed once per tree by
+ * {@link AttributeColumn} into (at most) ordinalTestSplits + 1 quantile bins, so at each node the statistics are gathered per bin in one pass over the
+ * instances and every threshold is then evaluated in O(1) from prefix sums.  Categorical values are ordered by mean
+ * label, and the best prefix of that ordering becomes the branch's in-set.  As in {@link TreeBuilder}, missing
+ * numeric values are treated as 0 and missing categorical values always go to the out-set.
+ */
+public class RegressionTreeBuilder<T extends Instance<AttributesMap, Double>> implements PredictiveModelBuilder<RegressionTree, T> {
+
+    private int maxDepth = 5;
+    private int minLeafInstances = 1;
+    private int ordinalTestSplits = 32;
+    private double ignoreAttributeAtNodeProbability = 0.0;
+    private double minimumScore = 0.00000000000001;
+
+    @Override
+    public void updateBuilderConfig(Map<String, Object> cfg) {
+        if (cfg.containsKey(TreeBuilder.MAX_DEPTH))
+            maxDepth((Integer) cfg.get(TreeBuilder.MAX_DEPTH));
+        if (cfg.containsKey(TreeBuilder.MIN_LEAF_INSTANCES))
+            minLeafInstances((Integer) cfg.get(TreeBuilder.MIN_LEAF_INSTANCES));
+        if (cfg.containsKey(TreeBuilder.ORDINAL_TEST_SPLITS))
+            ordinalTestSplits((Integer) cfg.get(TreeBuilder.ORDINAL_TEST_SPLITS));
+        if (cfg.containsKey(TreeBuilder.IGNORE_ATTR_PROB))
+            ignoreAttributeAtNodeProbability((Double) cfg.get(TreeBuilder.IGNORE_ATTR_PROB));
+        if (cfg.containsKey(TreeBuilder.MIN_SCORE))
+            minimumScore((Double) cfg.get(TreeBuilder.MIN_SCORE));
+    }
+
+    public RegressionTreeBuilder<T> maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public RegressionTreeBuilder<T> minLeafInstances(int minLeafInstances) {
+        this.minLeafInstances = minLeafInstances;
+        return this;
+    }
+
+    public RegressionTreeBuilder<T> ordinalTestSplits(int ordinalTestSplits) {
+        Preconditions.checkArgument(ordinalTestSplits > 0, "ordinalTestSplits must be positive");
+        this.ordinalTestSplits = ordinalTestSplits;
+        return this;
+    }
+
+    public RegressionTreeBuilder<T> ignoreAttributeAtNodeProbability(double probability) {
+        this.ignoreAttributeAtNodeProbability = probability;
+        return this;
+    }
+
+    /**
+     * The smallest reduction in the weighted sum of squared errors for which a split will be made.
+     */
+    public RegressionTreeBuilder<T> minimumScore(double minimumScore) {
+        this.minimumScore = minimumScore;
+        return this;
+    }
+
+    @Override
+    public RegressionTree buildPredictiveModel(Iterable<T> trainingData) {
+        List<T> instances = Lists.newArrayList();
+        for (T instance : trainingData) {
+            if (instance.getWeight() > 0) {
+                instances.add(instance);
+            }
+        }
+        Preconditions.checkArgument(!instances.isEmpty(), "Can't build a tree without positively weighted training instances");
+
+        TrainingState state = new TrainingState(instances);
+        int[] rows = new int[instances.size()];
+        for (int i = 0; i < rows.length; i++) rows[i] = i;
+        return new RegressionTree(state.buildNode(null, rows, 0));
+    }
+
+    /**
+     * The training instances in a column oriented form.
+     */
+    private class TrainingState {
+        private final double[] weights;
+        private final double[] weightedLabels;
+        private final double[] weightedSquaredLabels;
+        private final List<AttributeColumn> columns;
+
+        TrainingState(List<T> instances) {
+            int size = instances.size();
+            weights = new double[size];
+            weightedLabels = new double[size];
+            weightedSquaredLabels = new double[size];
+            for (int i = 0; i < size; i++) {
+                T instance = instances.get(i);
+                Preconditions.checkArgument(instance.getLabel() != null, "Instances must have a label");
+                double label = instance.getLabel();
+                weights[i] = instance.getWeight();
+                weightedLabels[i] = weights[i] * label;
+                weightedSquaredLabels[i] = weightedLabels[i] * label;
+            }
+            columns = AttributeColumn.columnsFor(instances, ordinalTestSplits);
+        }
+
+        Node buildNode(Node parent, int[] rows, int depth) {
+            double weight = 0, sum = 0, sumOfSquares = 0;
+            for (int row : rows) {
+                weight += weights[row];
+                sum += weightedLabels[row];
+                sumOfSquares += weightedSquaredLabels[row];
+            }
+            double mean = sum / weight;
+
+            AttributeColumn.Split bestSplit = null;
+            if (depth < maxDepth && rows.length >= 2 * minLeafInstances) {
+                AttributeColumn.SplitScorer scorer = new ErrorReduction(weight, sum, sumOfSquares);
+                for (AttributeColumn column : columns) {
+                    if (ignoreAttributeAtNodeProbability > 0 && MapUtils.random.nextDouble() < ignoreAttributeAtNodeProbability) {
+                        continue;
+                    }
+                    AttributeColumn.Split split = column.findSplit(rows, minLeafInstances, minimumScore, scorer, weights, weightedLabels, weightedSquaredLabels);
+                    if (split != null && (bestSplit == null || split.score > bestSplit.score)) {
+                        bestSplit = split;
+                    }
+                }
+            }
+
+            if (bestSplit == null) {
+                return new RegressionLeaf(parent, weight, mean, Math.max(0, sumOfSquares / weight - mean * mean), depth);
+            }
+
+            int[] trueRows = new int[rows.length];
+            int[] falseRows = new int[rows.length];
+            int trueCount = 0, falseCount = 0;
+            double trueWeight = 0;
+            for (int row : rows) {
+                if (bestSplit.goesTrue(row)) {
+                    trueRows[trueCount++] = row;
+                    trueWeight += weights[row];
+                } else {
+                    falseRows[falseCount++] = row;
+                }
+            }
+            Branch branch = bestSplit.toBranch(parent, trueWeight / weight);
+            branch.trueChild = buildNode(branch, Arrays.copyOf(trueRows, trueCount), depth + 1);
+            branch.falseChild = buildNode(branch, Arrays.copyOf(falseRows, falseCount), depth + 1);
+            return branch;
+        }
+    }
+
+    /**
+     * Scores a split by how much it reduces the sum of squared errors of a node's labels, given the sums of the
+     * weights, weighted labels and weighted squared labels on its true side; categorical values are ordered by their
+     * mean label.
+     */
+    private static class ErrorReduction implements AttributeColumn.SplitScorer {
+        private final double weight;
+        private final double sum;
+        private final double sumOfSquares;
+        private final double parentError;
+
+        ErrorReduction(double weight, double sum, double sumOfSquares) {
+            this.weight = weight;
+            this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
+            parentError = sumOfSquaredErrors(weight, sum, sumOfSquares);
+        }
+
+        @Override
+        public double score(double[] trueSums) {
+            return parentError - sumOfSquaredErrors(trueSums[0], trueSums[1], trueSums[2])
+                    - sumOfSquaredErrors(weight - trueSums[0], sum - trueSums[1], sumOfSquares - trueSums[2]);
+        }
+
+        @Override
+        public double order(double[] valueSums) {
+            return valueSums[1] / valueSums[0];
+        }
+    }
+
+    private static double sumOfSquaredErrors(double weight, double sum, double sumOfSquares) {
+        return weight > 0 ? Math.max(0, sumOfSquares - sum * sum / weight) : 0;
+    }
+}
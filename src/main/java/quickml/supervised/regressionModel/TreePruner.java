@@ -1,7 +1,280 @@
 package quickml.supervised.regressionModel;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.Utils;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.CategoricalBranch;
+import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+import quickml.supervised.classifier.decisionTree.tree.NumericBranch;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.crossValidation.PredictionMapResult;
+import quickml.supervised.crossValidation.PredictionMapResults;
+import quickml.supervised.crossValidation.lossfunctions.ClassifierLossFunction;
+
+import java.io.Serializable;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
- * Created by alexanderhawk on 2/27/14.
+ * Minimal cost-complexity (weakest link) pruning of classification trees.
+ * <p/>
+ * For a tree, the branch whose collapse into a leaf costs the least training error per leaf removed is repeatedly
+ * collapsed, giving a nested sequence of ever smaller trees.  Each tree in the sequence is scored on a validation set
+ * with the loss function, and the smallest tree whose loss is within lossTolerance of the lowest is kept.  The
+ * training error is the misclassified weight, taken from the leaves' classification counts.
+ * <p/>
+ * The tree or forest given is left as it is and a pruned copy is returned in the {@link PruningReport}, so models
+ * already serving predictions, or wrapped by others that cache what they derive from its trees, are never changed
+ * underneath them.  The root is never collapsed.
  */
 public class TreePruner {
+    private static final Logger logger = LoggerFactory.getLogger(TreePruner.class);
+
+    private static final int NEVER_PRUNED = Integer.MAX_VALUE;
+    private static final double G_TOLERANCE = 1e-12;
+
+    private final ClassifierLossFunction lossFunction;
+    private double lossTolerance = 0;
+
+    public TreePruner(ClassifierLossFunction lossFunction) {
+        this.lossFunction = lossFunction;
+    }
+
+    /**
+     * Accept a smaller tree whose validation loss exceeds the lowest found by up to this much.
+     */
+    public TreePruner lossTolerance(double lossTolerance) {
+        Preconditions.checkArgument(lossTolerance >= 0, "lossTolerance must not be negative");
+        this.lossTolerance = lossTolerance;
+        return this;
+    }
+
+    public PruningReport<Tree> prune(Tree tree, List<? extends ClassifierInstance> validationSet) {
+        Preconditions.checkArgument(!validationSet.isEmpty(), "Can't prune without a validation set");
+        double lossBefore = getLoss(tree, validationSet);
+        Tree pruned = pruneTree(tree, validationSet);
+        PruningReport<Tree> report = new PruningReport<>(pruned, tree.node.size(), pruned.node.size(), lossBefore, getLoss(pruned, validationSet));
+        logger.info("Pruned tree, {}", report);
+        return report;
+    }
+
+    /**
+     * Prunes each tree of the forest independently, against its own validation loss.
+     */
+    public PruningReport<RandomForest> prune(RandomForest forest, List<? extends ClassifierInstance> validationSet) {
+        Preconditions.checkArgument(!validationSet.isEmpty(), "Can't prune without a validation set");
+        int nodesBefore = 0, nodesAfter = 0;
+        double lossBefore = getLoss(forest, validationSet);
+        List<Tree> prunedTrees = Lists.newArrayListWithCapacity(forest.trees.size());
+        for (Tree tree : forest.trees) {
+            Tree pruned = pruneTree(tree, validationSet);
+            nodesBefore += tree.node.size();
+            nodesAfter += pruned.node.size();
+            prunedTrees.add(pruned);
+        }
+        RandomForest prunedForest = forest.withTrees(prunedTrees);
+        PruningReport<RandomForest> report = new PruningReport<>(prunedForest, nodesBefore, nodesAfter, lossBefore, getLoss(prunedForest, validationSet));
+        logger.info("Pruned random forest of {} trees, {}", forest.trees.size(), report);
+        return report;
+    }
+
+    private double getLoss(Classifier classifier, List<? extends ClassifierInstance> validationSet) {
+        return lossFunction.getLoss(Utils.calcResultPredictions(classifier, validationSet));
+    }
+
+    /**
+     * @return a pruned copy of the tree, or the tree itself if nothing can be pruned
+     */
+    private Tree pruneTree(Tree tree, List<? extends ClassifierInstance> validationSet) {
+        if (!(tree.node instanceof Branch)) {
+            return tree;
+        }
+        Map<Branch, Subtree> subtrees = new IdentityHashMap<>();
+        describe(tree.node, 0, subtrees);
+        int numSteps = assignPruneSteps((Branch) tree.node, subtrees);
+        if (numSteps == 0) {
+            return tree;
+        }
+
+        // the path each validation instance takes, so each step of the sequence can be scored without re-reading attributes
+        Map<Leaf, PredictionMap> leafPredictions = new IdentityHashMap<>();
+        List<List<Subtree>> paths = Lists.newArrayListWithCapacity(validationSet.size());
+        List<PredictionMap> unprunedPredictions = Lists.newArrayListWithCapacity(validationSet.size());
+        for (ClassifierInstance instance : validationSet) {
+            List<Subtree> path = Lists.newArrayList();
+            Node node = tree.node;
+            while (node instanceof Branch) {
+                Branch branch = (Branch) node;
+                path.add(subtrees.get(branch));
+                node = branch.decide(instance.getAttributes()) ? branch.trueChild : branch.falseChild;
+            }
+            Leaf leaf = (Leaf) node;
+            PredictionMap prediction = leafPredictions.get(leaf);
+            if (prediction == null) {
+                prediction = toPrediction(leaf.classificationCounts);
+                leafPredictions.put(leaf, prediction);
+            }
+            paths.add(path);
+            unprunedPredictions.add(prediction);
+        }
+
+        double[] losses = new double[numSteps + 1];
+        double bestLoss = Double.POSITIVE_INFINITY;
+        for (int step = 0; step <= numSteps; step++) {
+            List<PredictionMapResult> results = Lists.newArrayListWithCapacity(validationSet.size());
+            for (int i = 0; i < validationSet.size(); i++) {
+                PredictionMap prediction = unprunedPredictions.get(i);
+                for (Subtree subtree : paths.get(i)) {
+                    if (subtree.pruneStep <= step) {
+                        prediction = subtree.collapsedPrediction;
+                        break;
+                    }
+                }
+                ClassifierInstance instance = validationSet.get(i);
+                results.add(new PredictionMapResult(prediction, instance.getLabel(), instance.getWeight()));
+            }
+            losses[step] = lossFunction.getLoss(new PredictionMapResults(results));
+            bestLoss = Math.min(bestLoss, losses[step]);
+        }
+        int chosenStep = 0;
+        for (int step = numSteps; step >= 0; step--) {
+            if (losses[step] <= bestLoss + lossTolerance) {
+                chosenStep = step;
+                break;
+            }
+        }
+        if (chosenStep == 0) {
+            return tree;
+        }
+        return tree.withNode(prunedCopy(tree.node, null, subtrees, chosenStep));
+    }
+
+    /**
+     * Records, for every branch, its depth and the classification counts of all the leaves beneath it.
+     */
+    private ClassificationCounter describe(Node node, int depth, Map<Branch, Subtree> subtrees) {
+        if (node instanceof Leaf) {
+            return ((Leaf) node).classificationCounts;
+        }
+        Branch branch = (Branch) node;
+        ClassificationCounter counts = ClassificationCounter.merge(describe(branch.trueChild, depth + 1, subtrees),
+                describe(branch.falseChild, depth + 1, subtrees));
+        subtrees.put(branch, new Subtree(depth, counts));
+        return counts;
+    }
+
+    /**
+     * Runs the weakest link algorithm, setting the step at which each branch is collapsed.
+     *
+     * @return the number of steps in the pruning sequence
+     */
+    private int assignPruneSteps(Branch root, Map<Branch, Subtree> subtrees) {
+        int step = 0;
+        while (true) {
+            WeakestLink weakestLink = new WeakestLink();
+            findWeakestLink(root, true, subtrees, weakestLink);
+            if (weakestLink.candidates.isEmpty()) {
+                return step;
+            }
+            step++;
+            for (Subtree candidate : weakestLink.candidates) {
+                if (candidate.g <= weakestLink.minG + G_TOLERANCE) {
+                    candidate.pruneStep = step;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the training error and leaf count of the subtree at node, given the branches already collapsed
+     */
+    private double[] findWeakestLink(Node node, boolean isRoot, Map<Branch, Subtree> subtrees, WeakestLink weakestLink) {
+        if (node instanceof Leaf) {
+            return new double[]{misclassifiedWeight(((Leaf) node).classificationCounts), 1};
+        }
+        Subtree subtree = subtrees.get(node);
+        if (subtree.pruneStep != NEVER_PRUNED) {
+            return new double[]{subtree.leafError, 1};
+        }
+        Branch branch = (Branch) node;
+        double[] trueSide = findWeakestLink(branch.trueChild, false, subtrees, weakestLink);
+        double[] falseSide = findWeakestLink(branch.falseChild, false, subtrees, weakestLink);
+        double subtreeError = trueSide[0] + falseSide[0];
+        double leafCount = trueSide[1] + falseSide[1];
+        if (!isRoot) {
+            subtree.g = (subtree.leafError - subtreeError) / (leafCount - 1);
+            weakestLink.candidates.add(subtree);
+            weakestLink.minG = Math.min(weakestLink.minG, subtree.g);
+        }
+        return new double[]{subtreeError, leafCount};
+    }
+
+    /**
+     * Copies the subtree at node, collapsing the branches pruned by the chosen step into leaves
+     */
+    private Node prunedCopy(Node node, Node parent, Map<Branch, Subtree> subtrees, int chosenStep) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            return new Leaf(parent, leaf.classificationCounts, leaf.depth);
+        }
+        Subtree subtree = subtrees.get(node);
+        if (subtree.pruneStep <= chosenStep) {
+            return new Leaf(parent, subtree.counts, subtree.depth);
+        }
+        Branch branch = (Branch) node;
+        Branch copy;
+        if (branch instanceof NumericBranch) {
+            copy = new NumericBranch(parent, branch.attribute, ((NumericBranch) branch).threshold, branch.getProbabilityOfTrueChild());
+        } else if (branch instanceof CategoricalBranch) {
+            copy = new CategoricalBranch(parent, branch.attribute, ((CategoricalBranch) branch).inSet, branch.getProbabilityOfTrueChild());
+        } else {
+            throw new IllegalArgumentException("Can't prune a tree with a " + branch.getClass().getSimpleName());
+        }
+        copy.trueChild = prunedCopy(branch.trueChild, copy, subtrees, chosenStep);
+        copy.falseChild = prunedCopy(branch.falseChild, copy, subtrees, chosenStep);
+        return copy;
+    }
+
+    private static double misclassifiedWeight(ClassificationCounter counts) {
+        return counts.getTotal() - counts.mostPopular().getValue1();
+    }
+
+    private static PredictionMap toPrediction(ClassificationCounter counts) {
+        PredictionMap prediction = PredictionMap.newMap();
+        for (Map.Entry<Serializable, Double> entry : counts.getCounts().entrySet()) {
+            prediction.put(entry.getKey(), entry.getValue() / counts.getTotal());
+        }
+        return prediction;
+    }
+
+    private static class Subtree {
+        final int depth;
+        final ClassificationCounter counts;
+        final double leafError;
+        final PredictionMap collapsedPrediction;
+        int pruneStep = NEVER_PRUNED;
+        double g;
+
+        Subtree(int depth, ClassificationCounter counts) {
+            this.depth = depth;
+            this.counts = counts;
+            this.leafError = misclassifiedWeight(counts);
+            this.collapsedPrediction = toPrediction(counts);
+        }
+    }
+
+    private static class WeakestLink {
+        final List<Subtree> candidates = Lists.newArrayList();
+        double minG = Double.POSITIVE_INFINITY;
+    }
 }
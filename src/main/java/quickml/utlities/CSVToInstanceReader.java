@@ -2,6 +2,7 @@ package quickml.utlities;
 
 import au.com.bytecode.opencsv.CSVReader;
 import com.google.common.base.Optional;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import quickml.data.AttributesMap;
@@ -12,6 +13,7 @@ import java.io.Reader;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -69,6 +71,38 @@ public class CSVToInstanceReader {
         return getInstancesFromReader(csvReader);
     }
 
+    /**
+     * Reads the header straight away, then one instance per row as the iterator is advanced, so files too large to
+     * hold in memory can be streamed through
+     */
+    public Iterator<ClassifierInstance> iterateCsvFromReader(Reader reader) throws IOException {
+        final CSVReader csvReader = new CSVReader(reader, delimiter, '"');
+        String[] headerLine = csvReader.readNext();
+        header = new ArrayList<>();
+        if (headerLine != null) {
+            Collections.addAll(header, headerLine);
+        }
+        return new AbstractIterator<ClassifierInstance>() {
+            @Override
+            protected ClassifierInstance computeNext() {
+                String[] line;
+                try {
+                    line = csvReader.readNext();
+                } catch (IOException e) {
+                    throw new RuntimeException("Error reading csv", e);
+                }
+                return line == null ? endOfData() : instanceConverter(line);
+            }
+        };
+    }
+
+    /**
+     * @return the column names of the file most recently read
+     */
+    public List<String> getHeader() {
+        return header;
+    }
+
     private List<ClassifierInstance> getInstancesFromReader(CSVReader reader) throws IOException {
         List<String[]> csvLines = reader.readAll();
 
@@ -0,0 +1,66 @@
+package quickml.data;
+
+import org.junit.Test;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.io.Serializable;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FeatureVectorTest {
+
+    @Test
+    public void forestPredictionsMatchAttributesMap() {
+        final List<ClassifierInstance> instances = getMixedInstances(3000);
+        final RandomForest forest = new RandomForestBuilder<ClassifierInstance>().numTrees(10).buildPredictiveModel(instances);
+        final FeatureVector features = forest.getSchema().newFeatureVector();
+        for (ClassifierInstance instance : instances.subList(0, 500)) {
+            features.fill(instance.getAttributes());
+            for (Serializable classification : forest.getClassifications()) {
+                assertEquals(forest.getProbability(instance.getAttributes(), classification), forest.getProbability(features, classification), 1E-12);
+                assertEquals(forest.predict(instance.getAttributes()).get(classification), forest.predict(features).get(classification), 1E-12);
+            }
+        }
+    }
+
+    @Test
+    public void treeAcceptsVectorOfAnotherSchema() {
+        final List<ClassifierInstance> instances = getMixedInstances(2000);
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(6).buildPredictiveModel(instances);
+        final Schema schema = Schema.builder().addAttribute("unused").addAttribute("weight").addAttribute("height")
+                .addAttribute("gender").addCategoricalValue("gender", "female").addCategoricalValue("gender", "male").build();
+        final FeatureVector features = schema.newFeatureVector();
+        final FeatureVector ownFeatures = tree.getSchema().newFeatureVector();
+        for (ClassifierInstance instance : instances.subList(0, 300)) {
+            features.fill(instance.getAttributes());
+            ownFeatures.fill(instance.getAttributes());
+            assertEquals(tree.getClassificationByMaxProb(instance.getAttributes()), tree.getClassificationByMaxProb(features));
+            assertEquals(tree.predict(instance.getAttributes()), tree.predict(ownFeatures));
+        }
+    }
+
+    @Test
+    public void missingValuesMatchAttributesMap() {
+        final List<ClassifierInstance> instances = getMixedInstances(2000);
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(6).buildPredictiveModel(instances);
+        final FeatureVector features = tree.getSchema().newFeatureVector().clear();
+        assertEquals(tree.predict(AttributesMap.newHashMap()), tree.predict(features));
+        final AttributesMap unseenGender = AttributesMap.newHashMap();
+        unseenGender.put("gender", "unknown");
+        unseenGender.put("weight", 150.0);
+        assertEquals(tree.predict(unseenGender), tree.predict(features.fill(unseenGender)));
+    }
+
+    private static List<ClassifierInstance> getMixedInstances(int numInstances) {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(numInstances);
+        for (int i = 0; i < instances.size(); i++) {
+            instances.get(i).getAttributes().put("gender", i % 3 == 0 ? "female" : "male");
+        }
+        return instances;
+    }
+}
@@ -0,0 +1,131 @@
+package quickml.supervised.calibratedPredictiveModel;
+
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.AbstractClassifier;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.downsampling.DownsamplingClassifier;
+import quickml.supervised.regressionModel.IsotonicRegression.PoolAdjacentViolatorsModel;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+public class CalibratedClassifierTest {
+
+    @Test
+    public void stackedWrappersEvaluateTheWrappedModelOncePerInstance() {
+        final CountingClassifier counting = new CountingClassifier();
+        final CalibratedClassifier calibrated = new CalibratedClassifier(counting, getPavFunction());
+        final DownsamplingClassifier downsampling = new DownsamplingClassifier(calibrated, 0.0, 1.0, 0.5);
+        final AttributesMap attributes = getAttributes(0.3);
+
+        final PredictionMap calibratedPrediction = calibrated.predict(attributes);
+        Assert.assertEquals(counting.evaluations, 1);
+        Assert.assertEquals(calibratedPrediction.get(1.0), 0.6, 1E-9);
+        Assert.assertEquals(calibratedPrediction.get(0.0), 0.4, 1E-9);
+
+        counting.evaluations = 0;
+        final PredictionMap downsampledPrediction = downsampling.predict(attributes);
+        Assert.assertEquals(counting.evaluations, 1);
+        Assert.assertEquals(downsampledPrediction.get(1.0), downsampling.getProbability(attributes, 1.0), 1E-12);
+        Assert.assertEquals(downsampledPrediction.get(0.0), 1 - downsampledPrediction.get(1.0), 1E-12);
+
+        final List<AttributesMap> batch = Lists.newArrayList(getAttributes(0.1), getAttributes(0.5), getAttributes(0.9));
+        counting.evaluations = 0;
+        final List<PredictionMap> predictions = downsampling.predictBatch(batch);
+        Assert.assertEquals(counting.evaluations, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Assert.assertEquals(predictions.get(i).get(1.0), downsampling.predict(batch.get(i)).get(1.0), 1E-12);
+        }
+    }
+
+    @Test
+    public void wrappersBatchModelsThatDoNotExtendAbstractClassifier() {
+        final CountingClassifier counting = new CountingClassifier();
+        final DownsamplingClassifier downsampling = new DownsamplingClassifier(
+                new CalibratedClassifier(new PlainClassifier(counting), getPavFunction()), 0.0, 1.0, 0.5);
+        final List<AttributesMap> batch = Lists.newArrayList(getAttributes(0.1), getAttributes(0.5), getAttributes(0.9));
+        final List<PredictionMap> predictions = downsampling.predictBatch(batch);
+        Assert.assertEquals(counting.evaluations, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Assert.assertEquals(predictions.get(i).get(1.0), downsampling.predict(batch.get(i)).get(1.0), 1E-12);
+        }
+    }
+
+    private static PoolAdjacentViolatorsModel getPavFunction() {
+        final List<PoolAdjacentViolatorsModel.Observation> observations = Lists.newArrayList();
+        for (int i = 0; i <= 10; i++) {
+            observations.add(new PoolAdjacentViolatorsModel.Observation(i / 10.0, i / 5.0 > 1 ? 1 : i / 5.0));
+        }
+        return new PoolAdjacentViolatorsModel(observations);
+    }
+
+    private static AttributesMap getAttributes(double probability) {
+        final AttributesMap attributes = AttributesMap.newHashMap();
+        attributes.put("probability", probability);
+        return attributes;
+    }
+
+    /**
+     * Predicts the probability given as an attribute, counting how many times it is asked to
+     */
+    private static class CountingClassifier extends AbstractClassifier {
+        int evaluations;
+
+        @Override
+        public PredictionMap predict(AttributesMap attributes) {
+            evaluations++;
+            final double probability = (Double) attributes.get("probability");
+            final PredictionMap prediction = new PredictionMap(new HashMap<Serializable, Double>());
+            prediction.put(1.0, probability);
+            prediction.put(0.0, 1 - probability);
+            return prediction;
+        }
+
+        @Override
+        public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+            return predict(attributes);
+        }
+    }
+
+    /**
+     * Implements only the Classifier interface, as models from outside quickml may
+     */
+    private static class PlainClassifier implements Classifier {
+        private final Classifier wrapped;
+
+        PlainClassifier(Classifier wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        @Override
+        public double getProbability(AttributesMap attributes, Serializable classification) {
+            return wrapped.getProbability(attributes, classification);
+        }
+
+        @Override
+        public double getProbabilityWithoutAttributes(AttributesMap attributes, Serializable classification, Set<String> attributesToIgnore) {
+            return wrapped.getProbabilityWithoutAttributes(attributes, classification, attributesToIgnore);
+        }
+
+        @Override
+        public PredictionMap predict(AttributesMap attributes) {
+            return wrapped.predict(attributes);
+        }
+
+        @Override
+        public PredictionMap predictWithoutAttributes(AttributesMap attributes, Set<String> attributesToIgnore) {
+            return wrapped.predictWithoutAttributes(attributes, attributesToIgnore);
+        }
+
+        @Override
+        public Serializable getClassificationByMaxProb(AttributesMap attributes) {
+            return wrapped.getClassificationByMaxProb(attributes);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package quickml.supervised.classifier;
 
+import com.google.common.collect.Sets;
 import org.joda.time.DateTime;
+import org.testng.Assert;
 import quickml.data.AttributesMap;
 import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -72,6 +75,15 @@ public class TreeBuilderTestUtils {
     }
 
 
+    /**
+     * Asserts that the predictions give the same probability to every classification either of them has
+     */
+    public static void assertSamePrediction(PredictionMap expected, PredictionMap actual) {
+        for (Serializable classification : Sets.union(expected.keySet(), actual.keySet())) {
+            Assert.assertEquals(actual.get(classification), expected.get(classification), 1E-9);
+        }
+    }
+
     public static void serializeDeserialize(final Serializable object) throws IOException, ClassNotFoundException {
         final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(1000);
         ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
@@ -0,0 +1,53 @@
+package quickml.supervised.classifier.caching;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.util.List;
+
+public class CachingClassifierTest {
+
+    @Test
+    public void repeatsAreServedFromTheCache() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(instances);
+        final CachingClassifier cachingClassifier = CachingClassifier.of(randomForest, 1000);
+        Assert.assertFalse(cachingClassifier.getKeyAttributes().contains("unused"));
+
+        final AttributesMap attributes = instances.get(0).getAttributes();
+        final PredictionMap first = cachingClassifier.predict(attributes);
+        TreeBuilderTestUtils.assertSamePrediction(randomForest.predict(attributes), first);
+        first.put("changedByCaller", 1.0);
+
+        final AttributesMap withUnusedAttribute = AttributesMap.newHashMap();
+        withUnusedAttribute.putAll(attributes);
+        withUnusedAttribute.put("unused", "anything");
+        final PredictionMap second = cachingClassifier.predict(withUnusedAttribute);
+        TreeBuilderTestUtils.assertSamePrediction(randomForest.predict(attributes), second);
+        Assert.assertFalse(second.containsKey("changedByCaller"));
+
+        Assert.assertEquals(cachingClassifier.getStats().missCount(), 1);
+        Assert.assertEquals(cachingClassifier.getStats().hitCount(), 1);
+        Assert.assertEquals(cachingClassifier.getProbability(attributes, first.keySet().iterator().next()), randomForest.getProbability(attributes, first.keySet().iterator().next()), 1e-9);
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(instances);
+        final CachingClassifier cachingClassifier = CachingClassifier.of(randomForest, 10);
+        for (ClassifierInstance instance : instances.subList(0, 500)) {
+            TreeBuilderTestUtils.assertSamePrediction(randomForest.predict(instance.getAttributes()), cachingClassifier.predict(instance.getAttributes()));
+        }
+        Assert.assertTrue(cachingClassifier.getSize() <= 10);
+        Assert.assertTrue(cachingClassifier.getStats().evictionCount() > 0);
+
+        TreeBuilderTestUtils.serializeDeserialize(cachingClassifier);
+    }
+}
@@ -0,0 +1,68 @@
+package quickml.supervised.classifier.compiled;
+
+import com.google.common.collect.Sets;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+public class FlatRandomForestTest {
+
+    @Test
+    public void flatForestMatchesForest() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(3000);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(10).buildPredictiveModel(instances);
+        final FlatRandomForest flatForest = FlatRandomForest.fromRandomForest(randomForest);
+        TreeBuilderTestUtils.serializeDeserialize(flatForest);
+
+        final Set<String> ignored = Sets.newHashSet("weight");
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(200)) {
+            final AttributesMap attributes = instance.getAttributes();
+            TreeBuilderTestUtils.assertSamePrediction(randomForest.predict(attributes), flatForest.predict(attributes));
+            TreeBuilderTestUtils.assertSamePrediction(randomForest.predictWithoutAttributes(attributes, ignored), flatForest.predictWithoutAttributes(attributes, ignored));
+            for (Serializable classification : randomForest.getClassifications()) {
+                Assert.assertEquals(flatForest.getProbability(attributes, classification), randomForest.getProbability(attributes, classification), 1E-9);
+            }
+        }
+    }
+
+    @Test
+    public void flatTreeMatchesTree() {
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(8).buildPredictiveModel(TreeBuilderTestUtils.getInstances(3000));
+        final FlatTree flatTree = FlatTree.fromTree(tree);
+        Assert.assertEquals(flatTree.nodes.getNumNodes(), tree.node.size());
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(200)) {
+            final AttributesMap attributes = instance.getAttributes();
+            TreeBuilderTestUtils.assertSamePrediction(tree.predict(attributes), flatTree.predict(attributes));
+            Assert.assertEquals(flatTree.getClassificationByMaxProb(attributes), tree.getClassificationByMaxProb(attributes));
+        }
+    }
+
+    @Test
+    public void categoricalBranchesAndMissingValues() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        for (int i = 0; i < instances.size(); i++) {
+            final AttributesMap attributes = instances.get(i).getAttributes();
+            attributes.put("gender", i % 2 == 0 ? "male" : "female");
+            if (i % 7 == 0) {
+                attributes.remove("height");
+            }
+        }
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(8).buildPredictiveModel(instances);
+        final FlatTree flatTree = FlatTree.fromTree(tree);
+        final AttributesMap empty = AttributesMap.newHashMap();
+        TreeBuilderTestUtils.assertSamePrediction(tree.predict(empty), flatTree.predict(empty));
+        for (ClassifierInstance instance : instances) {
+            TreeBuilderTestUtils.assertSamePrediction(tree.predict(instance.getAttributes()), flatTree.predict(instance.getAttributes()));
+        }
+    }
+}
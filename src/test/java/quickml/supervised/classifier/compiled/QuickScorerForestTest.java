@@ -0,0 +1,70 @@
+package quickml.supervised.classifier.compiled;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+import quickml.utlities.SerializationUtility;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+public class QuickScorerForestTest {
+
+    @Test
+    public void quickScorerMatchesForest() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(3000);
+        for (int i = 0; i < instances.size(); i++) {
+            final AttributesMap attributes = instances.get(i).getAttributes();
+            attributes.put("gender", i % 2 == 0 ? "male" : "female");
+            if (i % 7 == 0) {
+                attributes.remove("height");
+            }
+        }
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>(new TreeBuilder<ClassifierInstance>().maxDepth(12))
+                .numTrees(10).buildPredictiveModel(instances);
+        boolean hasTreeWithManyLeaves = false;
+        for (Tree tree : randomForest.trees) {
+            hasTreeWithManyLeaves |= (tree.node.size() + 1) / 2 > 64;
+        }
+        Assert.assertTrue(hasTreeWithManyLeaves, "Some tree's leaves should span more than one bitvector word");
+
+        final QuickScorerForest quickScorer = QuickScorerForest.fromRandomForest(randomForest);
+        TreeBuilderTestUtils.serializeDeserialize(quickScorer);
+        Assert.assertEquals(quickScorer.getNumTrees(), randomForest.trees.size());
+        final AttributesMap empty = AttributesMap.newHashMap();
+        TreeBuilderTestUtils.assertSamePrediction(randomForest.predict(empty), quickScorer.predict(empty));
+        for (ClassifierInstance instance : instances) {
+            final AttributesMap attributes = instance.getAttributes();
+            TreeBuilderTestUtils.assertSamePrediction(randomForest.predict(attributes), quickScorer.predict(attributes));
+            for (Serializable classification : randomForest.getClassifications()) {
+                Assert.assertEquals(quickScorer.getProbability(attributes, classification), randomForest.getProbability(attributes, classification), 1E-9);
+            }
+        }
+    }
+
+    @Test
+    public void everyEvaluationLoadsTheSameModel() throws Exception {
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(TreeBuilderTestUtils.getInstances(1000));
+        final File modelFile = File.createTempFile("forest", ".gz");
+        modelFile.deleteOnExit();
+        new SerializationUtility<RandomForest>().writeModelToGZIPFile(modelFile.getPath(), randomForest);
+
+        for (ForestEvaluation evaluation : ForestEvaluation.values()) {
+            final Classifier classifier = evaluation.load(modelFile.getPath());
+            for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(100)) {
+                TreeBuilderTestUtils.assertSamePrediction(randomForest.predict(instance.getAttributes()), classifier.predict(instance.getAttributes()));
+                TreeBuilderTestUtils.assertSamePrediction(randomForest.predictWithoutAttributes(instance.getAttributes(), Collections.singleton("height")),
+                        classifier.predictWithoutAttributes(instance.getAttributes(), Collections.singleton("height")));
+            }
+        }
+    }
+}
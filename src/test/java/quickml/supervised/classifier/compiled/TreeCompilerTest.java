@@ -0,0 +1,66 @@
+package quickml.supervised.classifier.compiled;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+
+public class TreeCompilerTest {
+
+    @Test
+    public void compiledForestMatchesForest() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(3000);
+        for (int i = 0; i < instances.size(); i += 2) {
+            instances.get(i).getAttributes().put("gender", i % 4 == 0 ? "male" : "female");
+        }
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(10).buildPredictiveModel(instances);
+        final CompiledTrees compiledTrees = new TreeCompiler().compile(randomForest);
+        Assert.assertEquals(compiledTrees.getNumCompiledTrees(), 10);
+        assertMatches(randomForest, compiledTrees, instances.subList(0, 500));
+
+        final CompiledTrees deserialized = roundTrip(compiledTrees);
+        Assert.assertEquals(deserialized.getNumCompiledTrees(), 10);
+        assertMatches(randomForest, deserialized, instances.subList(0, 100));
+    }
+
+    @Test
+    public void treesTooLargeToCompileAreInterpreted() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(instances);
+        final CompiledTrees compiledTrees = new TreeCompiler().maxBytesPerMethod(TreeCompiler.LEAF_BYTES).compile(randomForest);
+        int singleLeafTrees = 0;
+        for (Tree tree : randomForest.trees) {
+            if (tree.node.size() == 1) singleLeafTrees++;
+        }
+        Assert.assertEquals(compiledTrees.getNumCompiledTrees(), singleLeafTrees);
+        assertMatches(randomForest, compiledTrees, instances.subList(0, 200));
+    }
+
+    private static CompiledTrees roundTrip(CompiledTrees compiledTrees) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(compiledTrees);
+        out.close();
+        return (CompiledTrees) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+    private static void assertMatches(RandomForest randomForest, CompiledTrees compiledTrees, List<ClassifierInstance> instances) {
+        for (ClassifierInstance instance : instances) {
+            final AttributesMap attributes = instance.getAttributes();
+            for (Serializable classification : randomForest.getClassifications()) {
+                Assert.assertEquals(compiledTrees.getProbability(attributes, classification), randomForest.getProbability(attributes, classification), 1E-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package quickml.supervised.classifier.decisionTree;
+
+import org.junit.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HoeffdingTreeBuilderTest {
+
+    @Test
+    public void streamingBmiTest() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(20000);
+        final HoeffdingTreeBuilder<ClassifierInstance> builder = new HoeffdingTreeBuilder<>();
+        for (ClassifierInstance instance : instances) {
+            builder.update(instance);
+        }
+        final Tree tree = builder.getTree();
+        TreeBuilderTestUtils.serializeDeserialize(tree);
+
+        assertEquals(20000, builder.getInstancesSeen());
+        assertTrue("Tree should have split", tree.node.size() > 1);
+        assertTrue("Tree depth is bounded by maxDepth", tree.node.meanDepth() <= 5);
+
+        final List<ClassifierInstance> testInstances = TreeBuilderTestUtils.getInstances(1000);
+        int correct = 0;
+        for (ClassifierInstance instance : testInstances) {
+            if (tree.getClassificationByMaxProb(instance.getAttributes()).equals(instance.getLabel())) {
+                correct++;
+            }
+        }
+        assertTrue("Accuracy should be well above chance, was " + correct / 1000.0, correct > 700);
+    }
+
+    @Test
+    public void snapshotIsUnaffectedByLaterUpdates() {
+        final HoeffdingTreeBuilder<ClassifierInstance> builder = new HoeffdingTreeBuilder<>();
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(500)) {
+            builder.update(instance);
+        }
+        final Tree snapshot = builder.getTree();
+        final int snapshotSize = snapshot.node.size();
+        final AttributesMap attributes = TreeBuilderTestUtils.getInstances(1).get(0).getAttributes();
+        final double probability = snapshot.getProbability(attributes, "healthy");
+
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(20000)) {
+            builder.update(instance);
+        }
+        assertEquals(snapshotSize, snapshot.node.size());
+        assertEquals(probability, snapshot.getProbability(attributes, "healthy"), 0);
+    }
+
+    @Test
+    public void splitsOnCategoricalAttribute() {
+        final HoeffdingTreeBuilder<ClassifierInstance> builder = new HoeffdingTreeBuilder<ClassifierInstance>().gracePeriod(50);
+        for (int x = 0; x < 2000; x++) {
+            AttributesMap attributes = AttributesMap.newHashMap();
+            String color = x % 3 == 0 ? "red" : (x % 3 == 1 ? "green" : "blue");
+            attributes.put("color", color);
+            builder.update(new ClassifierInstance(attributes, color.equals("red") ? 1.0 : 0.0));
+        }
+        final Tree tree = builder.getTree();
+        AttributesMap red = AttributesMap.newHashMap();
+        red.put("color", "red");
+        AttributesMap blue = AttributesMap.newHashMap();
+        blue.put("color", "blue");
+        assertEquals(1.0, tree.getProbability(red, 1.0), 0.01);
+        assertEquals(0.0, tree.getProbability(blue, 1.0), 0.01);
+    }
+
+    @Test
+    public void countsMissingValuesTheWayTheTreeRoutesThem() {
+        final HoeffdingTreeBuilder<ClassifierInstance> builder = new HoeffdingTreeBuilder<ClassifierInstance>().gracePeriod(50);
+        for (int x = 0; x < 10000; x++) {
+            AttributesMap attributes = AttributesMap.newHashMap();
+            if (x % 2 == 0) {
+                attributes.put("visits", 5.0 + x % 7);
+                attributes.put("browser", x % 4 == 0 ? "firefox" : "chrome");
+            }
+            builder.update(new ClassifierInstance(attributes, x % 2 == 0 ? 1.0 : 0.0));
+        }
+        final Tree tree = builder.getTree();
+        assertTrue("Tree should have split on the sparse attributes", tree.node.size() > 1);
+        AttributesMap present = AttributesMap.newHashMap();
+        present.put("visits", 8.0);
+        present.put("browser", "chrome");
+        assertEquals(1.0, tree.getProbability(present, 1.0), 0.01);
+        assertEquals(0.0, tree.getProbability(AttributesMap.newHashMap(), 1.0), 0.01);
+    }
+}
@@ -0,0 +1,48 @@
+package quickml.supervised.classifier.decisionTree;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.supervised.classifier.decisionTree.tree.ClassificationCounter;
+import quickml.supervised.classifier.decisionTree.tree.Leaf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+public class LeafTest {
+
+    @Test
+    public void probabilitiesAndBestClassification() {
+        Leaf leaf = new Leaf(null, getCounts(), 3);
+        Assert.assertEquals(leaf.getProbability("dog"), 0.25);
+        Assert.assertEquals(leaf.getProbability("cat"), 0.75);
+        Assert.assertEquals(leaf.getProbability("bird"), 0.0);
+        Assert.assertEquals(leaf.getBestClassification(), "cat");
+        Assert.assertEquals(leaf.getClassification(leaf.getBestClassificationIndex()), "cat");
+        Assert.assertEquals(leaf.getNumClassifications(), 2);
+        Assert.assertEquals(leaf.getClassifications().size(), 2);
+        for (int i = 0; i < leaf.getNumClassifications(); i++) {
+            Assert.assertEquals(leaf.getProbability(i), leaf.getProbability(leaf.getClassification(i)));
+        }
+    }
+
+    @Test
+    public void probabilitiesAreRebuiltOnDeserialization() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new Leaf(null, getCounts(), 3));
+        out.close();
+        Leaf leaf = (Leaf) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        Assert.assertEquals(leaf.getProbability("cat"), 0.75);
+        Assert.assertEquals(leaf.getBestClassification(), "cat");
+        Assert.assertTrue(leaf.getClassifications().contains("dog"));
+    }
+
+    private static ClassificationCounter getCounts() {
+        ClassificationCounter counts = new ClassificationCounter();
+        counts.addClassification("dog", 1.0);
+        counts.addClassification("cat", 3.0);
+        return counts;
+    }
+}
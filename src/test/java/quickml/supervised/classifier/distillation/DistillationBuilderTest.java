@@ -0,0 +1,87 @@
+package quickml.supervised.classifier.distillation;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.PredictiveModelBuilder;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+public class DistillationBuilderTest {
+
+    @Test
+    public void distilledTreeFollowsTheForest() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForest teacher = new RandomForestBuilder<ClassifierInstance>().numTrees(20).buildPredictiveModel(instances);
+        final DistillationBuilder<Tree> distillationBuilder = new DistillationBuilder<>(teacher, new TreeBuilder<ClassifierInstance>().maxDepth(10))
+                .syntheticInstancesPerInstance(2);
+        Assert.assertNull(distillationBuilder.getFidelity());
+
+        final Tree student = distillationBuilder.buildPredictiveModel(instances);
+        final Fidelity trainingFidelity = distillationBuilder.getFidelity();
+        Assert.assertEquals(trainingFidelity.getNumInstances(), instances.size());
+        Assert.assertTrue(trainingFidelity.getAgreement() > 0.8, trainingFidelity.toString());
+
+        final List<AttributesMap> heldOut = Lists.newArrayList();
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(500)) {
+            heldOut.add(instance.getAttributes());
+        }
+        final Fidelity heldOutFidelity = Fidelity.measure(teacher, student, heldOut);
+        Assert.assertTrue(heldOutFidelity.getAgreement() > 0.8, heldOutFidelity.toString());
+        Assert.assertTrue(heldOutFidelity.getMeanAbsoluteError() < 0.2, heldOutFidelity.toString());
+        Assert.assertTrue(heldOutFidelity.getMaxAbsoluteError() >= heldOutFidelity.getMeanAbsoluteError());
+    }
+
+    @Test
+    public void softTargetsKeepTheWeightOfTheirInstance() {
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        double totalWeight = 0;
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(500)) {
+            final double weight = instances.size() % 2 == 0 ? 1.0 : 3.0;
+            instances.add(new ClassifierInstance(instance.getAttributes(), instance.getLabel(), weight));
+            totalWeight += weight;
+        }
+        final RandomForest teacher = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(instances);
+        final List<ClassifierInstance> transferSet = Lists.newArrayList();
+        final TreeBuilder<ClassifierInstance> treeBuilder = new TreeBuilder<ClassifierInstance>().maxDepth(5);
+        new DistillationBuilder<>(teacher, new PredictiveModelBuilder<Tree, ClassifierInstance>() {
+            @Override
+            public Tree buildPredictiveModel(Iterable<ClassifierInstance> trainingData) {
+                Iterables.addAll(transferSet, trainingData);
+                return treeBuilder.buildPredictiveModel(trainingData);
+            }
+
+            @Override
+            public void updateBuilderConfig(Map<String, Object> config) {
+                treeBuilder.updateBuilderConfig(config);
+            }
+        }).syntheticInstancesPerInstance(2).buildPredictiveModel(instances);
+
+        double transferWeight = 0;
+        for (ClassifierInstance instance : transferSet) {
+            transferWeight += instance.getWeight();
+        }
+        Assert.assertEquals(transferWeight, 3 * totalWeight, 1E-6);
+    }
+
+    @Test
+    public void aModelIsPerfectlyFaithfulToItself() {
+        final RandomForest forest = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(TreeBuilderTestUtils.getInstances(500));
+        final List<AttributesMap> attributes = Lists.newArrayList();
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(100)) {
+            attributes.add(instance.getAttributes());
+        }
+        final Fidelity fidelity = Fidelity.measure(forest, forest, attributes);
+        Assert.assertEquals(fidelity.getAgreement(), 1.0);
+        Assert.assertEquals(fidelity.getMaxAbsoluteError(), 0.0);
+    }
+}
@@ -0,0 +1,74 @@
+package quickml.supervised.classifier.gradientBoosting;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.crossValidation.data.FoldedData;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+public class GradientBoostingBuilderTest {
+
+    @Test
+    public void simpleBmiTest() throws Exception {
+        final List<ClassifierInstance> instances = getBinaryInstances(5000);
+        final GradientBoostingBuilder<ClassifierInstance> builder = new GradientBoostingBuilder<ClassifierInstance>()
+                .numTrees(50).maxDepth(3).shrinkage(0.3).subsample(0.8);
+        final GradientBoostedClassifier classifier = builder.buildPredictiveModel(instances);
+        TreeBuilderTestUtils.serializeDeserialize(classifier);
+
+        Assert.assertEquals(classifier.trees.size(), 50);
+        final AttributesMap testAttributes = instances.get(0).getAttributes();
+        double total = 0;
+        for (Map.Entry<Serializable, Double> entry : classifier.predict(testAttributes).entrySet()) {
+            Assert.assertEquals(entry.getValue(), classifier.getProbability(testAttributes, entry.getKey()), 1E-12);
+            total += entry.getValue();
+        }
+        Assert.assertEquals(total, 1.0, 1E-12);
+
+        int correct = 0;
+        final List<ClassifierInstance> testInstances = getBinaryInstances(1000);
+        for (ClassifierInstance instance : testInstances) {
+            if (classifier.getClassificationByMaxProb(instance.getAttributes()).equals(instance.getLabel())) {
+                correct++;
+            }
+        }
+        Assert.assertTrue(correct > 900, "Accuracy should be high, was " + correct / 1000.0);
+    }
+
+    @Test
+    public void earlyStoppingTruncatesToBestIteration() {
+        final List<ClassifierInstance> instances = getBinaryInstances(2000);
+        final GradientBoostingBuilder<ClassifierInstance> builder = new GradientBoostingBuilder<ClassifierInstance>()
+                .numTrees(500).maxDepth(4).shrinkage(1.0).l2Regularization(0).earlyStoppingRounds(5);
+        final GradientBoostedClassifier classifier = builder.buildPredictiveModel(new FoldedData<>(instances, 4, 1));
+        Assert.assertTrue(classifier.trees.size() < 500, "Training should have stopped early");
+        Assert.assertTrue(classifier.trees.size() > 0);
+    }
+
+    @Test
+    public void ignoringEveryAttributeGivesPriorLogOdds() {
+        final List<ClassifierInstance> instances = getBinaryInstances(2000);
+        final GradientBoostedClassifier classifier = new GradientBoostingBuilder<ClassifierInstance>().numTrees(10).buildPredictiveModel(instances);
+        final AttributesMap attributes = instances.get(0).getAttributes();
+        final double withAllAttributes = classifier.getScoreWithoutAttributes(attributes, Sets.<String>newHashSet());
+        Assert.assertEquals(withAllAttributes, classifier.getScore(attributes), 1E-12);
+        final double withoutAttributes = classifier.getScoreWithoutAttributes(attributes, Sets.newHashSet("weight", "height", "gender", "other"));
+        final double otherWithoutAttributes = classifier.getScoreWithoutAttributes(instances.get(1).getAttributes(), Sets.newHashSet("weight", "height", "gender", "other"));
+        Assert.assertEquals(withoutAttributes, otherWithoutAttributes, 1E-12);
+    }
+
+    private static List<ClassifierInstance> getBinaryInstances(int numInstances) {
+        final List<ClassifierInstance> instances = Lists.newArrayList();
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(numInstances)) {
+            instances.add(new ClassifierInstance(instance.getAttributes(), instance.getLabel().equals("healthy") ? "healthy" : "unhealthy"));
+        }
+        return instances;
+    }
+}
@@ -0,0 +1,58 @@
+package quickml.supervised.classifier.randomForest;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class EarlyExitForestTest {
+
+    @Test
+    public void earlyExitGivesSameClassificationWithFewerTrees() {
+        final RandomForest randomForest = RandomForestTest.buildForest(TreeBuilderTestUtils.getInstances(3000));
+        final EarlyExitForest earlyExitForest = new EarlyExitForest(randomForest).orderByProbabilitySpread();
+        Assert.assertEquals(earlyExitForest.getTreeOrder().size(), randomForest.trees.size());
+
+        final List<AttributesMap> attributesList = RandomForestTest.getAttributes(TreeBuilderTestUtils.getInstances(500));
+        int treesEvaluated = 0;
+        for (AttributesMap attributes : attributesList) {
+            final EarlyExitForest.Decision<Serializable> decision = earlyExitForest.getClassificationByMaxProb(attributes);
+            Assert.assertEquals(decision.getValue(), randomForest.getClassificationByMaxProb(attributes));
+            Assert.assertTrue(decision.getTreesEvaluated() >= 1 && decision.getTreesEvaluated() <= randomForest.trees.size());
+            treesEvaluated += decision.getTreesEvaluated();
+        }
+        Assert.assertTrue(treesEvaluated < attributesList.size() * randomForest.trees.size(), "Some decisions should be settled early");
+    }
+
+    @Test
+    public void earlyExitGivesSameThresholdDecision() {
+        final List<ClassifierInstance> instances = RandomForestTest.getBinaryInstances(3000);
+        final RandomForest randomForest = RandomForestTest.buildForest(instances);
+        final EarlyExitForest earlyExitForest = new EarlyExitForest(randomForest);
+        int treesEvaluated = 0, decisions = 0;
+        for (double threshold : new double[]{0.1, 0.5, 0.9}) {
+            for (AttributesMap attributes : RandomForestTest.getAttributes(RandomForestTest.getBinaryInstances(300))) {
+                final EarlyExitForest.Decision<Boolean> decision = earlyExitForest.isProbabilityAbove(attributes, "healthy", threshold);
+                Assert.assertEquals(decision.getValue().booleanValue(), randomForest.getProbability(attributes, "healthy") > threshold);
+                treesEvaluated += decision.getTreesEvaluated();
+                decisions++;
+            }
+        }
+        Assert.assertTrue(treesEvaluated < decisions * randomForest.trees.size(), "Some decisions should be settled early");
+    }
+
+    @Test
+    public void treeOrderMustIncludeEveryTree() {
+        final RandomForest randomForest = RandomForestTest.buildForest(TreeBuilderTestUtils.getInstances(500));
+        try {
+            new EarlyExitForest(randomForest).treeOrder(java.util.Collections.nCopies(randomForest.trees.size(), 0));
+            Assert.fail("An order repeating a tree should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
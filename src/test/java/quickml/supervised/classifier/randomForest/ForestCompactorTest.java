@@ -0,0 +1,66 @@
+package quickml.supervised.classifier.randomForest;
+
+import com.google.common.collect.Sets;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.tree.Branch;
+import quickml.supervised.classifier.decisionTree.tree.Node;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class ForestCompactorTest {
+
+    @Test
+    public void exactCompactionPredictsTheSame() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(10).buildPredictiveModel(instances);
+        final ForestCompactor.Compaction compaction = new ForestCompactor().compact(randomForest);
+        final RandomForest compacted = compaction.getRandomForest();
+        TreeBuilderTestUtils.serializeDeserialize(compacted);
+
+        Assert.assertEquals(compaction.getMaxProbabilityError(), 0.0);
+        Assert.assertTrue(compaction.getNodesAfter() < compaction.getNodesBefore(), compaction.toString());
+        Assert.assertTrue(compaction.getSerializedBytesSaved() > 0, compaction.toString());
+        for (Tree tree : compacted.trees) {
+            assertNoParents(tree.node);
+        }
+        for (ClassifierInstance instance : instances.subList(0, 200)) {
+            final AttributesMap attributes = instance.getAttributes();
+            for (Serializable classification : randomForest.getClassifications()) {
+                Assert.assertEquals(compacted.getProbability(attributes, classification), randomForest.getProbability(attributes, classification), 1E-12);
+                Assert.assertEquals(compacted.getProbabilityWithoutAttributes(attributes, classification, Sets.newHashSet("weight")),
+                        randomForest.getProbabilityWithoutAttributes(attributes, classification, Sets.newHashSet("weight")), 1E-12);
+            }
+        }
+    }
+
+    @Test
+    public void quantizedCompactionStaysWithinItsError() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(10).buildPredictiveModel(instances);
+        final ForestCompactor.Compaction exact = new ForestCompactor().compact(randomForest);
+        final ForestCompactor.Compaction quantized = new ForestCompactor().quantizationBits(8).compact(randomForest);
+
+        Assert.assertTrue(quantized.getMaxProbabilityError() < 1.0 / 255, quantized.toString());
+        Assert.assertTrue(quantized.getNodesAfter() <= exact.getNodesAfter(), quantized + " vs " + exact);
+        for (ClassifierInstance instance : instances.subList(0, 200)) {
+            for (Serializable classification : randomForest.getClassifications()) {
+                Assert.assertEquals(quantized.getRandomForest().getProbability(instance.getAttributes(), classification),
+                        randomForest.getProbability(instance.getAttributes(), classification), quantized.getMaxProbabilityError() + 1E-12);
+            }
+        }
+    }
+
+    private static void assertNoParents(Node node) {
+        Assert.assertNull(node.parent);
+        if (node instanceof Branch) {
+            assertNoParents(((Branch) node).trueChild);
+            assertNoParents(((Branch) node).falseChild);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import quickml.collections.MapUtils;
 import quickml.data.AttributesMap;
 import quickml.data.PredictionMap;
 import quickml.data.ClassifierInstance;
+import quickml.supervised.CancellationToken;
 import quickml.supervised.classifier.TreeBuilderTestUtils;
 import quickml.supervised.classifier.decisionTree.Tree;
 import quickml.supervised.classifier.decisionTree.TreeBuilder;
@@ -15,6 +16,12 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class RandomForestBuilderTest {
     @Test
@@ -62,4 +69,101 @@ public class RandomForestBuilderTest {
         }
     }
 
+    @Test
+    public void warmStartAddsAndReplacesTrees() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForestBuilder<ClassifierInstance> rfb = new RandomForestBuilder<>(new TreeBuilder<ClassifierInstance>(new SplitDiffScorer())).numTrees(5);
+        final RandomForest randomForest = rfb.buildPredictiveModel(instances);
+
+        final RandomForest grownForest = rfb.addTrees(randomForest, TreeBuilderTestUtils.getInstances(2000), 3);
+        Assert.assertEquals(grownForest.trees.size(), 8);
+        Assert.assertEquals(randomForest.trees.size(), 5, "The existing forest must not be modified");
+        for (int i = 0; i < 5; i++) {
+            Assert.assertSame(grownForest.trees.get(i), randomForest.trees.get(i));
+        }
+
+        final RandomForest refreshedForest = rfb.replaceOldestTrees(grownForest, TreeBuilderTestUtils.getInstances(2000), 2);
+        Assert.assertEquals(refreshedForest.trees.size(), 8);
+        Assert.assertSame(refreshedForest.trees.get(0), grownForest.trees.get(2));
+        Assert.assertSame(refreshedForest.trees.get(5), grownForest.trees.get(7));
+
+        final AttributesMap testAttributes = instances.get(0).getAttributes();
+        double total = 0;
+        for (Map.Entry<Serializable, Double> entry : refreshedForest.predict(testAttributes).entrySet()) {
+            total += entry.getValue();
+        }
+        Assert.assertEquals(total, 1.0, 1E-9);
+    }
+
+    @Test
+    public void warmStartKeepsParallelEvaluationAndTreeImportances() {
+        final RandomForestBuilder<ClassifierInstance> rfb = new RandomForestBuilder<>(new TreeBuilder<ClassifierInstance>(new SplitDiffScorer())).numTrees(4);
+        final RandomForest randomForest = rfb.buildPredictiveModel(TreeBuilderTestUtils.getInstances(2000))
+                .withParallelEvaluation(4, 2).withTreeImportances(new double[]{1, 2, 3, 6});
+
+        final RandomForest refreshedForest = rfb.buildPredictiveModel(randomForest, TreeBuilderTestUtils.getInstances(2000), 2, 1);
+        Assert.assertEquals(refreshedForest.trees.size(), 5);
+        Assert.assertTrue(refreshedForest.isEvaluatedInParallel());
+        Assert.assertEquals(refreshedForest.getTreeImportance(0), 2.0);
+        Assert.assertEquals(refreshedForest.getTreeImportance(2), 6.0);
+        Assert.assertEquals(refreshedForest.getTreeImportance(3), 11.0 / 3, 1E-9, "New trees should get the retained trees' mean importance");
+        Assert.assertEquals(refreshedForest.getTreeImportance(4), 11.0 / 3, 1E-9);
+    }
+
+    @Test
+    public void timeBudgetReturnsTreesFinishedSoFar() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForestBuilder<ClassifierInstance> rfb = new RandomForestBuilder<>(new TreeBuilder<ClassifierInstance>(new SplitDiffScorer()))
+                .numTrees(10000).executorThreadCount(2).maxBuildTimeMillis(1000).minTrees(1);
+        final long startTime = System.currentTimeMillis();
+        final RandomForest randomForest = rfb.buildPredictiveModel(instances);
+
+        Assert.assertTrue(randomForest.trees.size() >= 1 && randomForest.trees.size() < 10000, "Forest should contain the trees finished within the budget");
+        Assert.assertTrue((System.currentTimeMillis() - startTime) < 10000, "Build should stop shortly after the budget is exhausted");
+    }
+
+    @Test
+    public void concurrentBuildsKeepTheirOwnTimeBudgets() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForestBuilder<ClassifierInstance> rfb = new RandomForestBuilder<>(new TreeBuilder<ClassifierInstance>(new SplitDiffScorer()))
+                .numTrees(10000).executorThreadCount(2).maxBuildTimeMillis(1000).minTrees(1);
+        final ExecutorService builds = Executors.newFixedThreadPool(2);
+        try {
+            final long startTime = System.currentTimeMillis();
+            final Future<RandomForest> first = builds.submit(new Callable<RandomForest>() {
+                @Override
+                public RandomForest call() {
+                    return rfb.buildPredictiveModel(instances);
+                }
+            });
+            Thread.sleep(300);
+            final Future<RandomForest> second = builds.submit(new Callable<RandomForest>() {
+                @Override
+                public RandomForest call() {
+                    return rfb.buildPredictiveModel(instances);
+                }
+            });
+            Assert.assertTrue(first.get(10, TimeUnit.SECONDS).trees.size() < 10000);
+            Assert.assertTrue(second.get(10, TimeUnit.SECONDS).trees.size() < 10000);
+            Assert.assertTrue((System.currentTimeMillis() - startTime) < 10000, "Both builds should stop shortly after their budgets are exhausted");
+        } finally {
+            builds.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelledBuildWithTooFewTreesFails() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(1000);
+        final CancellationToken cancellationToken = new CancellationToken();
+        cancellationToken.cancel();
+        final RandomForestBuilder<ClassifierInstance> rfb = new RandomForestBuilder<>(new TreeBuilder<ClassifierInstance>(new SplitDiffScorer()))
+                .numTrees(5).cancellationToken(cancellationToken);
+        try {
+            rfb.buildPredictiveModel(instances);
+            Assert.fail("A cancelled build without any trees should fail");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
 }
@@ -0,0 +1,203 @@
+package quickml.supervised.classifier.randomForest;
+
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.Classifiers;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.decisionTree.scorers.SplitDiffScorer;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class RandomForestTest {
+
+    @Test
+    public void predictBatchMatchesPredict() {
+        final RandomForest randomForest = buildForest(TreeBuilderTestUtils.getInstances(2000));
+        final List<AttributesMap> attributesList = getAttributes(TreeBuilderTestUtils.getInstances(RandomForest.BATCH_BLOCK_SIZE * 2 + 7));
+
+        final List<PredictionMap> predictions = randomForest.predictBatch(attributesList);
+        Assert.assertEquals(predictions.size(), attributesList.size());
+        for (int i = 0; i < attributesList.size(); i++) {
+            final PredictionMap expected = randomForest.predict(attributesList.get(i));
+            for (Map.Entry<Serializable, Double> entry : predictions.get(i).entrySet()) {
+                Assert.assertEquals(entry.getValue(), expected.get(entry.getKey()), 1e-9);
+            }
+            for (Map.Entry<Serializable, Double> entry : expected.entrySet()) {
+                Assert.assertEquals(predictions.get(i).get(entry.getKey()), entry.getValue(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void predictBatchArrayMatchesGetProbability() {
+        final RandomForest randomForest = buildForest(getBinaryInstances(2000));
+        final List<AttributesMap> attributesList = getAttributes(getBinaryInstances(RandomForest.BATCH_BLOCK_SIZE + 1));
+        final List<Serializable> classifications = Lists.<Serializable>newArrayList("unhealthy", "healthy", "unknown");
+
+        final double[][] probabilities = randomForest.predictBatch(attributesList, classifications);
+        Assert.assertEquals(probabilities.length, attributesList.size());
+        for (int i = 0; i < attributesList.size(); i++) {
+            for (int c = 0; c < classifications.size(); c++) {
+                Assert.assertEquals(probabilities[i][c], randomForest.getProbability(attributesList.get(i), classifications.get(c)), 1e-9);
+            }
+            final PredictionMap prediction = randomForest.predictBatch(attributesList.subList(i, i + 1)).get(0);
+            Assert.assertEquals(prediction, randomForest.predict(attributesList.get(i)));
+        }
+    }
+
+    @Test
+    public void predictIntoMatchesPredict() {
+        for (List<ClassifierInstance> instances : Lists.newArrayList(TreeBuilderTestUtils.getInstances(2000), getBinaryInstances(2000))) {
+            final RandomForest randomForest = buildForest(instances);
+            final List<Serializable> indexedClassifications = randomForest.getIndexedClassifications();
+            final double[] probabilities = new double[indexedClassifications.size() + 1];
+            for (AttributesMap attributes : getAttributes(instances.subList(0, 200))) {
+                randomForest.predictInto(attributes, probabilities);
+                final PredictionMap prediction = randomForest.predict(attributes);
+                for (int c = 0; c < indexedClassifications.size(); c++) {
+                    Assert.assertEquals(probabilities[c], prediction.get(indexedClassifications.get(c)), 1e-9);
+                    Assert.assertEquals(randomForest.getClassificationIndex(indexedClassifications.get(c)), c);
+                }
+
+                int best = randomForest.getClassificationIndexByMaxProb(attributes, probabilities);
+                for (Map.Entry<Serializable, Double> entry : prediction.entrySet()) {
+                    Assert.assertTrue(probabilities[best] >= entry.getValue());
+                }
+                Assert.assertEquals(randomForest.getClassificationByMaxProb(attributes), indexedClassifications.get(best));
+            }
+        }
+    }
+
+    @Test
+    public void predictIntoRejectsShortArray() {
+        final RandomForest randomForest = buildForest(TreeBuilderTestUtils.getInstances(500));
+        try {
+            randomForest.predictInto(TreeBuilderTestUtils.getInstances(1).get(0).getAttributes(), new double[1]);
+            Assert.fail("An array without room for every classification should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void anytimePredictionUsesTheBudgetedTrees() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        final RandomForest randomForest = buildForest(instances);
+        final double[] importances = AnytimePrediction.importancesFromValidationSet(randomForest, TreeBuilderTestUtils.getInstances(500));
+        final RandomForest prioritizedForest = randomForest.withTreeImportances(importances);
+        int mostImportant = 0;
+        for (int tree = 1; tree < importances.length; tree++) {
+            if (importances[tree] > importances[mostImportant]) {
+                mostImportant = tree;
+            }
+        }
+
+        for (AttributesMap attributes : getAttributes(instances.subList(0, 100))) {
+            final AnytimePrediction complete = prioritizedForest.predictWithTreeBudget(attributes, randomForest.trees.size() + 5);
+            Assert.assertTrue(complete.isComplete());
+            Assert.assertEquals(complete.getTreesUsed(), randomForest.trees.size());
+            for (Map.Entry<Serializable, Double> entry : randomForest.predict(attributes).entrySet()) {
+                Assert.assertEquals(complete.getPrediction().get(entry.getKey()), entry.getValue(), 1e-9);
+            }
+
+            final AnytimePrediction partial = prioritizedForest.predictWithTreeBudget(attributes, 1);
+            Assert.assertFalse(partial.isComplete());
+            Assert.assertEquals(partial.getTreesUsed(), 1);
+            for (Map.Entry<Serializable, Double> entry : randomForest.trees.get(mostImportant).predict(attributes).entrySet()) {
+                Assert.assertEquals(partial.getPrediction().get(entry.getKey()), entry.getValue(), 1e-9);
+            }
+
+            final AnytimePrediction late = prioritizedForest.predictBeforeDeadline(attributes, System.nanoTime() - 1000000);
+            Assert.assertEquals(late.getTreesUsed(), 1);
+
+            // a deadline past the point where nanoTime values overflow is still in the future
+            final AnytimePrediction early = prioritizedForest.predictBeforeDeadline(attributes, System.nanoTime() + Long.MAX_VALUE);
+            Assert.assertTrue(early.isComplete());
+        }
+    }
+
+    @Test
+    public void predictWithoutEachAttributeMatchesPredictWithoutAttributes() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(2000);
+        for (int i = 0; i < instances.size(); i++) {
+            instances.get(i).getAttributes().put("gender", i % 3 == 0 ? "male" : "female");
+        }
+        final RandomForest randomForest = buildForest(instances);
+        final List<String> attributes = Lists.newArrayList("weight", "height", "gender", "other", "unused");
+        final List<Serializable> classifications = randomForest.getIndexedClassifications();
+        for (AttributesMap attributesMap : getAttributes(instances.subList(0, 100))) {
+            for (Classifier classifier : Lists.<Classifier>newArrayList(randomForest, randomForest.trees.get(0))) {
+                final double[][] probabilities = Classifiers.predictWithoutEachAttribute(classifier, attributesMap, attributes, classifications);
+                for (int a = 0; a < attributes.size(); a++) {
+                    final PredictionMap expected = classifier.predictWithoutAttributes(attributesMap, Collections.singleton(attributes.get(a)));
+                    for (int c = 0; c < classifications.size(); c++) {
+                        Assert.assertEquals(probabilities[a][c], expected.get(classifications.get(c)), 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void predictWithoutEachAttributeRejectsRepeatedAttributes() {
+        final RandomForest randomForest = buildForest(TreeBuilderTestUtils.getInstances(500));
+        try {
+            randomForest.predictWithoutEachAttribute(TreeBuilderTestUtils.getInstances(1).get(0).getAttributes(),
+                    Lists.newArrayList("weight", "height", "weight"), randomForest.getIndexedClassifications());
+            Assert.fail("A repeated attribute should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void parallelEvaluationMatchesSequential() throws Exception {
+        for (List<ClassifierInstance> instances : Lists.newArrayList(TreeBuilderTestUtils.getInstances(1000), getBinaryInstances(1000))) {
+            final RandomForest sequential = buildForest(instances);
+            final RandomForest parallel = sequential.withParallelEvaluation(sequential.trees.size(), 3);
+            Assert.assertTrue(parallel.isEvaluatedInParallel());
+            Assert.assertFalse(sequential.withParallelEvaluation(sequential.trees.size() + 1, 3).isEvaluatedInParallel(), "Smaller forests stay sequential");
+            TreeBuilderTestUtils.serializeDeserialize(parallel);
+
+            for (AttributesMap attributes : getAttributes(instances.subList(0, 200))) {
+                final PredictionMap expected = sequential.predict(attributes);
+                final PredictionMap actual = parallel.predict(attributes);
+                for (Serializable classification : sequential.getClassifications()) {
+                    Assert.assertEquals(actual.get(classification), expected.get(classification), 1E-12);
+                    Assert.assertEquals(parallel.getProbability(attributes, classification), sequential.getProbability(attributes, classification), 1E-12);
+                    Assert.assertEquals(parallel.predict(attributes).get(classification), actual.get(classification), "Parallel sums are reduced in a fixed order");
+                }
+                Assert.assertEquals(parallel.getClassificationByMaxProb(attributes), sequential.getClassificationByMaxProb(attributes));
+            }
+        }
+    }
+
+    static RandomForest buildForest(List<ClassifierInstance> instances) {
+        return new RandomForestBuilder<>(new TreeBuilder<ClassifierInstance>(new SplitDiffScorer())).numTrees(10).buildPredictiveModel(instances);
+    }
+
+    static List<AttributesMap> getAttributes(List<ClassifierInstance> instances) {
+        List<AttributesMap> attributesList = Lists.newArrayList();
+        for (ClassifierInstance instance : instances) {
+            attributesList.add(instance.getAttributes());
+        }
+        return attributesList;
+    }
+
+    static List<ClassifierInstance> getBinaryInstances(int numInstances) {
+        List<ClassifierInstance> instances = Lists.newArrayList();
+        for (ClassifierInstance instance : TreeBuilderTestUtils.getInstances(numInstances)) {
+            instances.add(new ClassifierInstance(instance.getAttributes(), instance.getLabel().equals("healthy") ? "healthy" : "unhealthy"));
+        }
+        return instances;
+    }
+}
@@ -0,0 +1,114 @@
+package quickml.supervised.classifier.serving;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+import quickml.utlities.CSVToInstanceReaderBuilder;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.List;
+
+public class BulkScorerTest {
+
+    @Test
+    public void writesEveryPredictionInInputOrder() throws Exception {
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(TreeBuilderTestUtils.getInstances(500));
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(5000);
+        final List<ClassifierInstance> written = Lists.newArrayList();
+        final List<PredictionMap> predictions = Lists.newArrayList();
+
+        final long scored = new BulkScorer(randomForest).predictorThreads(4).batchSize(37).maxQueuedBatches(3)
+                .score(instances.iterator(), new BulkScorer.PredictionSink() {
+                    @Override
+                    public void write(ClassifierInstance instance, PredictionMap prediction) {
+                        written.add(instance);
+                        predictions.add(prediction);
+                    }
+                });
+
+        Assert.assertEquals(scored, instances.size());
+        Assert.assertEquals(written.size(), instances.size());
+        for (int i = 0; i < instances.size(); i++) {
+            Assert.assertSame(written.get(i), instances.get(i));
+            for (Serializable classification : randomForest.getClassifications()) {
+                Assert.assertEquals(predictions.get(i).get(classification), randomForest.getProbability(instances.get(i).getAttributes(), classification), 1E-12);
+            }
+        }
+    }
+
+    @Test
+    public void aFailingSinkStopsThePipeline() {
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(2).buildPredictiveModel(TreeBuilderTestUtils.getInstances(200));
+        try {
+            new BulkScorer(randomForest).batchSize(10).score(TreeBuilderTestUtils.getInstances(1000).iterator(), new BulkScorer.PredictionSink() {
+                @Override
+                public void write(ClassifierInstance instance, PredictionMap prediction) throws IOException {
+                    throw new IOException("disk full");
+                }
+            });
+            Assert.fail("The sink's failure should be thrown");
+        } catch (IOException e) {
+            Assert.assertEquals(e.getMessage(), "disk full");
+        }
+    }
+
+    @Test
+    public void anErrorReadingTheInputStopsThePipeline() throws IOException {
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(2).buildPredictiveModel(TreeBuilderTestUtils.getInstances(200));
+        final Iterator<ClassifierInstance> rows = TreeBuilderTestUtils.getInstances(1000).iterator();
+        final Iterator<ClassifierInstance> failingInput = new AbstractIterator<ClassifierInstance>() {
+            int read = 0;
+
+            @Override
+            protected ClassifierInstance computeNext() {
+                if (++read > 500) {
+                    throw new OutOfMemoryError("row too large");
+                }
+                return rows.next();
+            }
+        };
+        try {
+            new BulkScorer(randomForest).batchSize(10).score(failingInput, new BulkScorer.PredictionSink() {
+                @Override
+                public void write(ClassifierInstance instance, PredictionMap prediction) {
+                }
+            });
+            Assert.fail("The input's failure should be thrown");
+        } catch (OutOfMemoryError e) {
+            Assert.assertEquals(e.getMessage(), "row too large");
+        }
+    }
+
+    @Test
+    public void scoresCsvRows() throws Exception {
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(3).buildPredictiveModel(TreeBuilderTestUtils.getInstances(500));
+        final StringBuilder csv = new StringBuilder("id,weight,height,gender\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append("row").append(i).append(',').append(100 + i).append(',').append(50 + i % 30).append(',').append(i % 2).append('\n');
+        }
+        final List<Serializable> classifications = Lists.newArrayList(randomForest.getClassifications());
+        final StringWriter out = new StringWriter();
+
+        final long scored = new BulkScorer(randomForest).batchSize(16).scoreCsv(new StringReader(csv.toString()),
+                new CSVToInstanceReaderBuilder().collumnNameForLabel("id").buildCsvReader(), out, classifications);
+
+        Assert.assertEquals(scored, 100);
+        final List<String[]> rows = new CSVReader(new StringReader(out.toString())).readAll();
+        Assert.assertEquals(rows.size(), 101);
+        Assert.assertEquals(rows.get(0)[1], classifications.get(0).toString());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(rows.get(i + 1)[0], "row" + i);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package quickml.supervised.classifier.serving;
+
+import com.google.common.collect.Lists;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.Classifier;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+import quickml.utlities.SerializationUtility;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ModelRegistryTest {
+
+    @Test
+    public void publishesVersionsAndRollsBack() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(500);
+        final Classifier first = new TreeBuilder<ClassifierInstance>().buildPredictiveModel(instances);
+        final Classifier second = new TreeBuilder<ClassifierInstance>().buildPredictiveModel(instances);
+        final ModelRegistry registry = new ModelRegistry().retainedVersions(1).warmUpRounds(2);
+        Assert.assertNull(registry.get("model"));
+
+        Assert.assertEquals(registry.publish("model", first, warmUpInputs(instances)).getVersion(), 1);
+        final Classifier inFlight = registry.get("model");
+        Assert.assertEquals(registry.publish("model", second, warmUpInputs(instances)).getVersion(), 2);
+        Assert.assertSame(inFlight, first);
+        Assert.assertSame(registry.get("model"), second);
+        Assert.assertEquals(registry.getVersions("model").size(), 2);
+
+        Assert.assertEquals(registry.rollback("model").getVersion(), 1);
+        Assert.assertSame(registry.get("model"), first);
+        try {
+            registry.rollback("model");
+            Assert.fail("Only one version is left");
+        } catch (IllegalStateException e) {
+        }
+        Assert.assertEquals(registry.publish("model", second, warmUpInputs(instances)).getVersion(), 3, "Version numbers aren't reused after a rollback");
+    }
+
+    @Test
+    public void replacedVersionsAreOnlyRetainedAsConfigured() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(200);
+        final ModelRegistry registry = new ModelRegistry().warmUpRounds(0);
+        for (int i = 0; i < 3; i++) {
+            registry.publish("model", new TreeBuilder<ClassifierInstance>().buildPredictiveModel(instances), warmUpInputs(instances));
+        }
+        Assert.assertEquals(registry.getVersions("model").size(), 1);
+        Assert.assertEquals(registry.getCurrentVersion("model").getVersion(), 3);
+    }
+
+    @Test
+    public void publishingWhileTheModelIsRemoved() throws Exception {
+        final Classifier model = new TreeBuilder<ClassifierInstance>().buildPredictiveModel(TreeBuilderTestUtils.getInstances(200));
+        final ModelRegistry registry = new ModelRegistry().warmUpRounds(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> removals = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        registry.remove("model");
+                    }
+                }
+            });
+            final Future<?> publications = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        registry.publish("model", model, Collections.<AttributesMap>emptyList());
+                    }
+                }
+            });
+            removals.get();
+            publications.get();
+        } finally {
+            executor.shutdown();
+        }
+        final ModelVersion published = registry.publish("model", model, Collections.<AttributesMap>emptyList());
+        Assert.assertSame(registry.getCurrentVersion("model"), published);
+    }
+
+    @Test
+    public void loadsInTheBackgroundUnlessThereIsNoRoom() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(500);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(3).buildPredictiveModel(instances);
+        final File modelFile = File.createTempFile("forest", ".gz");
+        modelFile.deleteOnExit();
+        new SerializationUtility<RandomForest>().writeModelToGZIPFile(modelFile.getPath(), randomForest);
+
+        final ModelRegistry registry = new ModelRegistry().warmUpRounds(1);
+        final ModelVersion loaded = registry.loadInBackground("forest", modelFile.getPath(), warmUpInputs(instances)).get();
+        Assert.assertEquals(loaded.getSource(), modelFile.getPath());
+        Assert.assertSame(registry.get("forest"), loaded.getModel());
+        final AttributesMap attributes = instances.get(0).getAttributes();
+        for (Serializable classification : randomForest.getClassifications()) {
+            Assert.assertEquals(registry.get("forest").getProbability(attributes, classification), randomForest.getProbability(attributes, classification), 1E-12);
+        }
+
+        registry.memoryExpansionFactor(1E15);
+        try {
+            registry.loadInBackground("forest", modelFile.getPath(), warmUpInputs(instances)).get();
+            Assert.fail("The model shouldn't fit");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertSame(registry.getCurrentVersion("forest"), loaded);
+        registry.shutdown();
+    }
+
+    private static List<AttributesMap> warmUpInputs(List<ClassifierInstance> instances) {
+        final List<AttributesMap> inputs = Lists.newArrayList();
+        for (ClassifierInstance instance : instances.subList(0, 10)) {
+            inputs.add(instance.getAttributes());
+        }
+        return inputs;
+    }
+}
@@ -0,0 +1,199 @@
+package quickml.supervised.classifier.serving;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ScoringServerTest {
+
+    @Test
+    public void scoresJsonAndBinaryRequests() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(500);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(instances);
+        final ScoringServer server = new ScoringServer(randomForest).port(0).maxWaitMicros(2000).start();
+        try {
+            final AttributesMap attributes = numeric(instances.get(0).getAttributes());
+            final JsonObject single = new JsonParser().parse(post(server, "application/json", toJson(attributes).toString().getBytes(Charsets.UTF_8))).getAsJsonObject();
+            assertSamePrediction(randomForest.predict(attributes), single);
+
+            final List<AttributesMap> batch = Lists.newArrayList();
+            final JsonArray jsonBatch = new JsonArray();
+            for (ClassifierInstance instance : instances.subList(0, 20)) {
+                batch.add(numeric(instance.getAttributes()));
+                jsonBatch.add(toJson(batch.get(batch.size() - 1)));
+            }
+            final JsonArray predictions = new JsonParser().parse(post(server, "application/json", jsonBatch.toString().getBytes(Charsets.UTF_8))).getAsJsonArray();
+            Assert.assertEquals(predictions.size(), batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                assertSamePrediction(randomForest.predict(batch.get(i)), predictions.get(i).getAsJsonObject());
+            }
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Payloads.writeBinaryRequest(batch, new DataOutputStream(bytes));
+            final List<Map<String, Double>> binaryPredictions = Payloads.readBinaryResponse(new DataInputStream(postForStream(server, "application/octet-stream", bytes.toByteArray())));
+            for (int i = 0; i < batch.size(); i++) {
+                for (Map.Entry<Serializable, Double> expected : randomForest.predict(batch.get(i)).entrySet()) {
+                    Assert.assertEquals(binaryPredictions.get(i).get(expected.getKey().toString()), expected.getValue(), 1E-12);
+                }
+            }
+
+            final HttpURLConnection malformed = connect(server, "/predict", "application/json", "{not json".getBytes(Charsets.UTF_8));
+            Assert.assertEquals(malformed.getResponseCode(), 400);
+
+            final ByteArrayOutputStream overstated = new ByteArrayOutputStream();
+            new DataOutputStream(overstated).writeInt(Integer.MAX_VALUE - 8);
+            final HttpURLConnection tooManyInstances = connect(server, "/predict", "application/octet-stream", overstated.toByteArray());
+            Assert.assertEquals(tooManyInstances.getResponseCode(), 400);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void concurrentRequestsShareBatches() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(500);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(instances);
+        final ScoringServer server = new ScoringServer(randomForest).port(0).maxWaitMicros(20000).maxBatchSize(16).start();
+        final ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> responses = Lists.newArrayList();
+            for (final ClassifierInstance instance : instances.subList(0, 64)) {
+                responses.add(clients.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return post(server, "application/json", toJson(numeric(instance.getAttributes())).toString().getBytes(Charsets.UTF_8));
+                    }
+                }));
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                assertSamePrediction(randomForest.predict(numeric(instances.get(i).getAttributes())), new JsonParser().parse(responses.get(i).get()).getAsJsonObject());
+            }
+            Assert.assertTrue(server.getMeanBatchSize() > 1, "mean batch size " + server.getMeanBatchSize());
+            Assert.assertEquals(server.getLatencyHistograms().get(ScoringServer.TOTAL).getCount(), 64);
+
+            final HttpURLConnection stats = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + "/stats").openConnection();
+            final JsonObject statsJson = new JsonParser().parse(new String(ByteStreams.toByteArray(stats.getInputStream()), Charsets.UTF_8)).getAsJsonObject();
+            Assert.assertEquals(statsJson.getAsJsonObject(ScoringServer.QUEUE).get("count").getAsLong(), 64);
+        } finally {
+            clients.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void aRequestTheModelCantScoreFailsByItself() throws Exception {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(500);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(5).buildPredictiveModel(instances);
+        final ScoringServer server = new ScoringServer(randomForest).port(0).maxWaitMicros(50000).start();
+        final ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            final AttributesMap unscorable = AttributesMap.newHashMap();
+            for (Map.Entry<String, Serializable> attribute : instances.get(0).getAttributes().entrySet()) {
+                unscorable.put(attribute.getKey(), "abc");
+            }
+            List<Future<HttpURLConnection>> responses = Lists.newArrayList();
+            for (int i = 0; i < 16; i++) {
+                final AttributesMap attributes = i == 5 ? unscorable : numeric(instances.get(i).getAttributes());
+                responses.add(clients.submit(new Callable<HttpURLConnection>() {
+                    @Override
+                    public HttpURLConnection call() throws Exception {
+                        return connect(server, "/predict", "application/json", toJson(attributes).toString().getBytes(Charsets.UTF_8));
+                    }
+                }));
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                final HttpURLConnection response = responses.get(i).get();
+                if (i == 5) {
+                    Assert.assertEquals(response.getResponseCode(), 422);
+                } else {
+                    Assert.assertEquals(response.getResponseCode(), 200);
+                    final String json = new String(ByteStreams.toByteArray(response.getInputStream()), Charsets.UTF_8);
+                    assertSamePrediction(randomForest.predict(numeric(instances.get(i).getAttributes())), new JsonParser().parse(json).getAsJsonObject());
+                }
+            }
+        } finally {
+            clients.shutdown();
+            server.stop();
+        }
+    }
+
+    /**
+     * JSON numbers come back as Doubles, so the expected predictions are made from Doubles too
+     */
+    private static AttributesMap numeric(AttributesMap attributes) {
+        final AttributesMap converted = AttributesMap.newHashMap();
+        for (Map.Entry<String, Serializable> attribute : attributes.entrySet()) {
+            final Serializable value = attribute.getValue();
+            converted.put(attribute.getKey(), value instanceof Number ? ((Number) value).doubleValue() : value);
+        }
+        return converted;
+    }
+
+    private static JsonObject toJson(AttributesMap attributes) {
+        final JsonObject object = new JsonObject();
+        for (Map.Entry<String, Serializable> attribute : attributes.entrySet()) {
+            if (attribute.getValue() instanceof Number) {
+                object.addProperty(attribute.getKey(), (Number) attribute.getValue());
+            } else {
+                object.addProperty(attribute.getKey(), attribute.getValue().toString());
+            }
+        }
+        return object;
+    }
+
+    private static void assertSamePrediction(PredictionMap expected, JsonObject actual) {
+        for (Map.Entry<Serializable, Double> probability : expected.entrySet()) {
+            final JsonElement actualProbability = actual.get(probability.getKey().toString());
+            Assert.assertEquals(actualProbability == null ? 0 : actualProbability.getAsDouble(), probability.getValue(), 1E-12);
+        }
+    }
+
+    private static String post(ScoringServer server, String contentType, byte[] body) throws IOException {
+        return new String(ByteStreams.toByteArray(postForStream(server, contentType, body)), Charsets.UTF_8);
+    }
+
+    private static InputStream postForStream(ScoringServer server, String contentType, byte[] body) throws IOException {
+        final HttpURLConnection connection = connect(server, "/predict", contentType, body);
+        Assert.assertEquals(connection.getResponseCode(), 200);
+        return connection.getInputStream();
+    }
+
+    private static HttpURLConnection connect(ScoringServer server, String path, String contentType, byte[] body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return connection;
+    }
+}
@@ -0,0 +1,80 @@
+package quickml.supervised.inspection;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
+
+public class TreeShapTest {
+
+    @Test
+    public void treeShapMatchesShapleyValuesOverAllSubsets() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(1000);
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(8).buildPredictiveModel(instances);
+        final TreeShap treeShap = new TreeShap();
+        for (ClassifierInstance instance : instances.subList(0, 20)) {
+            final AttributesMap attributes = instance.getAttributes();
+            final TreeShap.ShapValues shapValues = treeShap.explain(tree, attributes);
+            final List<String> treeAttributes = shapValues.getAttributes();
+            for (Serializable classification : tree.getClassifications()) {
+                for (String attribute : treeAttributes) {
+                    Assert.assertEquals(shapValues.getContribution(attribute, classification),
+                            shapleyValue(tree, attributes, classification, treeAttributes, attribute), 1E-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void contributionsAddUpToTheForestsPrediction() {
+        final List<ClassifierInstance> instances = TreeBuilderTestUtils.getInstances(1000);
+        final RandomForest randomForest = new RandomForestBuilder<ClassifierInstance>().numTrees(10).buildPredictiveModel(instances);
+        final TreeShap treeShap = new TreeShap().executorThreadCount(3);
+        final List<AttributesMap> batch = Lists.newArrayList();
+        for (ClassifierInstance instance : instances.subList(0, 50)) {
+            batch.add(instance.getAttributes());
+        }
+        final List<TreeShap.ShapValues> batchValues = treeShap.explain(randomForest, batch);
+        Assert.assertEquals(batchValues.size(), batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            final TreeShap.ShapValues shapValues = treeShap.explain(randomForest, batch.get(i));
+            for (Serializable classification : randomForest.getClassifications()) {
+                double sum = shapValues.getExpectedValue(classification);
+                for (String attribute : shapValues.getAttributes()) {
+                    sum += shapValues.getContribution(attribute, classification);
+                    Assert.assertEquals(batchValues.get(i).getContribution(attribute, classification), shapValues.getContribution(attribute, classification), 1E-12);
+                }
+                Assert.assertEquals(sum, randomForest.getProbability(batch.get(i), classification), 1E-9);
+                Assert.assertEquals(shapValues.getExpectedValue(classification),
+                        randomForest.getProbabilityWithoutAttributes(batch.get(i), classification, Sets.newHashSet(shapValues.getAttributes())), 1E-9);
+            }
+        }
+    }
+
+    private static double shapleyValue(Tree tree, AttributesMap attributes, Serializable classification, List<String> allAttributes, String attribute) {
+        final int others = allAttributes.size() - 1;
+        double value = 0;
+        for (Set<String> known : Sets.powerSet(Sets.difference(Sets.newHashSet(allAttributes), Sets.newHashSet(attribute)))) {
+            final Set<String> ignored = Sets.difference(Sets.newHashSet(allAttributes), known);
+            final double without = tree.getProbabilityWithoutAttributes(attributes, classification, ignored);
+            final double with = tree.getProbabilityWithoutAttributes(attributes, classification, Sets.difference(ignored, Sets.newHashSet(attribute)));
+            value += (with - without) * factorial(known.size()) * factorial(others - known.size()) / factorial(others + 1);
+        }
+        return value;
+    }
+
+    private static double factorial(int n) {
+        return n <= 1 ? 1 : n * factorial(n - 1);
+    }
+}
@@ -0,0 +1,67 @@
+package quickml.supervised.regressionModel.RegressionTree;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import quickml.data.AttributesMap;
+import quickml.data.InstanceImpl;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static quickml.collections.MapUtils.random;
+
+public class RegressionTreeBuilderTest {
+
+    @Test
+    public void learnsPiecewiseFunction() throws Exception {
+        final RegressionTree tree = new RegressionTreeBuilder<InstanceImpl<AttributesMap, Double>>().maxDepth(4).buildPredictiveModel(getInstances(5000));
+        TreeBuilderTestUtils.serializeDeserialize(tree);
+
+        assertEquals(1.0, tree.predict(attributes(0.2, "a")), 0.1);
+        assertEquals(11.0, tree.predict(attributes(0.2, "b")), 0.1);
+        assertEquals(5.0, tree.predict(attributes(0.8, "a")), 0.1);
+        assertEquals(15.0, tree.predict(attributes(0.8, "c")), 0.1);
+    }
+
+    @Test
+    public void ignoringAttributeAveragesOverIt() {
+        final RegressionTree tree = new RegressionTreeBuilder<InstanceImpl<AttributesMap, Double>>().maxDepth(4).buildPredictiveModel(getInstances(5000));
+        final double withoutColor = tree.predictWithoutAttributes(attributes(0.2, "a"), Sets.newHashSet("color"));
+        // two thirds of the instances are "b" or "c"
+        assertEquals(1.0 + 10.0 * 2 / 3, withoutColor, 0.5);
+    }
+
+    @Test
+    public void forestAveragesTrees() {
+        final List<InstanceImpl<AttributesMap, Double>> instances = getInstances(3000);
+        final RegressionForest forest = new RegressionForestBuilder<InstanceImpl<AttributesMap, Double>>().numTrees(10).buildPredictiveModel(instances);
+        assertEquals(10, forest.trees.size());
+        double total = 0;
+        for (RegressionTree tree : forest.trees) {
+            total += tree.predict(attributes(0.8, "b"));
+        }
+        assertEquals(total / 10, forest.predict(attributes(0.8, "b")), 1E-9);
+        assertTrue(forest.predict(attributes(0.8, "b")) > forest.predict(attributes(0.2, "a")));
+    }
+
+    private static List<InstanceImpl<AttributesMap, Double>> getInstances(int numInstances) {
+        final List<InstanceImpl<AttributesMap, Double>> instances = new ArrayList<>();
+        for (int x = 0; x < numInstances; x++) {
+            final double position = random.nextDouble();
+            final String color = x % 3 == 0 ? "a" : (x % 3 == 1 ? "b" : "c");
+            final double label = (position > 0.5 ? 5.0 : 1.0) + (color.equals("a") ? 0 : 10.0);
+            instances.add(new InstanceImpl<>(attributes(position, color), label));
+        }
+        return instances;
+    }
+
+    private static AttributesMap attributes(double position, String color) {
+        final AttributesMap attributes = AttributesMap.newHashMap();
+        attributes.put("position", position);
+        attributes.put("color", color);
+        return attributes;
+    }
+}
@@ -0,0 +1,98 @@
+package quickml.supervised.regressionModel;
+
+import org.junit.Test;
+import quickml.data.AttributesMap;
+import quickml.data.ClassifierInstance;
+import quickml.data.PredictionMap;
+import quickml.supervised.classifier.TreeBuilderTestUtils;
+import quickml.supervised.classifier.decisionTree.Tree;
+import quickml.supervised.classifier.decisionTree.TreeBuilder;
+import quickml.supervised.classifier.randomForest.RandomForest;
+import quickml.supervised.classifier.randomForest.RandomForestBuilder;
+import quickml.supervised.crossValidation.lossfunctions.ClassifierLogCVLossFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static quickml.collections.MapUtils.random;
+
+public class TreePrunerTest {
+
+    @Test
+    public void pruningNoisyTreeRemovesNodesWithoutHurtingValidationLoss() throws Exception {
+        final Tree tree = new TreeBuilder<ClassifierInstance>().maxDepth(12).buildPredictiveModel(getNoisyInstances(3000));
+        final List<ClassifierInstance> validationSet = getNoisyInstances(2000);
+        final int sizeBefore = tree.node.size();
+
+        final PruningReport<Tree> report = new TreePruner(new ClassifierLogCVLossFunction(0.001)).prune(tree, validationSet);
+        final Tree pruned = report.getPrunedModel();
+
+        assertEquals(sizeBefore, report.getNodesBefore());
+        assertEquals(pruned.node.size(), report.getNodesAfter());
+        assertEquals("The tree given must not be modified", sizeBefore, tree.node.size());
+        assertTrue("Noise should have been pruned away, " + report, report.getNodesRemoved() > 0);
+        assertTrue(report.getLossAfter() <= report.getLossBefore());
+        TreeBuilderTestUtils.serializeDeserialize(pruned);
+    }
+
+    @Test
+    public void pruneEachTreeOfForest() {
+        final RandomForest forest = new RandomForestBuilder<>(new TreeBuilder<ClassifierInstance>().maxDepth(10))
+                .numTrees(5).buildPredictiveModel(getNoisyInstances(2000));
+        int sizeBefore = 0;
+        for (Tree tree : forest.trees) {
+            sizeBefore += tree.node.size();
+        }
+        final PruningReport<RandomForest> report = new TreePruner(new ClassifierLogCVLossFunction(0.001)).lossTolerance(0.001).prune(forest, getNoisyInstances(1000));
+        int sizeAfter = 0;
+        for (Tree tree : report.getPrunedModel().trees) {
+            sizeAfter += tree.node.size();
+        }
+        assertEquals(sizeBefore, report.getNodesBefore());
+        assertEquals(sizeAfter, report.getNodesAfter());
+        assertTrue(report.getNodesRemoved() > 0);
+    }
+
+    @Test
+    public void pruningLeavesAForestInUseUnchanged() {
+        final RandomForest forest = new RandomForestBuilder<>(new TreeBuilder<ClassifierInstance>().maxDepth(10))
+                .numTrees(5).buildPredictiveModel(getNoisyInstances(2000));
+        final List<ClassifierInstance> testInstances = getNoisyInstances(200);
+        // fill the forest's schema and the branches' cached codes, as serving it would
+        final List<PredictionMap> predictionsBefore = new ArrayList<>();
+        for (ClassifierInstance instance : testInstances) {
+            predictionsBefore.add(forest.predict(forest.getSchema().newFeatureVector().fill(instance.getAttributes())));
+        }
+
+        final RandomForest pruned = new TreePruner(new ClassifierLogCVLossFunction(0.001)).lossTolerance(0.001)
+                .prune(forest, getNoisyInstances(1000)).getPrunedModel();
+
+        assertNotSame(forest, pruned);
+        for (int i = 0; i < testInstances.size(); i++) {
+            final AttributesMap attributes = testInstances.get(i).getAttributes();
+            assertEquals(predictionsBefore.get(i), forest.predict(forest.getSchema().newFeatureVector().fill(attributes)));
+            assertEquals(forest.predict(attributes), predictionsBefore.get(i));
+            assertEquals(pruned.predict(attributes), pruned.predict(pruned.getSchema().newFeatureVector().fill(attributes)));
+        }
+    }
+
+    /**
+     * The label depends only on "signal", the other attributes are noise the tree will overfit to.
+     */
+    private static List<ClassifierInstance> getNoisyInstances(int numInstances) {
+        final List<ClassifierInstance> instances = new ArrayList<>();
+        for (int x = 0; x < numInstances; x++) {
+            final AttributesMap attributes = AttributesMap.newHashMap();
+            final double signal = random.nextDouble();
+            attributes.put("signal", signal);
+            attributes.put("noise1", random.nextDouble());
+            attributes.put("noise2", random.nextDouble());
+            final boolean positive = random.nextDouble() < (signal > 0.5 ? 0.8 : 0.2);
+            instances.add(new ClassifierInstance(attributes, positive ? 1.0 : 0.0));
+        }
+        return instances;
+    }
+}